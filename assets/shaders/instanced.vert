@@ -0,0 +1,21 @@
+// diffuse.vert with a model transform and a color per instance (ObjLoader.renderInstanced)
+// the transforms are expected to be rigid (or with uniform scale) for the normals
+attribute mat4 instance_transform;
+attribute vec4 instance_color;
+
+varying vec3 normal, eyeVec;
+
+void main()
+{
+    vec4 vertex = gl_ModelViewMatrix * (instance_transform * gl_Vertex);
+
+    normal = gl_NormalMatrix * (mat3(instance_transform[0].xyz, instance_transform[1].xyz, instance_transform[2].xyz) * gl_Normal);
+
+    eyeVec = -vertex.xyz;
+
+    gl_Position = gl_ProjectionMatrix * vertex;
+
+    gl_TexCoord[0] = gl_MultiTexCoord0;
+
+    gl_FrontColor = instance_color;
+}
@@ -0,0 +1,39 @@
+package pt.ipb.esact.compgraf.benchmark;
+
+/**
+ * The results of the correctness checks run next to the benchmarks (see {@link Checks}): a line per
+ * case, ending in "ok" or in what failed.
+ */
+public class Check {
+
+	private int count;
+
+	private int failures;
+
+	/**
+	 * @param problem What failed, null when the case is ok
+	 */
+	public void result(String line, String problem) {
+		count++;
+		if(problem != null)
+			failures++;
+		System.out.println(line + (problem == null ? " ok" : " FAILED: " + problem));
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	public int getFailures() {
+		return failures;
+	}
+
+	/**
+	 * Prints the summary and ends the process, with 1 when a case failed
+	 */
+	public void exit() {
+		System.out.println(failures > 0 ? failures + " of " + count + " cases failed" : "Every case ok (" + count + ")");
+		System.exit(failures > 0 ? 1 : 0);
+	}
+
+}
@@ -0,0 +1,25 @@
+package pt.ipb.esact.compgraf.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+
+import pt.ipb.esact.compgraf.engine.obj.SimplificationCheck;
+import pt.ipb.esact.compgraf.engine.obj.TriangulationCheck;
+
+/**
+ * Runs the correctness checks of the mesh processing on the models in assets/ and exits with 1 when
+ * one fails. The build of this module runs it (test phase), from the project root:
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar pt.ipb.esact.compgraf.benchmark.Checks
+ * </pre>
+ */
+public class Checks {
+
+	public static void main(String[] args) throws IOException {
+		Check check = new Check();
+		new TriangulationCheck(check).run(new File(TriangulationCheck.DEFAULT_FOLDER));
+		new SimplificationCheck(check).run(new File(SimplificationCheck.DEFAULT_MODEL));
+		check.exit();
+	}
+
+}
@@ -0,0 +1,30 @@
+package pt.ipb.esact.compgraf.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the microbenchmarks with the GC profiler (allocation rate, bytes per operation and GC
+ * count) and writes the results to {@code jmh-result.json}, the baseline to compare the CPU
+ * side changes against.
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar pt.ipb.esact.compgraf.benchmark.MicroBenchmarks [regex]
+ * </pre>
+ */
+public class MicroBenchmarks {
+
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder()
+				.include(args.length > 0 ? args[0] : "pt\\.ipb\\.esact\\.compgraf\\..*Benchmark")
+				.addProfiler(GCProfiler.class)
+				.resultFormat(ResultFormatType.JSON)
+				.result("jmh-result.json")
+				.build();
+		new Runner(options).run();
+	}
+
+}
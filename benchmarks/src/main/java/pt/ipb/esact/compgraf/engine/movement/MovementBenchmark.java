@@ -0,0 +1,65 @@
+package pt.ipb.esact.compgraf.engine.movement;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.vecmath.Vector3f;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One simulation step of {@link Kinematic} and {@link Seek}, the input is set directly (no window)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MovementBenchmark {
+
+    private static final float DT = 1.0f / 60.0f;
+
+    private Kinematic idle;
+
+    private Kinematic moving;
+
+    private Seek seek;
+
+    @Setup
+    public void setup() {
+        idle = new Kinematic();
+
+        // a andar, a rodar e de lado: todos os ramos do update
+        moving = new Kinematic();
+        moving.setMovement(true, false, true, false, true, false);
+
+        seek = new Seek();
+        seek.setPosition(new Vector3f(1.0f, 0.0f, -2.0f));
+        seek.setTarget(new Vector3f(10.0f, 0.0f, 5.0f));
+    }
+
+    @Benchmark
+    public boolean updateIdle() {
+        return idle.update(DT);
+    }
+
+    @Benchmark
+    public boolean updateMoving() {
+        return moving.update(DT);
+    }
+
+    @Benchmark
+    public SteeringOutput seek() {
+        return seek.getSteering();
+    }
+
+}
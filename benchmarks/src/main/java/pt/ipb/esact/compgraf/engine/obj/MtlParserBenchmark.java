@@ -0,0 +1,50 @@
+package pt.ipb.esact.compgraf.engine.obj;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The .mtl parsing of {@link ObjLoader}, the textures aren't requested (see {@link MtlParser})
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MtlParserBenchmark {
+
+	@Param({
+		"assets/models/wheatley/wheatley.mtl",
+		"assets/models/building/door.mtl",
+	})
+	public String material;
+
+	private byte[] bytes;
+
+	@Setup
+	public void setup() throws IOException {
+		bytes = Files.readAllBytes(Paths.get(material));
+	}
+
+	@Benchmark
+	public Map<String, ObjMaterial> parse() {
+		return MtlParser.parse(bytes, "assets/models/");
+	}
+
+}
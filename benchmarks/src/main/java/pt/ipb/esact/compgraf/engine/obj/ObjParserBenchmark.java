@@ -0,0 +1,72 @@
+package pt.ipb.esact.compgraf.engine.obj;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The CPU part of {@link ObjLoader}: parsing the .obj and building the vertex buffers, with and
+ * without the vertex dedup ({@link ObjLoader#setCompress(boolean)})
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ObjParserBenchmark {
+
+	@Param({
+		"assets/models/cube/cube.obj",
+		"assets/models/wheatley/wheatley.obj",
+		"assets/models/planets/earth.obj",
+	})
+	public String model;
+
+	private byte[] bytes;
+
+	private ObjData data;
+
+	@Setup
+	public void setup() throws IOException {
+		bytes = Files.readAllBytes(Paths.get(model));
+		data = new ObjParser().parse(bytes, 0, bytes.length);
+	}
+
+	@Benchmark
+	public ObjData parse() {
+		return new ObjParser().parse(bytes, 0, bytes.length);
+	}
+
+	@Benchmark
+	public ObjMesh build() {
+		return new ObjMeshBuilder(false).build(data);
+	}
+
+	@Benchmark
+	public ObjMesh buildCompressed() {
+		return new ObjMeshBuilder(true).build(data);
+	}
+
+	/**
+	 * Everything {@link ObjLoader} does on the worker thread without the cache
+	 */
+	@Benchmark
+	public ObjMesh load() {
+		return new ObjMeshBuilder(true).build(new ObjParser().parse(bytes, 0, bytes.length));
+	}
+
+}
@@ -0,0 +1,177 @@
+package pt.ipb.esact.compgraf.engine.obj;
+
+import static pt.ipb.esact.compgraf.engine.obj.ObjMesh.VERTEX_SIZE;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import pt.ipb.esact.compgraf.benchmark.Check;
+import pt.ipb.esact.compgraf.benchmark.Checks;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Checks the {@link MeshSimplifier} on .obj files (by default {@code assets/models/cube/cube.obj})
+ * down to 1/64 of the triangles, with and without compression: no level may have a degenerate
+ * triangle or the same face twice (unless the file has it twice too), and a closed piece must stay
+ * closed (every edge in one triangle each way) with at least 4 triangles. Part of {@link Checks},
+ * or on its own:
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar pt.ipb.esact.compgraf.engine.obj.SimplificationCheck [file.obj ...]
+ * </pre>
+ */
+public class SimplificationCheck {
+
+	public static final String DEFAULT_MODEL = "assets/models/cube/cube.obj";
+
+	private static final float[] RATIOS = { 1.0f / 2, 1.0f / 4, 1.0f / 8, 1.0f / 16, 1.0f / 32, 1.0f / 64 };
+
+	private final Check check;
+
+	public SimplificationCheck(Check check) {
+		this.check = check;
+	}
+
+	public static void main(String[] args) throws IOException {
+		Check check = new Check();
+		SimplificationCheck simplification = new SimplificationCheck(check);
+		for(String file : args.length > 0 ? args : new String[] { DEFAULT_MODEL })
+			simplification.run(new File(file));
+		check.exit();
+	}
+
+	public void run(File file) throws IOException {
+		byte[] bytes = Files.readAllBytes(file.toPath());
+		for(boolean compress : new boolean[] { false, true }) {
+			ObjMesh mesh = new ObjMeshBuilder(compress).build(new ObjParser(1.0f).parse(bytes, 0, bytes.length));
+			Shape original = new Shape(mesh);
+			List<ObjMesh> chain = MeshSimplifier.buildChain(mesh, RATIOS);
+			for(int i = 0; i < chain.size(); i++) {
+				Shape level = new Shape(chain.get(i));
+				check.result(String.format(Locale.ROOT, "%-16s %-10s 1/%-3d %6d -> %6d triangles",
+						file.getName(), compress ? "compressed" : "", Math.round(1.0f / RATIOS[i]),
+						original.triangles, level.triangles), level.problem(original));
+			}
+		}
+	}
+
+	/**
+	 * The triangles of a mesh by position (the vertices in the same place are the same point)
+	 */
+	private static final class Shape {
+
+		final int triangles;
+
+		final int[] corners;
+
+		// position of each point
+		final List<List<Float>> positions = Lists.newArrayList();
+
+		// connected piece of each point
+		final int[] component;
+
+		// directed edge (from, to) -> triangles
+		final Map<Long, Integer> edges = Maps.newHashMap();
+
+		// the faces there more than once, by the positions of their corners
+		final Set<Set<List<Float>>> repeated = Sets.newHashSet();
+
+		Shape(ObjMesh mesh) {
+			FloatBuffer vertices = mesh.getVertices();
+			IntBuffer indices = mesh.getIndices();
+			Map<List<Float>, Integer> points = Maps.newHashMap();
+			triangles = mesh.getIndexCount() / 3;
+			corners = new int[3 * triangles];
+			for(int i = 0; i < corners.length; i++) {
+				int o = indices.get(i) * VERTEX_SIZE;
+				List<Float> position = Arrays.asList(vertices.get(o), vertices.get(o + 1), vertices.get(o + 2));
+				Integer point = points.get(position);
+				if(point == null) {
+					point = positions.size();
+					points.put(position, point);
+					positions.add(position);
+				}
+				corners[i] = point;
+			}
+
+			component = new int[positions.size()];
+			for(int p = 0; p < component.length; p++)
+				component[p] = p;
+			for(int i = 0; i < corners.length; i++) {
+				int a = find(corners[i]), b = find(corners[i - i % 3]);
+				component[a] = b;
+				long edge = edge(corners[i], corners[i - i % 3 + (i + 1) % 3]);
+				Integer count = edges.get(edge);
+				edges.put(edge, count == null ? 1 : count + 1);
+			}
+
+			Set<Set<List<Float>>> faces = Sets.newHashSet();
+			for(int t = 0; t < triangles; t++) {
+				Set<List<Float>> face = ImmutableSet.of(positions.get(corners[3 * t]), positions.get(corners[3 * t + 1]), positions.get(corners[3 * t + 2]));
+				if(!faces.add(face))
+					repeated.add(face);
+			}
+		}
+
+		/**
+		 * @return What is wrong with this level of detail of the {@code original}, null if nothing
+		 */
+		String problem(Shape original) {
+			Map<Integer, Integer> pieces = Maps.newHashMap();
+			for(int t = 0; t < triangles; t++) {
+				int a = corners[3 * t], b = corners[3 * t + 1], c = corners[3 * t + 2];
+				if(a == b || b == c || c == a)
+					return "degenerate triangle " + t;
+				int piece = find(a);
+				Integer count = pieces.get(piece);
+				pieces.put(piece, count == null ? 1 : count + 1);
+			}
+			for(Set<List<Float>> face : repeated)
+				if(!original.repeated.contains(face))
+					return "a face is there twice";
+
+			if(!original.isClosed())
+				return null;
+			if(!isClosed())
+				return "not closed anymore";
+			for(Map.Entry<Integer, Integer> piece : pieces.entrySet())
+				if(piece.getValue() < 4)
+					return "a closed piece with " + piece.getValue() + " triangles";
+			return null;
+		}
+
+		boolean isClosed() {
+			for(Map.Entry<Long, Integer> edge : edges.entrySet()) {
+				long key = edge.getKey();
+				if(edge.getValue() != 1 || !edges.containsKey(edge((int) key, (int) (key >>> 32))))
+					return false;
+			}
+			return true;
+		}
+
+		int find(int p) {
+			while(component[p] != p) {
+				component[p] = component[component[p]];
+				p = component[p];
+			}
+			return p;
+		}
+
+		static long edge(int from, int to) {
+			return (long) from << 32 | to;
+		}
+
+	}
+
+}
@@ -0,0 +1,112 @@
+package pt.ipb.esact.compgraf.engine.obj;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Locale;
+
+import pt.ipb.esact.compgraf.benchmark.Check;
+import pt.ipb.esact.compgraf.benchmark.Checks;
+
+/**
+ * Checks the {@link Triangulator} on every face of the .obj files of a folder (by default the
+ * n-gons in {@code assets/models/test/ngons}): a face with n corners must become n - 2 triangles
+ * that cover the polygon exactly (the areas add up to the polygon's area, no overlaps) and turn
+ * the same way as the face. Part of {@link Checks}, or on its own:
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar pt.ipb.esact.compgraf.engine.obj.TriangulationCheck [folder]
+ * </pre>
+ */
+public class TriangulationCheck {
+
+	private static final double TOLERANCE = 1e-4;
+
+	public static final String DEFAULT_FOLDER = "assets/models/test/ngons";
+
+	private final Triangulator triangulator = new Triangulator();
+
+	private final Check check;
+
+	public TriangulationCheck(Check check) {
+		this.check = check;
+	}
+
+	public static void main(String[] args) throws IOException {
+		Check check = new Check();
+		new TriangulationCheck(check).run(new File(args.length > 0 ? args[0] : DEFAULT_FOLDER));
+		check.exit();
+	}
+
+	public void run(File folder) throws IOException {
+		File[] files = folder.listFiles();
+		if(files == null)
+			throw new IllegalArgumentException("Not a folder: " + folder);
+		Arrays.sort(files);
+
+		for(File file : files)
+			if(file.getName().toLowerCase(Locale.ROOT).endsWith(".obj"))
+				check(file);
+	}
+
+	private void check(File file) throws IOException {
+		byte[] bytes = Files.readAllBytes(file.toPath());
+		ObjData data = new ObjParser().parse(bytes, 0, bytes.length);
+		float[] positions = data.getPositions();
+
+		for(int face = 0; face < data.getFaceCount(); face++) {
+			int count = data.faceSize(face);
+			if(count < 3)
+				continue;
+			int[] corners = new int[count];
+			for(int i = 0; i < count; i++)
+				corners[i] = data.cornerPosition(data.faceStart(face) + i);
+			int[] triangles = new int[3 * (count - 2)];
+			int triangleCount = triangulator.triangulate(positions, 3, corners, count, triangles);
+
+			// Newell's normal: twice the vector area of the polygon
+			double[] normal = new double[3];
+			for(int i = 0; i < count; i++) {
+				int a = 3 * corners[i];
+				int b = 3 * corners[(i + 1) % count];
+				normal[0] += (positions[a + 1] - positions[b + 1]) * (positions[a + 2] + positions[b + 2]);
+				normal[1] += (positions[a + 2] - positions[b + 2]) * (positions[a] + positions[b]);
+				normal[2] += (positions[a] - positions[b]) * (positions[a + 1] + positions[b + 1]);
+			}
+			double area = 0.5 * length(normal);
+
+			// unsigned: an overlap or a flipped triangle makes the sum bigger than the polygon
+			double sum = 0.0;
+			boolean winding = true;
+			double[] cross = new double[3];
+			for(int t = 0; t < triangleCount; t++) {
+				int a = 3 * corners[triangles[3 * t]];
+				int b = 3 * corners[triangles[3 * t + 1]];
+				int c = 3 * corners[triangles[3 * t + 2]];
+				double ux = positions[b] - positions[a], uy = positions[b + 1] - positions[a + 1], uz = positions[b + 2] - positions[a + 2];
+				double vx = positions[c] - positions[a], vy = positions[c + 1] - positions[a + 1], vz = positions[c + 2] - positions[a + 2];
+				cross[0] = uy * vz - uz * vy;
+				cross[1] = uz * vx - ux * vz;
+				cross[2] = ux * vy - uy * vx;
+				sum += 0.5 * length(cross);
+				if(cross[0] * normal[0] + cross[1] * normal[1] + cross[2] * normal[2] < -TOLERANCE * area)
+					winding = false;
+			}
+
+			String problem = null;
+			if(triangleCount != count - 2)
+				problem = "not " + (count - 2) + " triangles";
+			else if(Math.abs(sum - area) > TOLERANCE * Math.max(1.0, area))
+				problem = "the area is not the polygon's";
+			else if(!winding)
+				problem = "flipped";
+			check.result(String.format(Locale.ROOT, "%-16s face %d: %2d corners -> %2d triangles, area %.4f of %.4f",
+					file.getName(), face, count, triangleCount, sum, area), problem);
+		}
+	}
+
+	private static double length(double[] v) {
+		return Math.sqrt(v[0] * v[0] + v[1] * v[1] + v[2] * v[2]);
+	}
+
+}
@@ -0,0 +1,127 @@
+package pt.ipb.esact.compgraf.tools.math;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.vecmath.AxisAngle4f;
+import javax.vecmath.Matrix4f;
+import javax.vecmath.Quat4f;
+import javax.vecmath.Vector3f;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link GlMath#rotate(float, Vector3f, Vector3f)} against the previous quaternion version, the
+ * {@link Rotation} kernel and the batched {@link Matrix4} transform. With {@code -prof gc} the
+ * {@code gc.alloc.rate.norm} column shows the bytes allocated per call. Escape analysis removes the
+ * quaternion temporaries once {@link #rotateQuaternion()} is inlined in this loop, run it with
+ * {@code -jvmArgsAppend -XX:-DoEscapeAnalysis} to see what they cost where it isn't.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GlMathBenchmark {
+
+	// not final: no constant folding
+	private float angle = 37.5f;
+
+	private Vector3f axis = new Vector3f(0.0f, 1.0f, 0.0f);
+
+	private Vector3f vector = new Vector3f(0.3f, -1.2f, 2.5f);
+
+	private float radius = 12.0f;
+
+	private float theta = 0.7f;
+
+	private float phi = 1.9f;
+
+	private Vector3f out = new Vector3f();
+
+	private Rotation rotation = new Rotation(angle, axis);
+
+	private static final int BATCH = 1024;
+
+	private VectorArray points = new VectorArray(BATCH);
+
+	private VectorArray transformed = new VectorArray(BATCH);
+
+	private Vector3f[] pointObjects = new Vector3f[BATCH];
+
+	private Matrix4 matrix = new Matrix4().translate(1.0f, 2.0f, 3.0f).rotate(angle, 0.0f, 1.0f, 0.0f);
+
+	{
+		for(int i = 0; i < BATCH; i++) {
+			points.set(i, i, 0.5f * i, -i);
+			pointObjects[i] = points.get(i, new Vector3f());
+		}
+	}
+
+	/**
+	 * The implementation before the Rodrigues kernel
+	 */
+	@Benchmark
+	public Vector3f rotateQuaternion() {
+		Quat4f q = new Quat4f();
+		q.set(new AxisAngle4f(axis, (float) Math.toRadians(angle)));
+
+		Matrix4f m = new Matrix4f();
+		m.set(q);
+
+		Vector3f result = new Vector3f(vector);
+		m.transform(result);
+		return result;
+	}
+
+	@Benchmark
+	public Vector3f rotate() {
+		return GlMath.rotate(angle, axis, vector);
+	}
+
+	@Benchmark
+	public Vector3f rotateOut() {
+		return GlMath.rotate(angle, axis, vector, out);
+	}
+
+	/**
+	 * Same angle every call: sin/cos cached
+	 */
+	@Benchmark
+	public Vector3f rotationCached() {
+		return rotation.set(angle, axis).transform(vector, out);
+	}
+
+	@Benchmark
+	public Vector3f[] rotateBatchObjects() {
+		for(int i = 0; i < BATCH; i++)
+			GlMath.rotate(angle, axis, pointObjects[i], pointObjects[i]);
+		return pointObjects;
+	}
+
+	@Benchmark
+	public VectorArray rotateBatch() {
+		rotation.transform(points, transformed, BATCH);
+		return transformed;
+	}
+
+	@Benchmark
+	public VectorArray transformPointsBatch() {
+		matrix.transformPoints(points, transformed, BATCH);
+		return transformed;
+	}
+
+	@Benchmark
+	public Vector3f polarToVector() {
+		return GlMath.polarToVector(radius, theta, phi);
+	}
+
+}
@@ -0,0 +1,125 @@
+package pt.ipb.esact.compgraf.tools.math;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.vecmath.Vector3f;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link Vectors} arithmetic and {@link VectorList#normalVector()}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VectorsBenchmark {
+
+	private Vector3f a = new Vector3f(1.0f, 2.0f, 3.0f);
+
+	private Vector3f b = new Vector3f(-0.5f, 4.0f, 0.25f);
+
+	private Vector3f c = new Vector3f(2.0f, -1.0f, 1.5f);
+
+	private VectorList triangle = new VectorList().append(a).append(b).append(c);
+
+	private Vector3f out = new Vector3f();
+
+	private Vector3f up = new Vector3f();
+
+	private Vector3f forward = new Vector3f();
+
+	private static final int BATCH = 1024;
+
+	private VectorArray positions = new VectorArray(BATCH);
+
+	private VectorArray velocities = new VectorArray(BATCH);
+
+	private Vector3f[] positionObjects = new Vector3f[BATCH];
+
+	private Vector3f[] velocityObjects = new Vector3f[BATCH];
+
+	{
+		for(int i = 0; i < BATCH; i++) {
+			positions.set(i, i, -i, 0.5f * i);
+			velocities.set(i, 1.0f, 0.25f, -0.5f);
+			positionObjects[i] = positions.get(i, new Vector3f());
+			velocityObjects[i] = velocities.get(i, new Vector3f());
+		}
+	}
+
+	@Benchmark
+	public Vector3f add() {
+		return Vectors.add(a, b);
+	}
+
+	@Benchmark
+	public Vector3f addOut() {
+		return Vectors.add(a, b, out);
+	}
+
+	@Benchmark
+	public Vector3f sub() {
+		return Vectors.sub(a, b);
+	}
+
+	@Benchmark
+	public Vector3f cross() {
+		return Vectors.cross(a, b);
+	}
+
+	@Benchmark
+	public float dot() {
+		return Vectors.dot(a, b);
+	}
+
+	/**
+	 * The shared vectors are created on every call
+	 */
+	@Benchmark
+	public Vector3f constants() {
+		Vector3f v = Vectors.up();
+		v.add(Vectors.forward());
+		return v;
+	}
+
+	/**
+	 * The constants written into preallocated vectors
+	 */
+	@Benchmark
+	public Vector3f constantsFilled() {
+		return Vectors.add(Vectors.up(up), Vectors.forward(forward), out);
+	}
+
+	/**
+	 * {@code position += velocity * dt} over {@value #BATCH} vectors
+	 */
+	@Benchmark
+	public VectorArray integrateBatch() {
+		VectorArray.scaleAdd(velocities, 0.016f, positions, positions, BATCH);
+		return positions;
+	}
+
+	@Benchmark
+	public Vector3f[] integrateObjects() {
+		for(int i = 0; i < BATCH; i++)
+			positionObjects[i].scaleAdd(0.016f, velocityObjects[i], positionObjects[i]);
+		return positionObjects;
+	}
+
+	@Benchmark
+	public Vector3f normalVector() {
+		return triangle.normalVector();
+	}
+
+}
@@ -1,9 +1,11 @@
 package pt.ipb.esact.compgraf.aulas.a07;
 
 import pt.ipb.esact.compgraf.engine.obj.ObjLoader;
+import pt.ipb.esact.compgraf.engine.obj.StaticBatch;
 import pt.ipb.esact.compgraf.tools.Camera;
 import pt.ipb.esact.compgraf.tools.Cameras;
 import pt.ipb.esact.compgraf.tools.DefaultGLWindow;
+import pt.ipb.esact.compgraf.tools.math.MatrixStack;
 
 public class A07_ExercicioSolucao extends DefaultGLWindow {
 
@@ -17,6 +19,10 @@ public class A07_ExercicioSolucao extends DefaultGLWindow {
     private ObjLoader wall2;
     private ObjLoader ceiling;
 
+    private StaticBatch scene;
+
+    private final MatrixStack matrices = new MatrixStack();
+
 
     public A07_ExercicioSolucao() {
         super("A07 Obj", true);
@@ -42,7 +48,9 @@ public class A07_ExercicioSolucao extends DefaultGLWindow {
         // Configurar os materiais
         configureMaterials();
 
+        // Só desenhados pelo batch (ver buildScene): a geometria fica no CPU
         board = new ObjLoader(this);
+        board.setUpload(false);
         board.setScale(1.5f);
         board.load(
                 "assets/exercicios/aula7/models/board/Board.obj",
@@ -50,6 +58,7 @@ public class A07_ExercicioSolucao extends DefaultGLWindow {
         );
 
         chair = new ObjLoader(this);
+        chair.setUpload(false);
         chair.setScale(1.4f);
         chair.load(
                 "assets/exercicios/aula7/models/chair/chair.obj",
@@ -57,47 +66,116 @@ public class A07_ExercicioSolucao extends DefaultGLWindow {
         );
 
         computador = new ObjLoader(this);
+        computador.setUpload(false);
         computador.load(
                 "assets/exercicios/aula7/models/computador/computador.obj",
                 "assets/exercicios/aula7/models/computador/computador.mtl"
         );
 
         floor = new ObjLoader(this);
+        floor.setUpload(false);
         floor.load(
                 "assets/exercicios/aula7/models/floor/floor.obj",
                 "assets/exercicios/aula7/models/floor/floor.mtl"
         );
 
         monitor = new ObjLoader(this);
+        monitor.setUpload(false);
         monitor.load(
                 "assets/exercicios/aula7/models/monitor/monitor.obj",
                 "assets/exercicios/aula7/models/monitor/monitor.mtl"
         );
 
         table = new ObjLoader(this);
+        table.setUpload(false);
         table.load(
                 "assets/exercicios/aula7/models/table/table.obj",
                 "assets/exercicios/aula7/models/table/table.mtl"
         );
 
         wall1 = new ObjLoader(this);
+        wall1.setUpload(false);
         wall1.load(
                 "assets/exercicios/aula7/models/walls/wall1.obj",
                 "assets/exercicios/aula7/models/walls/wall1.mtl"
         );
 
         wall2 = new ObjLoader(this);
+        wall2.setUpload(false);
         wall2.load(
                 "assets/exercicios/aula7/models/walls/wall2.obj",
                 "assets/exercicios/aula7/models/walls/wall2.mtl"
         );
 
         ceiling = new ObjLoader(this);
+        ceiling.setUpload(false);
         ceiling.load(
                 "assets/exercicios/aula7/models/walls/ceiling.obj",
                 "assets/exercicios/aula7/models/walls/ceiling.mtl"
         );
 
+        buildScene();
+    }
+
+    private void buildScene() {
+        // Os objetos não se movem: as transformações são aplicadas uma vez aos vértices
+        // e tudo é desenhado com um draw por material
+        scene = new StaticBatch(this);
+
+        scene.add(floor, matrices.getModel());
+
+        matrices.glPushMatrix();
+        {
+            matrices.glTranslatef(0, 0, -4);
+            scene.add(wall2, matrices.getModel());
+
+            matrices.glTranslatef(2, 1f, 0);
+            scene.add(board, matrices.getModel());
+
+        }
+        matrices.glPopMatrix();
+
+        matrices.glPushMatrix();
+        {
+            matrices.glTranslatef(0, 0, 4);
+            matrices.glRotatef(180f, 0, 1, 0);
+            scene.add(wall1, matrices.getModel());
+
+        }
+        matrices.glPopMatrix();
+
+        matrices.glPushMatrix();
+        {
+            matrices.glTranslatef(-4, 0, 0);
+            matrices.glRotatef(90f, 0, 1, 0);
+            scene.add(wall1, matrices.getModel());
+
+        }
+        matrices.glPopMatrix();
+
+        matrices.glPushMatrix();
+        {
+            matrices.glTranslatef(4, 0, 0);
+            matrices.glRotatef(-90f, 0, 1, 0);
+            scene.add(wall1, matrices.getModel());
+
+        }
+        matrices.glPopMatrix();
+
+
+        matrices.glPushMatrix();
+        {
+            matrices.glTranslatef(-2.4f, 0, 0);
+            addDesk();
+        }
+        matrices.glPopMatrix();
+
+        matrices.glPushMatrix();
+        {
+            matrices.glTranslatef(2.4f, 0, 0);
+            addDesk();
+        }
+        matrices.glPopMatrix();
     }
 
     private void configureMaterials() {
@@ -141,89 +219,43 @@ public class A07_ExercicioSolucao extends DefaultGLWindow {
         // Cor por omissão do cenário
         glColor3f(1f, 1f, 1f);
 
-        floor.render();
-
-        glPushMatrix();
-        {
-            glTranslatef(0, 0, -4);
-            wall2.render();
-
-            glTranslatef(2, 1f, 0);
-            board.render();
-
-        }
-        glPopMatrix();
-
-        glPushMatrix();
-        {
-            glTranslatef(0, 0, 4);
-            glRotatef(180f, 0, 1, 0);
-            wall1.render();
-
-        }
-        glPopMatrix();
-
-        glPushMatrix();
-        {
-            glTranslatef(-4, 0, 0);
-            glRotatef(90f, 0, 1, 0);
-            wall1.render();
-
-        }
-        glPopMatrix();
-
-        glPushMatrix();
-        {
-            glTranslatef(4, 0, 0);
-            glRotatef(-90f, 0, 1, 0);
-            wall1.render();
-
-        }
-        glPopMatrix();
+        // O cenário já está nas coordenadas do mundo: só a camera (e o frustum)
+        matrices.setProjection(getProjectionMatrix());
+        matrices.setView(getViewMatrix());
 
+        matrices.load(this);
+        scene.render(matrices.getFrustum());
 
-        glPushMatrix();
-        {
-            glTranslatef(-2.4f, 0, 0);
-            drawDesk();
-        }
-        glPopMatrix();
-
-        glPushMatrix();
-        {
-            glTranslatef(2.4f, 0, 0);
-            drawDesk();
-        }
-        glPopMatrix();
-
+        // Deixar só a camera no GL
+        matrices.restore(this);
     }
 
-    private void drawDesk() {
-        table.render();
+    private void addDesk() {
+        scene.add(table, matrices.getModel());
 
-        glPushMatrix();
+        matrices.glPushMatrix();
         {
-            glTranslatef(0.8f, 1.18f, 0);
-            glRotatef(-15, 0, 1, 0);
-            monitor.render();
+            matrices.glTranslatef(0.8f, 1.18f, 0);
+            matrices.glRotatef(-15, 0, 1, 0);
+            scene.add(monitor, matrices.getModel());
         }
-        glPopMatrix();
+        matrices.glPopMatrix();
 
-        glPushMatrix();
+        matrices.glPushMatrix();
         {
-            glTranslatef(0.0f, 1.18f, 0);
-            glRotatef(-90, 0, 1, 0);
-            computador.render();
+            matrices.glTranslatef(0.0f, 1.18f, 0);
+            matrices.glRotatef(-90, 0, 1, 0);
+            scene.add(computador, matrices.getModel());
         }
-        glPopMatrix();
+        matrices.glPopMatrix();
 
-        glPushMatrix();
+        matrices.glPushMatrix();
         {
-            glTranslatef(0, 0, 1.5f);
-            glRotatef(-180, 0, 1, 0);
-            chair.render();
+            matrices.glTranslatef(0, 0, 1.5f);
+            matrices.glRotatef(-180, 0, 1, 0);
+            scene.add(chair, matrices.getModel());
         }
-        glPopMatrix();
+        matrices.glPopMatrix();
     }
 
 
@@ -1,6 +1,7 @@
 package pt.ipb.esact.compgraf.aulas.a11;
 
 import pt.ipb.esact.compgraf.engine.light.Light;
+import pt.ipb.esact.compgraf.engine.obj.InstanceBuffer;
 import pt.ipb.esact.compgraf.engine.obj.ObjLoader;
 import pt.ipb.esact.compgraf.tools.*;
 import pt.ipb.esact.compgraf.tools.math.Vectors;
@@ -49,6 +50,9 @@ public class A11_Board extends DefaultGLWindow {
 
     private ObjLoader sphere;
 
+    // Posições de todos os cubos do tabuleiro (instâncias)
+    private InstanceBuffer board;
+
     // Vetores de movimento
     private Vector3f position;
 
@@ -68,6 +72,8 @@ public class A11_Board extends DefaultGLWindow {
 
     private Shader diffuseShader;
 
+    private Shader instancedShader;
+
     private Light light;
 
     // skybox
@@ -102,6 +108,7 @@ public class A11_Board extends DefaultGLWindow {
 
         configureLighting();
         configureModels();
+        configureBoard();
         configureMaterials();
         configureShaders();
     }
@@ -109,6 +116,10 @@ public class A11_Board extends DefaultGLWindow {
     private void configureShaders() {
         diffuseShader = new Shader();
         diffuseShader.load("assets/shaders/diffuse.vert", "assets/shaders/diffuse.frag");
+
+        instancedShader = new Shader();
+        instancedShader.load("assets/shaders/instanced.vert", "assets/shaders/instanced.frag");
+
         diffuseShader.bind();
     }
 
@@ -124,6 +135,24 @@ public class A11_Board extends DefaultGLWindow {
         sphere.load("assets/models/sphere/sphere.obj", "assets/models/sphere/sphere.mtl");
     }
 
+    private void configureBoard() {
+        // As posições não mudam: são enviadas para o GPU uma só vez
+        board = new InstanceBuffer(this, CUBES_PER_ROW * CUBES_PER_ROW + obstaculos.length, false);
+
+        for (int row = 0; row < CUBES_PER_ROW; row++) {
+            for (int col = 0; col < CUBES_PER_ROW; col++) {
+                Vector3f p = rowColVector(row, col);
+                board.add(p.x, p.y, p.z);
+            }
+        }
+
+        for (int o = 0; o < obstaculos.length; o++) {
+            Vector2f obstaculo = obstaculos[o];
+            Vector3f p = rowColVector((int) obstaculo.y, (int) obstaculo.x);
+            board.add(p.x, CUBE_SIZE, p.z);
+        }
+    }
+
     private void configureLighting() {
         // Ativar a Lighting globalmente
         glEnable(GL_LIGHTING);
@@ -143,6 +172,7 @@ public class A11_Board extends DefaultGLWindow {
     public void release() {
         // Libertar recursos
         diffuseShader.release();
+        instancedShader.release();
     }
 
     @Override
@@ -274,28 +304,10 @@ public class A11_Board extends DefaultGLWindow {
     }
 
     private void drawBoard() {
-        for (int row = 0; row < CUBES_PER_ROW; row++) {
-            for (int col = 0; col < CUBES_PER_ROW; col++) {
-                Vector3f p = rowColVector(row, col);
-                glPushMatrix();
-                {
-                    glTranslatef(p.x, p.y, p.z);
-                    cube.render();
-                }
-                glPopMatrix();
-            }
-        }
-
-        for (int o = 0; o < obstaculos.length; o++) {
-            glPushMatrix();
-            {
-                Vector2f obstaculo = obstaculos[o];
-                Vector3f p = rowColVector((int) obstaculo.y, (int) obstaculo.x);
-                glTranslatef(p.x, CUBE_SIZE, p.z);
-                cube.render();
-            }
-            glPopMatrix();
-        }
+        // Todos os cubos (tabuleiro e obstáculos) com um só draw por material
+        instancedShader.bind();
+        cube.renderInstanced(instancedShader, board);
+        diffuseShader.bind();
     }
 
     @Override
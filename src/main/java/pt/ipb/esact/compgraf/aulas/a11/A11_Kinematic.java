@@ -31,9 +31,9 @@ public class A11_Kinematic extends DefaultGLWindow {
 
     private static final float MAX_ANGULAR_SPEED = 90.0f;
 
-    private Camera wheatleyCamera;
+    private volatile Camera wheatleyCamera;
 
-    private Camera hoverCamera;
+    private volatile Camera hoverCamera;
 
     private ObjLoader doorframe;
 
@@ -43,7 +43,8 @@ public class A11_Kinematic extends DefaultGLWindow {
 
     private Vector3f doorCenter = new Vector3f(0, 1, 3);
 
-    private boolean playerNearDoor = false;
+    // escrito pela thread de simulação
+    private volatile boolean playerNearDoor = false;
 
     private boolean openDoor = false;
 
@@ -54,6 +55,10 @@ public class A11_Kinematic extends DefaultGLWindow {
         super("A11 Kinematic", true);
         setMouseZoom(true);
         setMousePan(true);
+
+        // Movimento e cameras numa thread própria, a 60Hz
+        setUpdateRate(60);
+        setUpdateThread(true);
     }
 
     @Override
@@ -71,7 +76,17 @@ public class A11_Kinematic extends DefaultGLWindow {
         configureLighting();
         configureMaterials();
         configureModels();
+        configureCameras();
+    }
+
+    private void configureCameras() {
+        // Criadas antes de a thread de simulação arrancar (primeira frame), depois só ela as altera
+        hoverCamera = new Camera(0, 5, -6);
+        wheatleyCamera = new Camera();
 
+        Cameras.setCurrent(wheatleyCamera);
+        updateCameras();
+        Cameras.publish();
     }
 
     @Override
@@ -180,19 +195,8 @@ public class A11_Kinematic extends DefaultGLWindow {
     public void render(int width, int height) {
         glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
 
-        // Obter o input do utilizador
-        kinematic.handleInput(this);
-
-        // apurar o movimento
-        boolean moved = kinematic.update(timeElapsed());
-
-        // verificar a condição da colisão
-        playerNearDoor =
-                Vectors.sub(kinematic.getPosition(), doorCenter).lengthSquared()
-                        < COLLIDER_DISTANCE * COLLIDER_DISTANCE;
-
-        if (moved)
-            updateCameras();
+        // Camera a partir do último estado publicado
+        setupCamera();
 
         // Posicionar as luzes e ajustar a direção do SPOT
         spotlight.position();
@@ -202,7 +206,7 @@ public class A11_Kinematic extends DefaultGLWindow {
         glPushMatrix();
         {
             // Aplicar transformações do 'kinematic' do wheatley
-            kinematic.transform();
+            kinematic.getState().transform(getAlpha());
             wheatley.render();
         }
         glPopMatrix();
@@ -217,6 +221,23 @@ public class A11_Kinematic extends DefaultGLWindow {
             renderText("Press O to open door", 10, 20);
     }
 
+    @Override
+    protected void update(float dt) {
+        // Obter o input do utilizador
+        kinematic.handleInput(this);
+
+        // apurar o movimento
+        boolean moved = kinematic.update(dt);
+
+        // verificar a condição da colisão
+        playerNearDoor =
+                Vectors.sub(kinematic.getPosition(), doorCenter).lengthSquared()
+                        < COLLIDER_DISTANCE * COLLIDER_DISTANCE;
+
+        if (moved)
+            updateCameras();
+    }
+
     private void drawPainting() {
         glPushMatrix();
         {
@@ -255,21 +276,17 @@ public class A11_Kinematic extends DefaultGLWindow {
     }
 
     private void updateCameras() {
-
         // O novo eye da camera vai ser relativa à posição do wheatley
         // Um pouco para cima (y+)
-        wheatleyCamera.eye = new Vector3f(kinematic.getPosition());
+        wheatleyCamera.eye.set(kinematic.getPosition());
         wheatleyCamera.eye.y += 0.4f;
 
         // Olhar um pouco à frente do wheatley
-        wheatleyCamera.at = new Vector3f(kinematic.getPosition());
+        wheatleyCamera.at.set(kinematic.getPosition());
         wheatleyCamera.at.add(kinematic.getForward());
 
         // forçar a hoverCamera a olhar para o wheatley
-        hoverCamera.at = kinematic.getPosition();
-
-        // Forçar a atualização da camera
-        setupCamera();
+        hoverCamera.at.set(kinematic.getPosition());
     }
 
     private void drawWalls() {
@@ -301,13 +318,6 @@ public class A11_Kinematic extends DefaultGLWindow {
     @Override
     public void resize(int width, int height) {
         setProjectionPerspective(width, height, 100.0f, 0.001f, 500.0f);
-
-        hoverCamera = new Camera(0, 5, -6);
-        wheatleyCamera = new Camera();
-
-        Cameras.setCurrent(wheatleyCamera);
-        updateCameras();
-
         setupCamera();
     }
 
@@ -7,6 +7,7 @@ import pt.ipb.esact.compgraf.tools.Cameras;
 import pt.ipb.esact.compgraf.tools.DefaultGLWindow;
 import pt.ipb.esact.compgraf.tools.Shader;
 import pt.ipb.esact.compgraf.tools.math.GlMath;
+import pt.ipb.esact.compgraf.tools.math.MatrixStack;
 
 import java.awt.event.KeyEvent;
 
@@ -15,6 +16,8 @@ public class A12_Planets extends DefaultGLWindow {
     private final Camera defaultCamera;
     private final Camera followCamera;
 
+    private final MatrixStack matrices = new MatrixStack();
+
     private ObjLoader earthClouds;
     private ObjLoader earth;
     private ObjLoader sun;
@@ -51,29 +54,33 @@ public class A12_Planets extends DefaultGLWindow {
         configureLighting();
 
         earthClouds = new ObjLoader(this);
-        earthClouds.load("assets/models/planets/earth-clouds.obj", "assets/models/planets/earth-clouds.mtl");
+        earthClouds.setSource("assets/models/planets/earth-clouds.obj", "assets/models/planets/earth-clouds.mtl");
 
         earth = new ObjLoader(this);
-        earth.load("assets/models/planets/earth.obj", "assets/models/planets/earth.mtl");
+        earth.setSource("assets/models/planets/earth.obj", "assets/models/planets/earth.mtl");
 
         moon = new ObjLoader(this);
-        moon.load("assets/models/planets/moon.obj", "assets/models/planets/moon.mtl");
+        moon.setSource("assets/models/planets/moon.obj", "assets/models/planets/moon.mtl");
 
         sun = new ObjLoader(this);
-        sun.load("assets/models/planets/sun.obj", "assets/models/planets/sun.mtl");
+        sun.setSource("assets/models/planets/sun.obj", "assets/models/planets/sun.mtl");
 
         mercury = new ObjLoader(this);
-        mercury.load("assets/models/planets/mercury.obj", "assets/models/planets/mercury.mtl");
+        mercury.setSource("assets/models/planets/mercury.obj", "assets/models/planets/mercury.mtl");
+
+        // Versões simplificadas (1/4, 1/16 e 1/64 dos triângulos) para quando os planetas estão longe,
+        // vértices partilhados e triângulos ordenados para a cache de vértices
+        for (ObjLoader planet : new ObjLoader[]{earthClouds, earth, moon, sun, mercury}) {
+            planet.setLods(0.25f, 0.0625f, 0.015625f);
+            planet.setCompress(true);
+            planet.setOptimize(true);
+        }
+
+        // Carregar os modelos em paralelo
+        ObjLoader.loadAll(earthClouds, earth, moon, sun, mercury);
 
         skybox = new Skybox(this);
-        skybox.load(
-                "assets/skyboxes/stars/px.png",
-                "assets/skyboxes/stars/py.png",
-                "assets/skyboxes/stars/pz.png",
-                "assets/skyboxes/stars/nx.png",
-                "assets/skyboxes/stars/ny.png",
-                "assets/skyboxes/stars/nz.png"
-        );
+        skybox.loadCubeMap("assets/skyboxes/stars");
     }
 
     private void configureLighting() {
@@ -204,77 +211,88 @@ public class A12_Planets extends DefaultGLWindow {
         if ("mercury".equals(following))
             followPlanet(MERCURY_DISTANCE, mercuryTrl, 1f);
 
+        // Transformações calculadas no CPU, uma matriz enviada por objeto
+        matrices.setProjection(getProjectionMatrix());
+        matrices.setView(getViewMatrix());
+
         /**
          * =========== SUN ================
          */
-        glPushMatrix();
+        matrices.glPushMatrix();
         {
-            glRotatef(toDegrees(sunRot), 0, 1, 0);
-            sun.render();
+            matrices.glRotatef(toDegrees(sunRot), 0, 1, 0);
+            drawPlanet(sun, height);
         }
-        glPopMatrix();
+        matrices.glPopMatrix();
 
 
         /**
          * =========== EARTH ================
          */
-        glPushMatrix();
+        matrices.glPushMatrix();
         {
             // Movimento de translação
-            glRotatef(toDegrees(earthTrl), 0, 1, 0);
-            glTranslatef(EARTH_DISTANCE, 0, 0);
+            matrices.glRotatef(toDegrees(earthTrl), 0, 1, 0);
+            matrices.glTranslatef(EARTH_DISTANCE, 0, 0);
 
             // Movimento de rotação (terra)
-            glPushMatrix();
+            matrices.glPushMatrix();
             {
-                glRotatef(toDegrees(earthRot), 0, 1, 0);
-                earth.render();
+                matrices.glRotatef(toDegrees(earthRot), 0, 1, 0);
+                drawPlanet(earth, height);
 
                 // Movimento de Translação da lua
-                glRotatef(toDegrees(moonTrl), 0, 1, 0);
-                glTranslatef(EARTH_MOON_DISTANCE, 0, 0);
+                matrices.glRotatef(toDegrees(moonTrl), 0, 1, 0);
+                matrices.glTranslatef(EARTH_MOON_DISTANCE, 0, 0);
 
                 // Movimento de Rotação da lua
-                glPushMatrix();
+                matrices.glPushMatrix();
                 {
-                    glRotatef(toDegrees(moonRot), 0, 1, 0);
-                    moon.render();
+                    matrices.glRotatef(toDegrees(moonRot), 0, 1, 0);
+                    drawPlanet(moon, height);
                 }
-                glPopMatrix();
+                matrices.glPopMatrix();
             }
-            glPopMatrix();
+            matrices.glPopMatrix();
 
             // Movimento de rotação (nuvens)
-            glPushMatrix();
+            matrices.glPushMatrix();
             {
-                glRotatef(toDegrees(-earthRot), 0, 1, 0);
-                earthClouds.render();
+                matrices.glRotatef(toDegrees(-earthRot), 0, 1, 0);
+                drawPlanet(earthClouds, height);
             }
-            glPopMatrix();
+            matrices.glPopMatrix();
 
         }
-        glPopMatrix();
+        matrices.glPopMatrix();
 
         /**
          * =========== MERCURY ================
          */
-        glPushMatrix();
+        matrices.glPushMatrix();
         {
             // Movimento de translação
-            glRotatef(toDegrees(mercuryTrl), 0, 1, 0);
-            glTranslatef(MERCURY_DISTANCE, 0, 0);
+            matrices.glRotatef(toDegrees(mercuryTrl), 0, 1, 0);
+            matrices.glTranslatef(MERCURY_DISTANCE, 0, 0);
 
             // Movimento de rotação (terra)
-            glPushMatrix();
+            matrices.glPushMatrix();
             {
-                glRotatef(toDegrees(mercuryRot), 0, 1, 0);
-                mercury.render();
+                matrices.glRotatef(toDegrees(mercuryRot), 0, 1, 0);
+                drawPlanet(mercury, height);
             }
-            glPopMatrix();
+            matrices.glPopMatrix();
         }
-        glPopMatrix();
+        matrices.glPopMatrix();
 
+        // Deixar só a camera no GL
+        matrices.restore(this);
+    }
 
+    private void drawPlanet(ObjLoader planet, int height) {
+        // O nível de detalhe depende do tamanho do planeta no ecrã
+        matrices.load(this);
+        planet.render(matrices.getFrustum(), matrices.getScreenSize(planet.getBbMin(), planet.getBbMax(), height));
     }
 
     private void followPlanet(float radius, float trl, float up) {
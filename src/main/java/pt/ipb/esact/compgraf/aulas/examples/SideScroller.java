@@ -25,6 +25,12 @@ public class SideScroller extends DefaultGLWindow {
 	// Armazena a posição atual do personagem
 	Vector3f position = new Vector3f(0, 0, 0);
 
+	// Posição no passo anterior da simulação (para interpolar)
+	Vector3f previousPosition = new Vector3f(0, 0, 0);
+
+	// Posição desenhada nesta frame
+	Vector3f renderPosition = new Vector3f(0, 0, 0);
+
 	// Armazena o vetor "FORWARD" da personagem
 	Vector3f forward = Vectors.forward();
 
@@ -35,6 +41,10 @@ public class SideScroller extends DefaultGLWindow {
 	public SideScroller() {
 		super("Side Scroller", true);
 		setMouseZoom(true);
+
+		// Física a 60Hz, independente do frame rate
+		setUpdateRate(60);
+		setVSync(true);
 	}
 	
 	@Override
@@ -97,23 +107,31 @@ public class SideScroller extends DefaultGLWindow {
 	@Override
 	public void render(int width, int height) {
 		glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
-		
+
+		// Interpolar entre os dois últimos passos da simulação
+		renderPosition.interpolate(previousPosition, position, getAlpha());
+
+        // Atualizar a Camera se houver movimento/rotação
+        updateCameraPosition();
+
 		// Posicionar as luzes e ajustar a direção do SPOT
-		glLightfv(GL_LIGHT0, GL_POSITION, newFloatBuffer(position.x - 2, position.y, position.z, 1.0f));
+		glLightfv(GL_LIGHT0, GL_POSITION, newFloatBuffer(renderPosition.x - 2, renderPosition.y, renderPosition.z, 1.0f));
 
 		// Desenhar o Wheatley
 		glPushMatrix();
-			glTranslatef(position.x, position.y, position.z);
+			glTranslatef(renderPosition.x, renderPosition.y, renderPosition.z);
 			character.render();
 		glPopMatrix();
 
 		floor.render();
-		
-		// Atualizar o Movimento
-		updateMovement();
+	}
 
-        // Atualizar a Camera se houver movimento/rotação
-        updateCameraPosition();
+	@Override
+	protected void update(float dt) {
+		previousPosition.set(position);
+
+		// Atualizar o Movimento
+		updateMovement(dt);
 	}
 
     private float jumpTime = 0;
@@ -129,7 +147,7 @@ public class SideScroller extends DefaultGLWindow {
 	 * Efetua os cálculos da velocidade com base no user input
 	 * @return @c TRUE no caso de ser gerado movimento (velocity>0)
 	 */
-	private void updateMovement() {
+	private void updateMovement(float dt) {
 		// Colocar a velocidade a 0s
 		velocity.set(0, 0, 0);
 
@@ -145,14 +163,14 @@ public class SideScroller extends DefaultGLWindow {
 		}
 
 		// Aplicar a MAX_VELOCITY definida ao vetor velocidade 
-		velocity.scale(timeElapsed() * MAX_LINEAR_VELOCITY);
+		velocity.scale(dt * MAX_LINEAR_VELOCITY);
 
         // Aplicar a força do salto
         if(jumpTime > 0) {
-            jumpTime -= timeElapsed();
+            jumpTime -= dt;
 
             Vector3f jumpAccVector = new Vector3f(jumpAcc);
-            jumpAccVector.scale(timeElapsed());
+            jumpAccVector.scale(dt);
             velocity.add(jumpAccVector);
 
             if(jumpTime < 0)
@@ -162,7 +180,7 @@ public class SideScroller extends DefaultGLWindow {
         // Aplicar __SEMPRE__ a força da gravidade
         if(position.y > 0) {
             Vector3f gravityAccVector = new Vector3f(gravityAcc);
-            gravityAccVector.scale(timeElapsed());
+            gravityAccVector.scale(dt);
             velocity.add(gravityAccVector);
         }
 
@@ -181,11 +199,11 @@ public class SideScroller extends DefaultGLWindow {
 		// O novo eye da camera vai ser relativa à posição do character
 		// Movê-lo para trás na direção do "FORWARD"
 		// Um pouco para cima (y+)
-		camera.eye = new Vector3f(position);
+		camera.eye = new Vector3f(renderPosition);
 		camera.eye.x -= 5f;
 
 		// Olhar um pouco à frente do character
-		camera.at = new Vector3f(position);
+		camera.at = new Vector3f(renderPosition);
 
 		// Forçar a atualização da camera
 		setupCamera();
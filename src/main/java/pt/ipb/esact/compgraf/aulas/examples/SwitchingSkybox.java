@@ -75,23 +75,9 @@ public class SwitchingSkybox extends DefaultGLWindow {
 
     private void configureSkyboxes() {
         skybox1 = new Skybox(this);
-        skybox1.load(
-                "assets/skyboxes/landscape/px.png",
-                "assets/skyboxes/landscape/py.png",
-                "assets/skyboxes/landscape/pz.png",
-                "assets/skyboxes/landscape/nx.png",
-                "assets/skyboxes/landscape/ny.png",
-                "assets/skyboxes/landscape/nz.png"
-        );
+        skybox1.loadCubeMap("assets/skyboxes/landscape");
         skybox2 = new Skybox(this);
-        skybox2.load(
-                "assets/skyboxes/planet1/px.png",
-                "assets/skyboxes/planet1/py.png",
-                "assets/skyboxes/planet1/pz.png",
-                "assets/skyboxes/planet1/nx.png",
-                "assets/skyboxes/planet1/ny.png",
-                "assets/skyboxes/planet1/nz.png"
-        );
+        skybox2.loadCubeMap("assets/skyboxes/planet1");
 
         currentSkybox = skybox1;
     }
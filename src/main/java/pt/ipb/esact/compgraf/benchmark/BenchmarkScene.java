@@ -0,0 +1,43 @@
+package pt.ipb.esact.compgraf.benchmark;
+
+import javax.vecmath.Vector3f;
+
+import pt.ipb.esact.compgraf.aulas.a07.A07_ExercicioSolucao;
+import pt.ipb.esact.compgraf.aulas.a09.A09_Shaders2;
+import pt.ipb.esact.compgraf.aulas.a11.A11_Board;
+import pt.ipb.esact.compgraf.aulas.a12.A12_Planets;
+import pt.ipb.esact.compgraf.tools.DefaultGLWindow;
+
+/**
+ * The demos measured by {@link SceneBenchmark}, each one with the camera path that goes around
+ * its content
+ */
+public enum BenchmarkScene {
+
+	A12_PLANETS(A12_Planets.class, new CameraPath(new Vector3f(0, 0, 0), 45f, 20f, 600)),
+
+	// the camera follows the sphere, the path is relative to it
+	A11_BOARD(A11_Board.class, new CameraPath(new Vector3f(0, 0, 0), 6f, 4f, 600)),
+
+	A07_EXERCICIO_SOLUCAO(A07_ExercicioSolucao.class, new CameraPath(new Vector3f(0, 1, 0), 3.5f, 2f, 600)),
+
+	A09_SHADERS2(A09_Shaders2.class, new CameraPath(new Vector3f(0, 1, 0), 2.5f, 1.5f, 600));
+
+	private final Class<? extends DefaultGLWindow> type;
+
+	private final CameraPath path;
+
+	private BenchmarkScene(Class<? extends DefaultGLWindow> type, CameraPath path) {
+		this.type = type;
+		this.path = path;
+	}
+
+	public Class<? extends DefaultGLWindow> getType() {
+		return type;
+	}
+
+	public CameraPath getPath() {
+		return path;
+	}
+
+}
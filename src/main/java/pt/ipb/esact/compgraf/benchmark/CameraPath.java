@@ -0,0 +1,45 @@
+package pt.ipb.esact.compgraf.benchmark;
+
+import javax.vecmath.Vector3f;
+
+import pt.ipb.esact.compgraf.tools.Camera;
+
+/**
+ * Orbit around a point that only depends on the frame number, every run sees the same images
+ */
+public class CameraPath {
+
+	private final Vector3f center;
+
+	private final float radius;
+
+	private final float height;
+
+	// frames per turn
+	private final int lap;
+
+	public CameraPath(Vector3f center, float radius, float height, int lap) {
+		this.center = new Vector3f(center);
+		this.radius = radius;
+		this.height = height;
+		this.lap = lap;
+	}
+
+	/**
+	 * Places the camera for the given frame
+	 */
+	public void apply(Camera camera, long frame) {
+		double angle = 2.0 * Math.PI * (frame % lap) / lap;
+
+		// goes up and down twice per turn
+		float y = height * (1.0f + 0.25f * (float) Math.sin(2.0 * angle));
+
+		camera.eye.set(
+				center.x + radius * (float) Math.cos(angle),
+				center.y + y,
+				center.z + radius * (float) Math.sin(angle));
+		camera.at.set(center);
+		camera.up.set(0, 1, 0);
+	}
+
+}
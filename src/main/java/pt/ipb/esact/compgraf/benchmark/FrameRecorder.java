@@ -0,0 +1,233 @@
+package pt.ipb.esact.compgraf.benchmark;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Locale;
+
+import javax.media.opengl.GL2;
+
+import pt.ipb.esact.compgraf.tools.Cameras;
+import pt.ipb.esact.compgraf.tools.DefaultGLWindow;
+import pt.ipb.esact.compgraf.tools.FrameProbe;
+import pt.ipb.esact.compgraf.tools.RenderStats;
+
+/**
+ * Drives the camera along a {@link CameraPath} and records, after the warmup, the time, the
+ * {@link RenderStats} counters and the bytes allocated by the GL thread of each frame.
+ */
+public class FrameRecorder implements FrameProbe {
+
+	private final CameraPath path;
+
+	private final int warmup;
+
+	private final long[] times;
+
+	private final int[] drawCalls;
+
+	private final int[] stateChanges;
+
+	private final int[] visibleObjects;
+
+	private final int[] culledObjects;
+
+	private final long[] allocated;
+
+	// null when the JVM doesn't count allocations per thread
+	private final com.sun.management.ThreadMXBean threads;
+
+	private String renderer;
+
+	private int recorded;
+
+	private long start;
+
+	private long startAllocated;
+
+	private long gcCount;
+
+	private long gcTime;
+
+	// 0 before the warmup ends, 1 measuring, 2 done
+	private int gcPhase;
+
+	public FrameRecorder(CameraPath path, int warmup, int frames) {
+		this.path = path;
+		this.warmup = warmup;
+		this.times = new long[frames];
+		this.drawCalls = new int[frames];
+		this.stateChanges = new int[frames];
+		this.visibleObjects = new int[frames];
+		this.culledObjects = new int[frames];
+		this.allocated = new long[frames];
+
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if(bean instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+			threads = (com.sun.management.ThreadMXBean) bean;
+			threads.setThreadAllocatedMemoryEnabled(true);
+		} else {
+			threads = null;
+		}
+	}
+
+	@Override
+	public void beforeRender(DefaultGLWindow window, long frame) {
+		if(renderer == null)
+			renderer = window.glGetString(GL2.GL_VENDOR) + " " + window.glGetString(GL2.GL_RENDERER) + " " + window.glGetString(GL2.GL_VERSION);
+
+		path.apply(Cameras.getCurrent(), frame);
+		window.setupCamera();
+
+		if(frame == warmup)
+			gcSnapshot();
+
+		startAllocated = allocatedBytes();
+		start = System.nanoTime();
+	}
+
+	@Override
+	public void afterRender(DefaultGLWindow window, long frame) {
+		// the time includes the GPU
+		window.glFinish();
+		long end = System.nanoTime();
+		long bytes = allocatedBytes() - startAllocated;
+
+		if(frame < warmup || recorded == times.length)
+			return;
+
+		times[recorded] = end - start;
+		drawCalls[recorded] = RenderStats.getCurrentDrawCalls();
+		stateChanges[recorded] = RenderStats.getCurrentStateChanges();
+		visibleObjects[recorded] = RenderStats.getCurrentVisibleObjects();
+		culledObjects[recorded] = RenderStats.getCurrentCulledObjects();
+		allocated[recorded] = threads != null ? bytes : -1;
+		recorded++;
+
+		if(recorded == times.length)
+			gcDelta();
+	}
+
+	public int getRecorded() {
+		return recorded;
+	}
+
+	/**
+	 * Writes the statistics of the recorded frames as the fields of the current object
+	 */
+	void write(JsonWriter json) {
+		json.name("renderer").value(renderer);
+		json.name("frames").value(recorded);
+
+		long[] t = Arrays.copyOf(times, recorded);
+		Arrays.sort(t);
+		json.name("frameTimeMs").beginObject()
+			.name("mean").value(mean(t) / 1e6)
+			.name("min").value(recorded > 0 ? t[0] / 1e6 : Double.NaN)
+			.name("p50").value(percentile(t, 50) / 1e6)
+			.name("p90").value(percentile(t, 90) / 1e6)
+			.name("p95").value(percentile(t, 95) / 1e6)
+			.name("p99").value(percentile(t, 99) / 1e6)
+			.name("max").value(recorded > 0 ? t[recorded - 1] / 1e6 : Double.NaN)
+			.endObject();
+
+		json.name("drawCalls");
+		counters(json, drawCalls);
+		json.name("stateChanges");
+		counters(json, stateChanges);
+		json.name("visibleObjects");
+		counters(json, visibleObjects);
+		json.name("culledObjects");
+		counters(json, culledObjects);
+
+		json.name("allocatedBytesPerFrame");
+		if(threads == null) {
+			json.value((String) null);
+		} else {
+			long[] a = Arrays.copyOf(allocated, recorded);
+			Arrays.sort(a);
+			json.beginObject()
+				.name("mean").value(mean(a))
+				.name("p50").value(percentile(a, 50))
+				.name("p99").value(percentile(a, 99))
+				.name("max").value(recorded > 0 ? a[recorded - 1] : 0)
+				.endObject();
+		}
+
+		if(gcPhase == 1)
+			gcDelta();
+		json.name("gc");
+		if(gcPhase == 0)
+			json.value((String) null);
+		else
+			json.beginObject()
+				.name("collections").value(gcCount)
+				.name("timeMs").value(gcTime)
+				.endObject();
+	}
+
+	/**
+	 * One line for the log
+	 */
+	public String summary() {
+		long[] t = Arrays.copyOf(times, recorded);
+		Arrays.sort(t);
+		return String.format(Locale.ROOT, "%d frames, p50 %.2f ms, p99 %.2f ms, max %.2f ms",
+				recorded, percentile(t, 50) / 1e6, percentile(t, 99) / 1e6, recorded > 0 ? t[recorded - 1] / 1e6 : Double.NaN);
+	}
+
+	private void counters(JsonWriter json, int[] values) {
+		long[] v = new long[recorded];
+		for(int i = 0; i < recorded; i++)
+			v[i] = values[i];
+		Arrays.sort(v);
+		json.beginObject()
+			.name("mean").value(mean(v))
+			.name("min").value(recorded > 0 ? v[0] : 0)
+			.name("max").value(recorded > 0 ? v[recorded - 1] : 0)
+			.endObject();
+	}
+
+	private long allocatedBytes() {
+		return threads != null ? threads.getThreadAllocatedBytes(Thread.currentThread().getId()) : 0L;
+	}
+
+	private void gcSnapshot() {
+		gcPhase = 1;
+		gcCount = 0;
+		gcTime = 0;
+		for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			gcCount -= Math.max(0, gc.getCollectionCount());
+			gcTime -= Math.max(0, gc.getCollectionTime());
+		}
+	}
+
+	private void gcDelta() {
+		gcPhase = 2;
+		for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			gcCount += Math.max(0, gc.getCollectionCount());
+			gcTime += Math.max(0, gc.getCollectionTime());
+		}
+	}
+
+	private static double mean(long[] values) {
+		if(values.length == 0)
+			return Double.NaN;
+		double sum = 0;
+		for(long v : values)
+			sum += v;
+		return sum / values.length;
+	}
+
+	/**
+	 * Nearest rank over sorted values
+	 */
+	private static double percentile(long[] sorted, int p) {
+		if(sorted.length == 0)
+			return Double.NaN;
+		int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+		return sorted[Math.max(0, rank - 1)];
+	}
+
+}
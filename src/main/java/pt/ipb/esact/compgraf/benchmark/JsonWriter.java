@@ -0,0 +1,116 @@
+package pt.ipb.esact.compgraf.benchmark;
+
+import java.util.Locale;
+
+/**
+ * Minimal JSON output for the benchmark results, objects and arrays are written in order
+ */
+class JsonWriter {
+
+	private final StringBuilder out = new StringBuilder();
+
+	// a comma is needed before the next value
+	private boolean separate;
+
+	JsonWriter beginObject() {
+		value();
+		out.append('{');
+		separate = false;
+		return this;
+	}
+
+	JsonWriter endObject() {
+		out.append('}');
+		separate = true;
+		return this;
+	}
+
+	JsonWriter beginArray() {
+		value();
+		out.append('[');
+		separate = false;
+		return this;
+	}
+
+	JsonWriter endArray() {
+		out.append(']');
+		separate = true;
+		return this;
+	}
+
+	JsonWriter name(String name) {
+		value();
+		quote(name);
+		out.append(':');
+		separate = false;
+		return this;
+	}
+
+	JsonWriter value(String value) {
+		value();
+		if(value == null)
+			out.append("null");
+		else
+			quote(value);
+		separate = true;
+		return this;
+	}
+
+	JsonWriter value(long value) {
+		value();
+		out.append(value);
+		separate = true;
+		return this;
+	}
+
+	JsonWriter value(double value) {
+		value();
+		if(Double.isNaN(value) || Double.isInfinite(value))
+			out.append("null");
+		else
+			out.append(String.format(Locale.ROOT, "%.4f", value));
+		separate = true;
+		return this;
+	}
+
+	/**
+	 * Inserts an already formatted JSON value
+	 */
+	JsonWriter raw(String json) {
+		value();
+		out.append(json);
+		separate = true;
+		return this;
+	}
+
+	private void value() {
+		if(separate)
+			out.append(',');
+	}
+
+	private void quote(String s) {
+		out.append('"');
+		for(int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			switch(c) {
+				case '"': out.append("\\\""); break;
+				case '\\': out.append("\\\\"); break;
+				case '\n': out.append("\\n"); break;
+				case '\r': out.append("\\r"); break;
+				case '\t': out.append("\\t"); break;
+				default:
+					if(c < 0x20)
+						out.append(String.format("\\u%04x", (int) c));
+					else
+						out.append(c);
+			}
+		}
+		out.append('"');
+	}
+
+	@Override
+	public String toString() {
+		return out.toString();
+	}
+
+}
@@ -0,0 +1,98 @@
+package pt.ipb.esact.compgraf.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import pt.ipb.esact.compgraf.engine.obj.MeshOptimizer;
+import pt.ipb.esact.compgraf.engine.obj.ObjMesh;
+import pt.ipb.esact.compgraf.engine.obj.ObjMeshBuilder;
+import pt.ipb.esact.compgraf.engine.obj.ObjParser;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Vertex cache report of every .obj under a folder, without GL: the vertices transformed per
+ * triangle (ACMR) and per vertex (ATVR) of a FIFO cache, with the triangles in file order and after
+ * the {@link MeshOptimizer}.
+ * <pre>
+ * java -cp ... pt.ipb.esact.compgraf.benchmark.MeshReport [--models assets/models] [--cache 16]
+ * </pre>
+ * "raw" is the mesh loaded without compression (a vertex per corner), "welded" shares the equal
+ * vertices (see {@link pt.ipb.esact.compgraf.engine.obj.ObjLoader#setCompress(boolean)}).
+ */
+public class MeshReport {
+
+	private File models = new File("assets/models");
+
+	private int cacheSize = MeshOptimizer.DEFAULT_CACHE_SIZE;
+
+	public static void main(String[] args) throws IOException {
+		MeshReport report = new MeshReport();
+		report.parse(args);
+		report.run();
+	}
+
+	private void parse(String[] args) {
+		for(int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if(i + 1 >= args.length)
+				throw new IllegalArgumentException("Missing value for " + arg);
+			String value = args[++i];
+
+			switch(arg) {
+				case "--models":
+					models = new File(value);
+					break;
+				case "--cache":
+					cacheSize = Integer.parseInt(value);
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown option " + arg);
+			}
+		}
+	}
+
+	private void run() throws IOException {
+		List<File> files = Lists.newArrayList();
+		find(models, files);
+		Collections.sort(files);
+
+		System.out.println(String.format(Locale.ROOT, "%-40s %8s | %-13s | %-13s | %-13s | %8s %6s",
+				"model (FIFO " + cacheSize + ")", "tris", "raw acmr/atvr", "welded", "optimized", "clusters", "ms"));
+		for(File file : files) {
+			byte[] bytes = Files.readAllBytes(file.toPath());
+			ObjMesh raw = new ObjMeshBuilder(false).build(new ObjParser(1.0f).parse(bytes, 0, bytes.length));
+			ObjMesh welded = new ObjMeshBuilder(true).build(new ObjParser(1.0f).parse(bytes, 0, bytes.length));
+
+			MeshOptimizer optimizer = new MeshOptimizer(cacheSize);
+			long start = System.nanoTime();
+			ObjMesh optimized = optimizer.optimize(welded);
+			long ms = (System.nanoTime() - start) / 1000000;
+
+			System.out.println(String.format(Locale.ROOT, "%-40s %8d | %s | %s | %s | %8d %6d",
+					models.toPath().relativize(file.toPath()), welded.getIndexCount() / 3,
+					ratios(raw), ratios(welded), ratios(optimized), optimizer.getClusterCount(), ms));
+		}
+	}
+
+	private String ratios(ObjMesh mesh) {
+		return String.format(Locale.ROOT, "%5.3f / %5.3f", MeshOptimizer.acmr(mesh, cacheSize), MeshOptimizer.atvr(mesh, cacheSize));
+	}
+
+	private static void find(File folder, List<File> files) {
+		File[] children = folder.listFiles();
+		if(children == null)
+			return;
+		for(File child : children) {
+			if(child.isDirectory())
+				find(child, files);
+			else if(child.getName().toLowerCase(Locale.ROOT).endsWith(".obj"))
+				files.add(child);
+		}
+	}
+
+}
@@ -0,0 +1,234 @@
+package pt.ipb.esact.compgraf.benchmark;
+
+import java.awt.EventQueue;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import pt.ipb.esact.compgraf.tools.DefaultGLWindow;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+
+/**
+ * Renders the {@link BenchmarkScene}s headless (see {@link pt.ipb.esact.compgraf.tools.HeadlessOptions})
+ * along their camera path and writes the frame times, draw calls and allocations to a JSON file.
+ * <p>
+ * Each scene and resolution runs in its own JVM (the engine keeps static state: cameras, texture
+ * cache, GL capabilities), with a fixed time step so the animations are the same in every run.
+ * <pre>
+ * java -cp ... pt.ipb.esact.compgraf.benchmark.SceneBenchmark
+ *     [--scenes A12_PLANETS,A11_BOARD] [--sizes 1280x720,1920x1080]
+ *     [--frames 600] [--warmup 120] [--dt 0.016667] [--out benchmark.json]
+ * </pre>
+ * The draw calls and state changes are the ones counted by the engine ({@link pt.ipb.esact.compgraf.tools.RenderStats}),
+ * the glut primitives aren't included.
+ */
+public class SceneBenchmark {
+
+	private static final Logger logger = LoggerFactory.getLogger(SceneBenchmark.class);
+
+	// prefix of the result line in the output of the child process
+	private static final String RESULT = "BENCHMARK-RESULT ";
+
+	private List<BenchmarkScene> scenes = Lists.newArrayList(BenchmarkScene.values());
+
+	private List<String> sizes = Lists.newArrayList("1280x720");
+
+	private int frames = 600;
+
+	private int warmup = 120;
+
+	private double dt = 1.0 / 60.0;
+
+	private File out = new File("benchmark.json");
+
+	// child mode
+	private BenchmarkScene run;
+
+	public static void main(String[] args) throws Exception {
+		SceneBenchmark benchmark = new SceneBenchmark();
+		benchmark.parse(args);
+
+		if(benchmark.run != null) {
+			// the JVM only runs this scene, no need to wait for the GL threads
+			String result = benchmark.runScene(benchmark.run, benchmark.sizes.get(0));
+			System.out.println(RESULT + result);
+			System.exit(0);
+		}
+
+		benchmark.runAll();
+	}
+
+	private void parse(String[] args) {
+		for(int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if(i + 1 >= args.length)
+				throw new IllegalArgumentException("Missing value for " + arg);
+			String value = args[++i];
+
+			switch(arg) {
+				case "--scenes":
+					scenes.clear();
+					for(String name : Splitter.on(',').trimResults().omitEmptyStrings().split(value))
+						scenes.add(BenchmarkScene.valueOf(name.toUpperCase(Locale.ROOT)));
+					break;
+				case "--sizes":
+					sizes = Lists.newArrayList(Splitter.on(',').trimResults().omitEmptyStrings().split(value));
+					break;
+				case "--frames":
+					frames = Integer.parseInt(value);
+					break;
+				case "--warmup":
+					warmup = Integer.parseInt(value);
+					break;
+				case "--dt":
+					dt = Double.parseDouble(value);
+					break;
+				case "--out":
+					out = new File(value);
+					break;
+				case "--run":
+					run = BenchmarkScene.valueOf(value.toUpperCase(Locale.ROOT));
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown option " + arg);
+			}
+		}
+	}
+
+	private void runAll() throws IOException, InterruptedException {
+		JsonWriter json = new JsonWriter();
+		json.beginObject()
+			.name("date").value(new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ").format(new Date()))
+			.name("java").value(System.getProperty("java.vm.name") + " " + System.getProperty("java.version"))
+			.name("os").value(System.getProperty("os.name") + " " + System.getProperty("os.version") + " " + System.getProperty("os.arch"))
+			.name("processors").value(Runtime.getRuntime().availableProcessors())
+			.name("frames").value(frames)
+			.name("warmup").value(warmup)
+			.name("dt").raw(String.valueOf(dt))
+			.name("runs").beginArray();
+
+		for(BenchmarkScene scene : scenes)
+			for(String size : sizes)
+				json.raw(fork(scene, size));
+
+		json.endArray().endObject();
+
+		Files.write(out.toPath(), json.toString().getBytes(StandardCharsets.UTF_8));
+		logger.info("Results written to {}", out.getAbsolutePath());
+	}
+
+	/**
+	 * Runs one scene in a new JVM with the same classpath
+	 */
+	private String fork(BenchmarkScene scene, String size) throws IOException, InterruptedException {
+		List<String> command = Lists.newArrayList();
+		command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+		for(String arg : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+			// heap, GC and properties; no agents (debugger)
+			if(arg.startsWith("-X") || arg.startsWith("-D"))
+				command.add(arg);
+		}
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(SceneBenchmark.class.getName());
+		command.add("--run");
+		command.add(scene.name());
+		command.add("--sizes");
+		command.add(size);
+		command.add("--frames");
+		command.add(String.valueOf(frames));
+		command.add("--warmup");
+		command.add(String.valueOf(warmup));
+		command.add("--dt");
+		command.add(String.valueOf(dt));
+
+		logger.info("Running {} at {}", scene, size);
+		Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+
+		String result = null;
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+			String line;
+			while((line = reader.readLine()) != null) {
+				if(line.startsWith(RESULT))
+					result = line.substring(RESULT.length());
+				else
+					System.err.println("  " + line);
+			}
+		}
+		int exit = process.waitFor();
+
+		if(result == null) {
+			logger.error("{} at {} failed (exit code {})", scene, size, exit);
+			return new JsonWriter().beginObject()
+				.name("scene").value(scene.name())
+				.name("size").value(size)
+				.name("error").value("exit code " + exit)
+				.endObject().toString();
+		}
+		return result;
+	}
+
+	/**
+	 * Child side: renders the scene in this JVM
+	 */
+	private String runScene(final BenchmarkScene scene, String size) throws Exception {
+		System.setProperty("compgraf.headless", "true");
+		System.setProperty("compgraf.frames", String.valueOf(warmup + frames));
+		System.setProperty("compgraf.size", size);
+		System.setProperty("compgraf.dt", String.valueOf(dt));
+
+		final FrameRecorder recorder = new FrameRecorder(scene.getPath(), warmup, frames);
+		final DefaultGLWindow[] window = new DefaultGLWindow[1];
+
+		// on the EDT like the main() methods, the probe is set before the first frame
+		try {
+			EventQueue.invokeAndWait(new Runnable() {
+				@Override
+				public void run() {
+					window[0] = create(scene.getType());
+					window[0].setFrameProbe(recorder);
+				}
+			});
+		} catch (InvocationTargetException e) {
+			throw new IllegalStateException("Could not create " + scene, e.getCause());
+		}
+
+		window[0].awaitHeadless();
+		logger.info("{} at {}: {}", scene, size, recorder.summary());
+
+		JsonWriter json = new JsonWriter();
+		json.beginObject()
+			.name("scene").value(scene.name())
+			.name("class").value(scene.getType().getName())
+			.name("size").value(size);
+		recorder.write(json);
+		return json.endObject().toString();
+	}
+
+	private static DefaultGLWindow create(Class<? extends DefaultGLWindow> type) {
+		try {
+			// some examples have a private constructor
+			Constructor<? extends DefaultGLWindow> constructor = type.getDeclaredConstructor();
+			constructor.setAccessible(true);
+			return constructor.newInstance();
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Could not create " + type.getName(), e);
+		}
+	}
+
+}
@@ -1,5 +1,9 @@
 package pt.ipb.esact.compgraf.engine;
 
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
 import javax.media.opengl.GL2;
 import javax.vecmath.Vector3f;
 
@@ -10,20 +14,52 @@ import com.jogamp.opengl.util.texture.Texture;
 
 public class Skybox implements ReleaseListener {
 
-	private Texture TEX_POSITIVE_X;
-	private Texture TEX_POSITIVE_Y;
-	private Texture TEX_POSITIVE_Z;
-	private Texture TEX_NEGATIVE_X;
-	private Texture TEX_NEGATIVE_Y;
-	private Texture TEX_NEGATIVE_Z;
+	private static final TextureCache.Sampler CUBE_MAP_SAMPLER = new TextureCache.Sampler(false, GL2.GL_LINEAR, GL2.GL_LINEAR, GL2.GL_CLAMP_TO_EDGE, GL2.GL_CLAMP_TO_EDGE);
+
+	// Os 8 cantos do cubo, a posição também é a direção no cube map
+	private static final float[] CUBE_VERTICES = {
+		-1, -1, -1,
+		 1, -1, -1,
+		-1,  1, -1,
+		 1,  1, -1,
+		-1, -1,  1,
+		 1, -1,  1,
+		-1,  1,  1,
+		 1,  1,  1,
+	};
+
+	// CCW vistos de fora (as faces de dentro são as traseiras)
+	private static final byte[] CUBE_INDICES = {
+		1, 3, 7,  1, 7, 5,	// +x
+		0, 4, 6,  0, 6, 2,	// -x
+		2, 6, 7,  2, 7, 3,	// +y
+		0, 1, 5,  0, 5, 4,	// -y
+		4, 5, 7,  4, 7, 6,	// +z
+		0, 2, 3,  0, 3, 1,	// -z
+	};
+
+	// pz, px, nz, nx, py, ny: the order of the face lists
+	private TextureHandle[] faces;
 	
 	private Texture TEX_SINGLE;
 	
+	// shared with the other skyboxes of the same images
+	private CubeMapHandle cubeMap;
+	
+	private int vertexBuffer;
+	
+	private int indexBuffer;
+	
 	private DefaultGLWindow gl;
 	
 	private int LIST;
 	
+	private int LIST_COUNT = 0;
+	
 	private float scale = 100.0f;
+	
+	// reused by render()
+	private final Vector3f direction = new Vector3f();
 
 	public Skybox(DefaultGLWindow window) {
 		this.gl = window;
@@ -39,24 +75,63 @@ public class Skybox implements ReleaseListener {
 	}
 	
 	public void load(String ddpx, String ddpy, String ddpz, String ddnx, String ddny, String ddnz) {
-		// Setup das texturas
-		TEX_POSITIVE_X = GlTools.loadTexture(ddpx);
-		TEX_POSITIVE_Y = GlTools.loadTexture(ddpy);
-		TEX_POSITIVE_Z = GlTools.loadTexture(ddpz);
-		TEX_NEGATIVE_X = GlTools.loadTexture(ddnx);
-		TEX_NEGATIVE_Y = GlTools.loadTexture(ddny);
-		TEX_NEGATIVE_Z = GlTools.loadTexture(ddnz);
+		// Setup das texturas (decoded in the background, white until they arrive)
+		faces = new TextureHandle[] {
+			GlTools.loadTextureAsync(ddpz),
+			GlTools.loadTextureAsync(ddpx),
+			GlTools.loadTextureAsync(ddnz),
+			GlTools.loadTextureAsync(ddnx),
+			GlTools.loadTextureAsync(ddpy),
+			GlTools.loadTextureAsync(ddny)
+		};
 		
 		createMultiple();
 	}
 
-	private void createMultiple() {
-		LIST = gl.glGenLists(1);
+	/**
+	 * Loads the px, py, pz, nx, ny and nz png images of the directory into a cube map
+	 */
+	public void loadCubeMap(String directory) {
+		loadCubeMap(
+			new File(directory, "px.png").getPath(),
+			new File(directory, "py.png").getPath(),
+			new File(directory, "pz.png").getPath(),
+			new File(directory, "nx.png").getPath(),
+			new File(directory, "ny.png").getPath(),
+			new File(directory, "nz.png").getPath()
+		);
+	}
+	
+	/**
+	 * Same images as {@link #load(String, String, String, String, String, String)}, drawn from
+	 * a single cube map texture with one draw call
+	 */
+	public void loadCubeMap(String ddpx, String ddpy, String ddpz, String ddnx, String ddny, String ddnz) {
+		// pz is drawn at -z and nz at +z (see createMultiple)
+		cubeMap = TextureCache.acquireCubeMap(new String[] { ddpx, ddnx, ddpy, ddny, ddnz, ddpz }, CUBE_MAP_SAMPLER);
 		
-		gl.glNewList(LIST, GL2.GL_COMPILE);
+		createCube();
+	}
+	
+	private void createCube() {
+		int[] ids = new int[2];
+		gl.glGenBuffers(2, ids, 0);
+		vertexBuffer = ids[0];
+		indexBuffer = ids[1];
 		
-		gl.glPushAttrib(GL2.GL_ENABLE_BIT | GL2.GL_POLYGON_BIT);
-			gl.glEnable(GL2.GL_TEXTURE_2D);
+		gl.glBindBuffer(GL2.GL_ARRAY_BUFFER, vertexBuffer);
+		gl.glBufferData(GL2.GL_ARRAY_BUFFER, CUBE_VERTICES.length * Float.SIZE / 8, FloatBuffer.wrap(CUBE_VERTICES), GL2.GL_STATIC_DRAW);
+		gl.glBindBuffer(GL2.GL_ARRAY_BUFFER, 0);
+		
+		gl.glBindBuffer(GL2.GL_ELEMENT_ARRAY_BUFFER, indexBuffer);
+		gl.glBufferData(GL2.GL_ELEMENT_ARRAY_BUFFER, CUBE_INDICES.length, ByteBuffer.wrap(CUBE_INDICES), GL2.GL_STATIC_DRAW);
+		gl.glBindBuffer(GL2.GL_ELEMENT_ARRAY_BUFFER, 0);
+	}
+	
+	private void renderCube() {
+		gl.glPushAttrib(GL2.GL_ENABLE_BIT | GL2.GL_POLYGON_BIT | GL2.GL_TEXTURE_BIT);
+			gl.glDisable(GL2.GL_TEXTURE_2D);
+			gl.glEnable(GL2.GL_TEXTURE_CUBE_MAP);
 			gl.glDisable(GL2.GL_LIGHTING);
 			gl.glDisable(GL2.GL_BLEND);
 			gl.glDisable(GL2.GL_DEPTH_TEST);
@@ -67,66 +142,123 @@ public class Skybox implements ReleaseListener {
 			// Just in case we set all vertices to white.
 			gl.glColor4f(1.0f, 1.0f, 1.0f, 1.0f);
 	
-			int mode = GL2.GL_QUADS;
+			// enquanto carrega fica o 0 (textura incompleta = sem textura)
+			cubeMap.bind(GlTools.gl());
+			
+			gl.glScalef(scale, scale, scale);
+			
+			gl.glEnableClientState(GL2.GL_VERTEX_ARRAY);
+			gl.glEnableClientState(GL2.GL_TEXTURE_COORD_ARRAY);
+			
+			gl.glBindBuffer(GL2.GL_ARRAY_BUFFER, vertexBuffer);
+			gl.glVertexPointer(3, GL2.GL_FLOAT, 0, 0);
+			gl.glTexCoordPointer(3, GL2.GL_FLOAT, 0, 0);
+			gl.glBindBuffer(GL2.GL_ELEMENT_ARRAY_BUFFER, indexBuffer);
+			
+			gl.glDrawElements(GL2.GL_TRIANGLES, CUBE_INDICES.length, GL2.GL_UNSIGNED_BYTE, 0);
+			RenderStats.drawCall();
+			
+			gl.glBindBuffer(GL2.GL_ARRAY_BUFFER, 0);
+			gl.glBindBuffer(GL2.GL_ELEMENT_ARRAY_BUFFER, 0);
+			
+			gl.glDisableClientState(GL2.GL_VERTEX_ARRAY);
+			gl.glDisableClientState(GL2.GL_TEXTURE_COORD_ARRAY);
 	
-			// Quad anterior
-			TEX_POSITIVE_Z.bind(gl);
+		// Restore enable bits and texture binding
+		gl.glPopAttrib();
+	}
+	
+	/**
+	 * One list per face, without the texture bind: the textures may still be loading
+	 */
+	private void createMultiple() {
+		LIST_COUNT = 6;
+		LIST = gl.glGenLists(LIST_COUNT);
+		
+		int mode = GL2.GL_QUADS;
+		
+		// Quad anterior
+		gl.glNewList(LIST, GL2.GL_COMPILE);
 			gl.glBegin(mode);
 				gl.glTexCoord2f(0, 0); gl.glVertex3f(  scale, -scale, -scale );
 				gl.glTexCoord2f(1, 0); gl.glVertex3f( -scale, -scale, -scale );
 				gl.glTexCoord2f(1, 1); gl.glVertex3f( -scale,  scale, -scale );
 				gl.glTexCoord2f(0, 1); gl.glVertex3f(  scale,  scale, -scale );
 			gl.glEnd();
+		gl.glEndList();
 	
-			// Quad na direit
-			TEX_POSITIVE_X.bind(gl);
+		// Quad na direit
+		gl.glNewList(LIST + 1, GL2.GL_COMPILE);
 			gl.glBegin(mode);
 				gl.glTexCoord2f(0, 0); gl.glVertex3f(  scale, -scale,  scale );
 				gl.glTexCoord2f(1, 0); gl.glVertex3f(  scale, -scale, -scale );
 				gl.glTexCoord2f(1, 1); gl.glVertex3f(  scale,  scale, -scale );
 				gl.glTexCoord2f(0, 1); gl.glVertex3f(  scale,  scale,  scale );
 			gl.glEnd();
+		gl.glEndList();
 	
-			// Quad posterior
-			TEX_NEGATIVE_Z.bind(gl);
+		// Quad posterior
+		gl.glNewList(LIST + 2, GL2.GL_COMPILE);
 			gl.glBegin(mode);
 				gl.glTexCoord2f(0, 0); gl.glVertex3f( -scale, -scale,  scale );
 				gl.glTexCoord2f(1, 0); gl.glVertex3f(  scale, -scale,  scale );
 				gl.glTexCoord2f(1, 1); gl.glVertex3f(  scale,  scale,  scale );
 				gl.glTexCoord2f(0, 1); gl.glVertex3f( -scale,  scale,  scale );
 			gl.glEnd();
+		gl.glEndList();
 	
-			// Quad da esquerda
-			TEX_NEGATIVE_X.bind(gl);
+		// Quad da esquerda
+		gl.glNewList(LIST + 3, GL2.GL_COMPILE);
 			gl.glBegin(mode);
 				gl.glTexCoord2f(0, 0); gl.glVertex3f( -scale, -scale, -scale );
 				gl.glTexCoord2f(1, 0); gl.glVertex3f( -scale, -scale,  scale );
 				gl.glTexCoord2f(1, 1); gl.glVertex3f( -scale,  scale,  scale );
 				gl.glTexCoord2f(0, 1); gl.glVertex3f( -scale,  scale, -scale );
 			gl.glEnd();
+		gl.glEndList();
 	
-			// Quad superior
-			TEX_POSITIVE_Y.bind(gl);
+		// Quad superior
+		gl.glNewList(LIST + 4, GL2.GL_COMPILE);
 			gl.glBegin(mode);
 				gl.glTexCoord2f(0, 1); gl.glVertex3f( -scale,  scale, -scale );
 				gl.glTexCoord2f(0, 0); gl.glVertex3f( -scale,  scale,  scale );
 				gl.glTexCoord2f(1, 0); gl.glVertex3f(  scale,  scale,  scale );
 				gl.glTexCoord2f(1, 1); gl.glVertex3f(  scale,  scale, -scale );
 			gl.glEnd();
+		gl.glEndList();
 	
-			// Quad inferior
-			TEX_NEGATIVE_Y.bind(gl);
+		// Quad inferior
+		gl.glNewList(LIST + 5, GL2.GL_COMPILE);
 			gl.glBegin(mode);
 				gl.glTexCoord2f(1, 0); gl.glVertex3f(  scale, -scale, -scale );
 				gl.glTexCoord2f(1, 1); gl.glVertex3f(  scale, -scale,  scale );
 				gl.glTexCoord2f(0, 1); gl.glVertex3f( -scale, -scale,  scale );
 				gl.glTexCoord2f(0, 0); gl.glVertex3f( -scale, -scale, -scale );
 			gl.glEnd();
+		gl.glEndList();
+	}
+	
+	private void renderMultiple() {
+		gl.glPushAttrib(GL2.GL_ENABLE_BIT | GL2.GL_POLYGON_BIT);
+			gl.glEnable(GL2.GL_TEXTURE_2D);
+			gl.glDisable(GL2.GL_LIGHTING);
+			gl.glDisable(GL2.GL_BLEND);
+			gl.glDisable(GL2.GL_DEPTH_TEST);
+	
+			// Ativar o CULLING para as faces de fora (hint: estamos dentro do cube)
+			gl.glCullFace(GL2.GL_FRONT);
+	
+			// Just in case we set all vertices to white.
+			gl.glColor4f(1.0f, 1.0f, 1.0f, 1.0f);
+	
+			GL2 gl2 = GlTools.gl();
+			for(int i=0; i<faces.length; i++) {
+				faces[i].bind(gl2);
+				gl.glCallList(LIST + i);
+			}
 	
 		// Restore enable bits and matrix
 		gl.glPopAttrib();
-		
-		gl.glEndList();
 	}
 	
 	public void render() {
@@ -135,7 +267,7 @@ public class Skybox implements ReleaseListener {
 			return;
 		
 		// p = Camera.at - Camera.eye = vetor direcao
-		Vector3f p = Vectors.sub(cam.at, cam.eye);
+		Vector3f p = Vectors.sub(cam.at, cam.eye, direction);
 		p.normalize();
 
 		gl.glPushAttrib(GL2.GL_ENABLE_BIT);
@@ -147,28 +279,34 @@ public class Skybox implements ReleaseListener {
 					p.x, 0.0f, p.z,
 					0.0f, 1.0f, 0.0f
 				);
-				gl.glCallList(LIST);
+				if(cubeMap != null)
+					renderCube();
+				else if(faces != null)
+					renderMultiple();
+				else
+					gl.glCallList(LIST);
 			gl.glPopMatrix();
 		gl.glPopAttrib();
 	}
 	
 	@Override
 	public void release(GL2 gl) {
-		if(TEX_SINGLE == null) {
-			TEX_POSITIVE_X.destroy(gl);
-			TEX_POSITIVE_Y.destroy(gl);
-			TEX_POSITIVE_Z.destroy(gl);
-			TEX_NEGATIVE_X.destroy(gl);
-			TEX_NEGATIVE_Y.destroy(gl);
-			TEX_NEGATIVE_Z.destroy(gl);
+		if(cubeMap != null) {
+			TextureCache.release(gl, cubeMap);
+			gl.glDeleteBuffers(2, new int[] { vertexBuffer, indexBuffer }, 0);
+		} else if(TEX_SINGLE == null) {
+			for(TextureHandle face : faces)
+				face.destroy(gl);
 		} else {
 			TEX_SINGLE.destroy(gl);
 		}
-		gl.glDeleteLists(LIST, 1);
+		if(LIST_COUNT > 0)
+			gl.glDeleteLists(LIST, LIST_COUNT);
 	}
 
 	private void createSingle() {
-		LIST = gl.glGenLists(1);
+		LIST_COUNT = 1;
+		LIST = gl.glGenLists(LIST_COUNT);
 		
 		gl.glNewList(LIST, GL2.GL_COMPILE);
 		
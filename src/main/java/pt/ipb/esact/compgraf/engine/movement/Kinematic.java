@@ -4,7 +4,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import pt.ipb.esact.compgraf.tools.DefaultGLWindow;
 import pt.ipb.esact.compgraf.tools.GlTools;
-import pt.ipb.esact.compgraf.tools.math.GlMath;
+import pt.ipb.esact.compgraf.tools.math.Rotation;
 import pt.ipb.esact.compgraf.tools.math.Vectors;
 
 import javax.vecmath.Vector3f;
@@ -13,6 +13,11 @@ public class Kinematic {
 
     private static final Logger logger = LoggerFactory.getLogger(Kinematic.class);
 
+    // never set again: shared by every kinematic
+    private static final Rotation STRAFE_LEFT = new Rotation(90.0f, Vectors.up());
+
+    private static final Rotation STRAFE_RIGHT = new Rotation(-90.0f, Vectors.up());
+
     private float maxLinearSpeed = 3.0f;
 
     private float maxAngularSpeed = 10.0f;
@@ -23,6 +28,16 @@ public class Kinematic {
 
     private float orientation = 0.0f;
 
+    // reused by update()
+    private final Vector3f velocity = new Vector3f();
+
+    private final Vector3f strafe = new Vector3f();
+
+    private final Rotation turn = new Rotation();
+
+    // published after each update, read by the render thread
+    private volatile KinematicState state = new KinematicState(position, orientation, null);
+
     private boolean moveForward = false;
 
     private boolean moveBackward = false;
@@ -80,17 +95,17 @@ public class Kinematic {
         boolean needsUpdate = false;
         if (rotateLeft) {
             orientation += maxAngularSpeed * timeElapsed;
-            forward = GlMath.rotate(orientation, Vectors.up(), Vectors.forward());
+            turn.set(orientation, 0.0f, 1.0f, 0.0f).transform(Vectors.forward(forward), forward);
             needsUpdate = true;
         }
 
         if (rotateRight) {
             orientation -= maxAngularSpeed * timeElapsed;
-            forward = GlMath.rotate(orientation, Vectors.up(), Vectors.forward());
+            turn.set(orientation, 0.0f, 1.0f, 0.0f).transform(Vectors.forward(forward), forward);
             needsUpdate = true;
         }
 
-        Vector3f velocity = new Vector3f();
+        velocity.set(0.0f, 0.0f, 0.0f);
 
         if (moveForward || moveBackward)
             velocity.add(forward);
@@ -99,15 +114,19 @@ public class Kinematic {
             velocity.negate();
 
         if (strafeLeft)
-            velocity.add(GlMath.rotate(90.0f, Vectors.up(), forward));
+            velocity.add(STRAFE_LEFT.transform(forward, strafe));
 
         if (strafeRight)
-            velocity.add(GlMath.rotate(-90.0f, Vectors.up(), forward));
+            velocity.add(STRAFE_RIGHT.transform(forward, strafe));
 
         velocity.scale(maxLinearSpeed * timeElapsed);
 
         position.add(velocity);
 
+        // Parado: o estado publicado continua válido
+        if (!state.isAt(position, orientation))
+            state = new KinematicState(position, orientation, state);
+
         return velocity.lengthSquared() > 0 || needsUpdate;
     }
 
@@ -127,8 +146,29 @@ public class Kinematic {
             rotateRight = context.isKeyPressed(rotateRightKey);
     }
 
+    /**
+     * The movement otherwise read by {@link #handleInput(DefaultGLWindow)}, no window needed (benchmarks)
+     */
+    void setMovement(boolean forward, boolean backward, boolean strafeLeft, boolean strafeRight, boolean rotateLeft, boolean rotateRight) {
+        this.moveForward = forward;
+        this.moveBackward = backward;
+        this.strafeLeft = strafeLeft;
+        this.strafeRight = strafeRight;
+        this.rotateLeft = rotateLeft;
+        this.rotateRight = rotateRight;
+    }
+
     public void setPosition(float x, float y, float z) {
         this.position = new Vector3f(x, y, z);
+        // teleport: nothing to interpolate from
+        this.state = new KinematicState(position, orientation, null);
+    }
+
+    /**
+     * @return The state published by the last {@link #update(float)}, safe to use from another thread
+     */
+    public KinematicState getState() {
+        return state;
     }
 
     public void setBackwardKey(String backwardKey) {
@@ -0,0 +1,74 @@
+package pt.ipb.esact.compgraf.engine.movement;
+
+import pt.ipb.esact.compgraf.tools.GlTools;
+
+import javax.vecmath.Vector3f;
+
+/**
+ * Immutable snapshot of a {@link Kinematic} after an update, holding the previous step as well so
+ * a render thread can interpolate between the two without locking.
+ */
+public final class KinematicState {
+
+    private final float x, y, z;
+
+    private final float orientation;
+
+    private final float previousX, previousY, previousZ;
+
+    private final float previousOrientation;
+
+    KinematicState(Vector3f position, float orientation, KinematicState previous) {
+        this.x = position.x;
+        this.y = position.y;
+        this.z = position.z;
+        this.orientation = orientation;
+
+        KinematicState p = previous != null ? previous : this;
+        this.previousX = p.x;
+        this.previousY = p.y;
+        this.previousZ = p.z;
+        this.previousOrientation = p.orientation;
+    }
+
+    public Vector3f getPosition() {
+        return new Vector3f(x, y, z);
+    }
+
+    public float getOrientation() {
+        return orientation;
+    }
+
+    /**
+     * @param alpha 0 for the previous step, 1 for the current one
+     */
+    public Vector3f getPosition(float alpha, Vector3f out) {
+        out.set(lerp(previousX, x, alpha), lerp(previousY, y, alpha), lerp(previousZ, z, alpha));
+        return out;
+    }
+
+    public float getOrientation(float alpha) {
+        return lerp(previousOrientation, orientation, alpha);
+    }
+
+    /**
+     * Same as {@link Kinematic#transform()}, at the interpolated state
+     */
+    public void transform(float alpha) {
+        GlTools.gl().glTranslatef(lerp(previousX, x, alpha), lerp(previousY, y, alpha), lerp(previousZ, z, alpha));
+        GlTools.gl().glRotatef(getOrientation(alpha), 0, 1, 0);
+    }
+
+    /**
+     * @return {@code true} when both steps are at the given values (nothing left to interpolate)
+     */
+    boolean isAt(Vector3f position, float orientation) {
+        return x == position.x && y == position.y && z == position.z && this.orientation == orientation
+                && previousX == x && previousY == y && previousZ == z && previousOrientation == orientation;
+    }
+
+    private static float lerp(float a, float b, float alpha) {
+        return a + (b - a) * alpha;
+    }
+
+}
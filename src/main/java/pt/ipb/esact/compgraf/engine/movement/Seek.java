@@ -2,18 +2,26 @@ package pt.ipb.esact.compgraf.engine.movement;
 
 import pt.ipb.esact.compgraf.tools.math.Vectors;
 
+import javax.vecmath.Vector3f;
+
 public class Seek extends TargetedSteering {
 
+    // reused: valid until the next getSteering()
+    private final SteeringOutput output = new SteeringOutput();
+
     @Override
     SteeringOutput getSteering() {
-        SteeringOutput output = new SteeringOutput();
+        Vector3f linear = output.getLinear();
+        Vector3f target = getTarget();
 
-        if (getTarget() != null) {
-            output.setLinear(Vectors.sub(getTarget(), getPosition()));
-            if (output.getLinear().lengthSquared() > 0) {
-                output.getLinear().normalize();
-                output.getLinear().scale(getMaxAcceleration());
+        if (target != null) {
+            Vectors.sub(target, getPosition(), linear);
+            if (linear.lengthSquared() > 0) {
+                linear.normalize();
+                linear.scale(getMaxAcceleration());
             }
+        } else {
+            linear.set(0.0f, 0.0f, 0.0f);
         }
 
         output.setAngular(0);
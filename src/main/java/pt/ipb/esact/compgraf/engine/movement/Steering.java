@@ -4,7 +4,8 @@ import javax.vecmath.Vector3f;
 
 public abstract class Steering {
 
-    private Vector3f position = new Vector3f();
+    // volatile: may be replaced from another thread while the simulation thread steers
+    private volatile Vector3f position = new Vector3f();
 
     private float maxSpeed = 10.0f;
 
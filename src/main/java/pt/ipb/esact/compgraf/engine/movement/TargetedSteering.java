@@ -4,7 +4,7 @@ import javax.vecmath.Vector3f;
 
 public abstract class TargetedSteering extends Steering {
 
-    private Vector3f target;
+    private volatile Vector3f target;
 
     public TargetedSteering() {
     }
@@ -17,6 +17,9 @@ public abstract class TargetedSteering extends Steering {
         return target;
     }
 
+    /**
+     * The vector is used as is: publish a new one instead of changing it while another thread steers
+     */
     public void setTarget(Vector3f target) {
         this.target = target;
     }
@@ -0,0 +1,249 @@
+package pt.ipb.esact.compgraf.engine.obj;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkElementIndex;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+import javax.media.opengl.GL2;
+
+import pt.ipb.esact.compgraf.tools.DefaultGLWindow;
+import pt.ipb.esact.compgraf.tools.ReleaseListener;
+import pt.ipb.esact.compgraf.tools.math.Matrix4;
+
+/**
+ * Per instance data for {@link ObjLoader#renderInstanced(pt.ipb.esact.compgraf.tools.Shader, InstanceBuffer)}:
+ * a packed column-major 4x4 transform (16 floats) and optionally a RGBA color (4 floats) per
+ * instance. The values are kept on the CPU and go to one {@code GL_STREAM_DRAW} buffer only when
+ * they change, orphaning the previous storage so the upload never waits for the frames still
+ * using it.
+ */
+public class InstanceBuffer implements ReleaseListener {
+
+	public static final int TRANSFORM_SIZE = 16;
+
+	public static final int COLOR_SIZE = 4;
+
+	private static final int FLOAT_SIZE = Float.SIZE / 8;
+
+	private final boolean colored;
+
+	private FloatBuffer transforms;
+
+	private FloatBuffer colors;
+
+	private int count;
+
+	private boolean dirty = true;
+
+	private int buffer;
+
+	// instances that fit in the GL buffer
+	private int bufferCapacity;
+
+	public InstanceBuffer(int capacity, boolean colored) {
+		checkArgument(capacity > 0, "capacity must be positive");
+		this.colored = colored;
+		allocate(capacity);
+	}
+
+	public InstanceBuffer(DefaultGLWindow reference, int capacity, boolean colored) {
+		this(capacity, colored);
+		reference.addReleaseListener(this);
+	}
+
+	private void allocate(int capacity) {
+		FloatBuffer previous = transforms;
+		transforms = ByteBuffer.allocateDirect(capacity * TRANSFORM_SIZE * FLOAT_SIZE).order(ByteOrder.nativeOrder()).asFloatBuffer();
+		if(previous != null)
+			transforms.put((FloatBuffer) previous.duplicate().position(0).limit(count * TRANSFORM_SIZE)).clear();
+
+		if(!colored)
+			return;
+		previous = colors;
+		colors = ByteBuffer.allocateDirect(capacity * COLOR_SIZE * FLOAT_SIZE).order(ByteOrder.nativeOrder()).asFloatBuffer();
+		if(previous != null)
+			colors.put((FloatBuffer) previous.duplicate().position(0).limit(count * COLOR_SIZE)).clear();
+	}
+
+	public int capacity() {
+		return transforms.capacity() / TRANSFORM_SIZE;
+	}
+
+	public int size() {
+		return count;
+	}
+
+	public boolean isColored() {
+		return colored;
+	}
+
+	/**
+	 * Removes every instance, keeping the memory
+	 */
+	public void clear() {
+		count = 0;
+		dirty = true;
+	}
+
+	/**
+	 * @return The index of the new instance, white and with the given transform
+	 */
+	public int add(Matrix4 transform) {
+		int i = grow();
+		setTransform(i, transform);
+		return i;
+	}
+
+	/**
+	 * @return The index of the new instance, white and only translated
+	 */
+	public int add(float x, float y, float z) {
+		int i = grow();
+		setTranslation(i, x, y, z);
+		return i;
+	}
+
+	private int grow() {
+		if(count == capacity())
+			allocate(2 * capacity());
+		int i = count++;
+		if(colored)
+			setColor(i, 1.0f, 1.0f, 1.0f, 1.0f);
+		return i;
+	}
+
+	public void setTransform(int i, Matrix4 transform) {
+		checkElementIndex(i, count);
+		int offset = i * TRANSFORM_SIZE;
+		for(int j = 0; j < TRANSFORM_SIZE; j++)
+			transforms.put(offset + j, transform.m[j]);
+		dirty = true;
+	}
+
+	/**
+	 * Replaces the transform with a translation
+	 */
+	public void setTranslation(int i, float x, float y, float z) {
+		checkElementIndex(i, count);
+		int offset = i * TRANSFORM_SIZE;
+		for(int j = 0; j < TRANSFORM_SIZE; j++)
+			transforms.put(offset + j, j % 5 == 0 ? 1.0f : 0.0f);
+		transforms.put(offset + 12, x);
+		transforms.put(offset + 13, y);
+		transforms.put(offset + 14, z);
+		dirty = true;
+	}
+
+	public void setColor(int i, float r, float g, float b, float a) {
+		checkArgument(colored, "instances without color");
+		checkElementIndex(i, count);
+		int offset = i * COLOR_SIZE;
+		colors.put(offset, r);
+		colors.put(offset + 1, g);
+		colors.put(offset + 2, b);
+		colors.put(offset + 3, a);
+		dirty = true;
+	}
+
+	/**
+	 * Replaces every instance with a copy of the packed values
+	 *
+	 * @param transforms 16 floats per instance, from the current position
+	 * @param colors 4 floats per instance or {@code null} (white)
+	 */
+	public void set(FloatBuffer transforms, FloatBuffer colors, int count) {
+		checkArgument(transforms.remaining() >= count * TRANSFORM_SIZE, "missing transforms");
+		checkArgument(colors == null || colors.remaining() >= count * COLOR_SIZE, "missing colors");
+		checkArgument(colors == null || colored, "instances without color");
+		if(count > capacity()) {
+			this.count = 0;
+			allocate(Math.max(count, 2 * capacity()));
+		}
+		this.count = count;
+
+		FloatBuffer source = (FloatBuffer) transforms.duplicate().limit(transforms.position() + count * TRANSFORM_SIZE);
+		this.transforms.clear();
+		this.transforms.put(source).clear();
+
+		if(colored) {
+			this.colors.clear();
+			if(colors != null) {
+				source = (FloatBuffer) colors.duplicate().limit(colors.position() + count * COLOR_SIZE);
+				this.colors.put(source);
+			} else {
+				for(int i = 0; i < count * COLOR_SIZE; i++)
+					this.colors.put(1.0f);
+			}
+			this.colors.clear();
+		}
+		dirty = true;
+	}
+
+	/**
+	 * @return The packed transforms, call {@link #invalidate()} after changing them
+	 */
+	public FloatBuffer getTransforms() {
+		return transforms;
+	}
+
+	/**
+	 * @return The packed colors or {@code null}, call {@link #invalidate()} after changing them
+	 */
+	public FloatBuffer getColors() {
+		return colors;
+	}
+
+	/**
+	 * The values were changed directly, upload them again before the next draw
+	 */
+	public void invalidate() {
+		dirty = true;
+	}
+
+	/**
+	 * Byte offset of the colors in the GL buffer
+	 */
+	long colorOffset() {
+		return (long) bufferCapacity * TRANSFORM_SIZE * FLOAT_SIZE;
+	}
+
+	/**
+	 * Binds the GL buffer to {@code GL_ARRAY_BUFFER}, uploading the instances when they changed
+	 */
+	void bind(GL2 gl) {
+		if(buffer == 0) {
+			int[] ids = new int[1];
+			gl.glGenBuffers(1, ids, 0);
+			buffer = ids[0];
+		}
+		gl.glBindBuffer(GL2.GL_ARRAY_BUFFER, buffer);
+
+		if(!dirty)
+			return;
+
+		// new storage every upload (orphaning): the driver keeps the old one while it's in use
+		bufferCapacity = Math.max(bufferCapacity, capacity());
+		int instanceSize = (TRANSFORM_SIZE + (colored ? COLOR_SIZE : 0)) * FLOAT_SIZE;
+		gl.glBufferData(GL2.GL_ARRAY_BUFFER, (long) bufferCapacity * instanceSize, null, GL2.GL_STREAM_DRAW);
+		gl.glBufferSubData(GL2.GL_ARRAY_BUFFER, 0, (long) count * TRANSFORM_SIZE * FLOAT_SIZE, transforms);
+		if(colored)
+			gl.glBufferSubData(GL2.GL_ARRAY_BUFFER, colorOffset(), (long) count * COLOR_SIZE * FLOAT_SIZE, colors);
+		dirty = false;
+	}
+
+	@Override
+	public void release(GL2 gl) {
+		if(gl == null)
+			return;
+
+		if(buffer != 0)
+			gl.glDeleteBuffers(1, new int[] { buffer }, 0);
+		buffer = 0;
+		bufferCapacity = 0;
+		dirty = true;
+	}
+
+}
@@ -0,0 +1,388 @@
+package pt.ipb.esact.compgraf.engine.obj;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static pt.ipb.esact.compgraf.engine.obj.ObjMesh.VERTEX_SIZE;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Reorders the triangles and vertices of an {@link ObjMesh} for the GPU, without changing what is
+ * drawn. Doesn't need a GL context.
+ * <ol>
+ * <li>The triangles of each part are sorted for the post-transform vertex cache with Tipsify
+ * (Sander, Nehab and Barczak, 2007): fans around the vertices that are still in the cache.</li>
+ * <li>That order is cut in clusters where it jumps (dead ends) or where the cache is already well
+ * used, and the clusters facing out of the part are drawn first, so they hide the others (less
+ * overdraw from every side).</li>
+ * <li>The vertices are numbered by first use, so the vertex fetch reads the buffer in order.</li>
+ * </ol>
+ * Only shared vertices can hit the cache: the uncompressed meshes (one vertex per corner, see
+ * {@link ObjLoader#setCompress(boolean)}) get the overdraw order but keep 3 vertices per triangle.
+ */
+public class MeshOptimizer {
+
+	public static final int DEFAULT_CACHE_SIZE = 16;
+
+	// a cluster ends when its vertices per triangle drop below this (cache already well used)
+	private static final float CLUSTER_ACMR = 0.75f;
+
+	private final int cacheSize;
+
+	private int clusterCount;
+
+	// per part, local vertices
+	private int[] adjacencyOffsets;
+
+	private int[] adjacency;
+
+	private int[] live;
+
+	private int[] cacheTime;
+
+	private int[] deadEnds;
+
+	private int[] candidates;
+
+	private boolean[] emitted;
+
+	public MeshOptimizer() {
+		this(DEFAULT_CACHE_SIZE);
+	}
+
+	/**
+	 * @param cacheSize Entries of the FIFO vertex cache the order is made for
+	 */
+	public MeshOptimizer(int cacheSize) {
+		checkArgument(cacheSize >= 3, "cache too small");
+		this.cacheSize = cacheSize;
+	}
+
+	/**
+	 * @return Clusters (of every part) drawn by the last {@link #optimize(ObjMesh)}
+	 */
+	public int getClusterCount() {
+		return clusterCount;
+	}
+
+	public ObjMesh optimize(ObjMesh mesh) {
+		IntBuffer source = mesh.getIndices();
+		int[] indices = new int[mesh.getIndexCount()];
+		for(int i = 0; i < indices.length; i++)
+			indices[i] = source.get(i);
+
+		float[] vertices = new float[mesh.getVertexCount() * VERTEX_SIZE];
+		mesh.getVertices().duplicate().get(vertices);
+
+		clusterCount = 0;
+		int[] local = new int[mesh.getVertexCount()];
+		Arrays.fill(local, -1);
+		List<ObjMesh.Part> parts = Lists.newArrayListWithCapacity(mesh.getParts().size());
+		for(ObjMesh.Part part : mesh.getParts()) {
+			optimizePart(vertices, indices, part.triOffset, part.triCount / 3, local);
+
+			ObjMesh.Part copy = new ObjMesh.Part(part.name);
+			copy.material = part.material;
+			copy.smooth = part.smooth;
+			copy.triOffset = part.triOffset;
+			copy.triCount = part.triCount;
+			parts.add(copy);
+		}
+
+		// vertices in the order they are first used, the unused ones are dropped
+		int[] remap = local;
+		Arrays.fill(remap, -1);
+		float[] ordered = new float[vertices.length];
+		int vertexCount = 0;
+		for(int i = 0; i < indices.length; i++) {
+			int v = indices[i];
+			if(remap[v] == -1) {
+				System.arraycopy(vertices, v * VERTEX_SIZE, ordered, vertexCount * VERTEX_SIZE, VERTEX_SIZE);
+				remap[v] = vertexCount++;
+			}
+			indices[i] = remap[v];
+		}
+
+		FloatBuffer vertexBuffer = FloatBuffer.wrap(ordered, 0, vertexCount * VERTEX_SIZE).slice();
+		return new ObjMesh(vertexBuffer, vertexCount, IntBuffer.wrap(indices), parts, mesh.getBbMin(), mesh.getBbMax(), mesh.getCornerCount());
+	}
+
+	/**
+	 * Sorts the triangles {@code [offset, offset + 3 * triangles)} of {@code indices} in place
+	 *
+	 * @param local -1 for every vertex, left that way
+	 */
+	private void optimizePart(float[] vertices, int[] indices, int offset, int triangles, int[] local) {
+		if(triangles == 0)
+			return;
+
+		// the part's vertices, numbered from 0
+		int[] global = new int[3 * triangles];
+		int[] tris = new int[3 * triangles];
+		int count = 0;
+		for(int i = 0; i < 3 * triangles; i++) {
+			int v = indices[offset + i];
+			if(local[v] == -1) {
+				local[v] = count;
+				global[count++] = v;
+			}
+			tris[i] = local[v];
+		}
+		for(int i = 0; i < count; i++)
+			local[global[i]] = -1;
+
+		int[] clusters = new int[triangles + 1];
+		int[] order = new int[triangles];
+		int hard = tipsify(tris, triangles, count, order, clusters);
+		int clustered = split(tris, order, clusters, hard);
+		clusterCount += clustered;
+
+		int[] sorted = sortClusters(vertices, global, tris, order, clusters, clustered);
+		int o = offset;
+		for(int c : sorted)
+			for(int t = clusters[c]; t < clusters[c + 1]; t++)
+				for(int k = 0; k < 3; k++)
+					indices[o++] = global[tris[3 * order[t] + k]];
+	}
+
+	/**
+	 * @param order The triangles in the new order
+	 * @param clusters The first triangle (in {@code order}) of each cluster, then the triangle count
+	 * @return The number of clusters
+	 */
+	private int tipsify(int[] tris, int triangles, int vertexCount, int[] order, int[] clusters) {
+		allocate(triangles, vertexCount);
+
+		// triangles around each vertex
+		Arrays.fill(adjacencyOffsets, 0, vertexCount + 1, 0);
+		for(int i = 0; i < 3 * triangles; i++)
+			adjacencyOffsets[tris[i] + 1]++;
+		for(int v = 0; v < vertexCount; v++) {
+			adjacencyOffsets[v + 1] += adjacencyOffsets[v];
+			live[v] = adjacencyOffsets[v + 1] - adjacencyOffsets[v];
+		}
+		int[] fill = Arrays.copyOf(adjacencyOffsets, vertexCount);
+		for(int i = 0; i < 3 * triangles; i++)
+			adjacency[fill[tris[i]]++] = i / 3;
+
+		Arrays.fill(cacheTime, 0, vertexCount, 0);
+		Arrays.fill(emitted, 0, triangles, false);
+		int deadEndCount = 0;
+		int time = cacheSize + 1;
+		int cursor = 0;
+		int emittedCount = 0;
+		int clusterCount = 1;
+		clusters[0] = 0;
+
+		int fan = 0;
+		while(fan >= 0) {
+			int candidateCount = 0;
+			for(int a = adjacencyOffsets[fan]; a < adjacencyOffsets[fan + 1]; a++) {
+				int t = adjacency[a];
+				if(emitted[t])
+					continue;
+				for(int k = 0; k < 3; k++) {
+					int v = tris[3 * t + k];
+					deadEnds[deadEndCount++] = v;
+					candidates[candidateCount++] = v;
+					live[v]--;
+					if(time - cacheTime[v] > cacheSize)
+						cacheTime[v] = time++;
+				}
+				emitted[t] = true;
+				order[emittedCount++] = t;
+			}
+
+			// the candidate that is still in the cache for its remaining triangles, the oldest one
+			int next = -1;
+			int best = -1;
+			for(int i = 0; i < candidateCount; i++) {
+				int v = candidates[i];
+				if(live[v] <= 0)
+					continue;
+				int priority = 0;
+				if(time - cacheTime[v] + 2 * live[v] <= cacheSize)
+					priority = time - cacheTime[v];
+				if(priority > best) {
+					best = priority;
+					next = v;
+				}
+			}
+
+			if(next == -1) {
+				// dead end: a recent vertex with triangles left, or the first one in the input
+				while(deadEndCount > 0 && next == -1) {
+					int v = deadEnds[--deadEndCount];
+					if(live[v] > 0)
+						next = v;
+				}
+				for(; next == -1 && cursor < vertexCount; cursor++)
+					if(live[cursor] > 0)
+						next = cursor;
+				if(next != -1 && emittedCount > clusters[clusterCount - 1])
+					clusters[clusterCount++] = emittedCount;
+			}
+			fan = next;
+		}
+		clusters[clusterCount] = triangles;
+		return clusterCount;
+	}
+
+	private void allocate(int triangles, int vertexCount) {
+		if(live == null || live.length < vertexCount) {
+			live = new int[vertexCount];
+			cacheTime = new int[vertexCount];
+			adjacencyOffsets = new int[vertexCount + 1];
+		}
+		if(emitted == null || emitted.length < triangles) {
+			emitted = new boolean[triangles];
+			adjacency = new int[3 * triangles];
+			deadEnds = new int[3 * triangles];
+			candidates = new int[3 * triangles];
+		}
+	}
+
+	/**
+	 * Cuts the clusters again where the vertices transformed per triangle drop below
+	 * {@link #CLUSTER_ACMR}, starting with an empty cache
+	 *
+	 * @return The new number of clusters (up to the number of triangles)
+	 */
+	private int split(int[] tris, int[] order, int[] clusters, int count) {
+		int[] hard = Arrays.copyOf(clusters, count + 1);
+		int result = 0;
+		int time = cacheSize + 1;
+		Arrays.fill(cacheTime, 0);
+		for(int c = 0; c < count; c++) {
+			clusters[result++] = hard[c];
+			int misses = 0;
+			int start = hard[c];
+			// forget the previous cluster
+			time += cacheSize + 1;
+			for(int t = hard[c]; t < hard[c + 1]; t++) {
+				for(int k = 0; k < 3; k++) {
+					int v = tris[3 * order[t] + k];
+					if(time - cacheTime[v] > cacheSize) {
+						cacheTime[v] = time++;
+						misses++;
+					}
+				}
+				if(t + 1 < hard[c + 1] && misses < CLUSTER_ACMR * (t + 1 - start)) {
+					clusters[result++] = t + 1;
+					start = t + 1;
+					misses = 0;
+					time += cacheSize + 1;
+				}
+			}
+		}
+		clusters[result] = hard[count];
+		return result;
+	}
+
+	/**
+	 * @return The clusters by decreasing {@code dot(centroid - part centroid, normal)}, the ones
+	 * facing out first (Sander et al.)
+	 */
+	private int[] sortClusters(float[] vertices, int[] global, int[] tris, int[] order, int[] clusters, int count) {
+		// centroid (weighted by area) and normal (area sized) of each cluster
+		final double[] centroids = new double[3 * count];
+		double[] normals = new double[3 * count];
+		double[] part = new double[3];
+		double partArea = 0.0;
+		double[] normal = new double[3];
+		for(int c = 0; c < count; c++) {
+			double area = 0.0;
+			for(int t = clusters[c]; t < clusters[c + 1]; t++) {
+				int a = global[tris[3 * order[t]]] * VERTEX_SIZE;
+				int b = global[tris[3 * order[t] + 1]] * VERTEX_SIZE;
+				int d = global[tris[3 * order[t] + 2]] * VERTEX_SIZE;
+				cross(vertices, a, b, d, normal);
+				double twice = Math.sqrt(normal[0] * normal[0] + normal[1] * normal[1] + normal[2] * normal[2]);
+				for(int k = 0; k < 3; k++) {
+					normals[3 * c + k] += normal[k];
+					centroids[3 * c + k] += twice * (vertices[a + k] + vertices[b + k] + vertices[d + k]) / 3.0;
+				}
+				area += twice;
+			}
+			for(int k = 0; k < 3; k++) {
+				part[k] += centroids[3 * c + k];
+				if(area > 0.0)
+					centroids[3 * c + k] /= area;
+			}
+			partArea += area;
+		}
+		if(partArea > 0.0)
+			for(int k = 0; k < 3; k++)
+				part[k] /= partArea;
+
+		final double[] metric = new double[count];
+		for(int c = 0; c < count; c++) {
+			double length = Math.sqrt(normals[3 * c] * normals[3 * c] + normals[3 * c + 1] * normals[3 * c + 1] + normals[3 * c + 2] * normals[3 * c + 2]);
+			if(length == 0.0)
+				continue;
+			for(int k = 0; k < 3; k++)
+				metric[c] += (centroids[3 * c + k] - part[k]) * normals[3 * c + k] / length;
+		}
+
+		Integer[] sorted = new Integer[count];
+		for(int c = 0; c < count; c++)
+			sorted[c] = c;
+		Arrays.sort(sorted, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return Double.compare(metric[b], metric[a]);
+			}
+		});
+
+		int[] result = new int[count];
+		for(int c = 0; c < count; c++)
+			result[c] = sorted[c];
+		return result;
+	}
+
+	private static void cross(float[] v, int a, int b, int c, double[] out) {
+		double ux = v[b] - v[a], uy = v[b + 1] - v[a + 1], uz = v[b + 2] - v[a + 2];
+		double wx = v[c] - v[a], wy = v[c + 1] - v[a + 1], wz = v[c + 2] - v[a + 2];
+		out[0] = uy * wz - uz * wy;
+		out[1] = uz * wx - ux * wz;
+		out[2] = ux * wy - uy * wx;
+	}
+
+	/**
+	 * Average cache miss ratio: vertices transformed per triangle with a FIFO cache, from 0.5
+	 * (best case on big meshes) to 3
+	 */
+	public static float acmr(ObjMesh mesh, int cacheSize) {
+		int triangles = mesh.getIndexCount() / 3;
+		return triangles == 0 ? 0.0f : (float) misses(mesh, cacheSize) / triangles;
+	}
+
+	/**
+	 * Average transform to vertex ratio: vertices transformed per vertex with a FIFO cache, 1 is the
+	 * best case
+	 */
+	public static float atvr(ObjMesh mesh, int cacheSize) {
+		return mesh.getVertexCount() == 0 ? 0.0f : (float) misses(mesh, cacheSize) / mesh.getVertexCount();
+	}
+
+	private static int misses(ObjMesh mesh, int cacheSize) {
+		IntBuffer indices = mesh.getIndices();
+		int[] cacheTime = new int[mesh.getVertexCount()];
+		int time = cacheSize + 1;
+		int misses = 0;
+		for(int i = 0; i < mesh.getIndexCount(); i++) {
+			int v = indices.get(i);
+			if(time - cacheTime[v] > cacheSize) {
+				cacheTime[v] = time++;
+				misses++;
+			}
+		}
+		return misses;
+	}
+
+}
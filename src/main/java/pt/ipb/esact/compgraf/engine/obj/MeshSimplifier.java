@@ -0,0 +1,616 @@
+package pt.ipb.esact.compgraf.engine.obj;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static pt.ipb.esact.compgraf.engine.obj.ObjMesh.NORMAL_OFFSET;
+import static pt.ipb.esact.compgraf.engine.obj.ObjMesh.TEXCOORD_OFFSET;
+import static pt.ipb.esact.compgraf.engine.obj.ObjMesh.VERTEX_SIZE;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Quadric error metric simplification (Garland and Heckbert) of an {@link ObjMesh} by half-edge
+ * collapses: a vertex is moved onto one of its neighbours, so no new vertex (nor texcoord) is ever
+ * created. The vertices with more than one texcoord (UV seams), on a hard edge of a smooth object,
+ * on an open border or shared by two objects never move, the seams stay where they were. Collapses
+ * that flip a triangle, make the surface non-manifold (or two triangles the same face turned over)
+ * or leave a closed piece with less than 4 triangles (a tetrahedron) are refused. The flat shaded
+ * objects get their face normals again.
+ * <p>
+ * The simplification is progressive: each {@link #simplify(int)} continues from the previous one,
+ * {@link #buildChain(ObjMesh, float...)} takes the levels of detail in one pass. Doesn't need a GL
+ * context.
+ */
+public class MeshSimplifier {
+
+	// attribute vertices (welded), VERTEX_SIZE floats each
+	private final float[] vertices;
+
+	// normals differing at the same vertex (hard edge)
+	private final boolean[] crease;
+
+	// attribute vertex -> point (welded position)
+	private final int[] point;
+
+	private final float[] positions;
+
+	private final boolean[] locked;
+
+	// a2, ab, ac, ad, b2, bc, bd, c2, cd, d2 of each point
+	private final double[] quadrics;
+
+	// 3 attribute vertices per triangle
+	private final int[] triangles;
+
+	private final int[] triPart;
+
+	private final boolean[] removed;
+
+	private int triangleCount;
+
+	// triangles around each point (may contain removed ones)
+	private final int[][] around;
+
+	private final int[] aroundCount;
+
+	// incremented when the point changes, invalidates the queued collapses
+	private final int[] version;
+
+	private final int[] stamp;
+
+	// connected piece of each point, with its triangles left and whether it has no border
+	private final int[] component;
+
+	private final int[] componentTriangles;
+
+	private final boolean[] closed;
+
+	private int currentStamp;
+
+	private final List<ObjMesh.Part> parts;
+
+	private final PriorityQueue<Collapse> queue = new PriorityQueue<Collapse>();
+
+	private final double[] before = new double[3];
+
+	private final double[] after = new double[3];
+
+	// cosine under which two normals of the same vertex make a hard edge
+	private static final float CREASE = 0.9f;
+
+	private static final class Collapse implements Comparable<Collapse> {
+
+		final double cost;
+
+		final int from;
+
+		final int to;
+
+		final int fromVersion;
+
+		final int toVersion;
+
+		Collapse(double cost, int from, int to, int fromVersion, int toVersion) {
+			this.cost = cost;
+			this.from = from;
+			this.to = to;
+			this.fromVersion = fromVersion;
+			this.toVersion = toVersion;
+		}
+
+		@Override
+		public int compareTo(Collapse o) {
+			return Double.compare(cost, o.cost);
+		}
+
+	}
+
+	public MeshSimplifier(ObjMesh mesh) {
+		this.parts = mesh.getParts();
+
+		// corners with the same position and texcoord become one vertex (the uncompressed meshes
+		// have one vertex per corner), the normals don't split the surface
+		FloatBuffer source = mesh.getVertices();
+		int inputCount = mesh.getVertexCount();
+		float[] keys = new float[5 * inputCount];
+		float[] all = new float[inputCount * VERTEX_SIZE];
+		for(int v = 0; v < inputCount; v++) {
+			for(int i = 0; i < 3; i++)
+				keys[5 * v + i] = source.get(v * VERTEX_SIZE + i);
+			keys[5 * v + 3] = source.get(v * VERTEX_SIZE + TEXCOORD_OFFSET);
+			keys[5 * v + 4] = source.get(v * VERTEX_SIZE + TEXCOORD_OFFSET + 1);
+		}
+
+		VertexIndex attributes = new VertexIndex(5);
+		int[] remap = new int[inputCount];
+		boolean[] crease = new boolean[inputCount];
+		int count = 0;
+		for(int v = 0; v < inputCount; v++) {
+			int index = attributes.getOrAdd(keys, 5 * v, count);
+			if(index == count) {
+				for(int i = 0; i < VERTEX_SIZE; i++)
+					all[count * VERTEX_SIZE + i] = source.get(v * VERTEX_SIZE + i);
+				count++;
+			} else if(dotNormals(all, index, source, v) < CREASE) {
+				crease[index] = true;
+			}
+			remap[v] = index;
+		}
+		vertices = Arrays.copyOf(all, count * VERTEX_SIZE);
+		this.crease = Arrays.copyOf(crease, count);
+
+		// vertices in the same place are the same point of the surface
+		VertexIndex places = new VertexIndex(3);
+		float[] xyz = new float[3 * count];
+		point = new int[count];
+		int points = 0;
+		for(int v = 0; v < count; v++) {
+			System.arraycopy(vertices, v * VERTEX_SIZE, xyz, 3 * points, 3);
+			int index = places.getOrAdd(xyz, 3 * points, points);
+			if(index == points)
+				points++;
+			point[v] = index;
+		}
+		positions = Arrays.copyOf(xyz, 3 * points);
+
+		int indexCount = 0;
+		for(ObjMesh.Part part : parts)
+			indexCount += part.getTriCount();
+		triangles = new int[indexCount];
+		triPart = new int[indexCount / 3];
+		removed = new boolean[indexCount / 3];
+		IntBuffer indices = mesh.getIndices();
+		int t = 0;
+		for(int p = 0; p < parts.size(); p++) {
+			ObjMesh.Part part = parts.get(p);
+			for(int i = part.getTriOffset(); i < part.getTriOffset() + part.getTriCount(); i += 3) {
+				int a = remap[indices.get(i)], b = remap[indices.get(i + 1)], c = remap[indices.get(i + 2)];
+				// already degenerate
+				if(point[a] == point[b] || point[b] == point[c] || point[c] == point[a])
+					continue;
+				triangles[3 * t] = a;
+				triangles[3 * t + 1] = b;
+				triangles[3 * t + 2] = c;
+				triPart[t] = p;
+				t++;
+			}
+		}
+		triangleCount = t;
+		Arrays.fill(removed, t, removed.length, true);
+
+		around = new int[points][];
+		aroundCount = new int[points];
+		version = new int[points];
+		stamp = new int[points];
+		locked = new boolean[points];
+		quadrics = new double[10 * points];
+
+		for(int tri = 0; tri < triangleCount; tri++)
+			for(int c = 0; c < 3; c++)
+				addAround(point[triangles[3 * tri + c]], tri);
+
+		component = new int[points];
+		componentTriangles = new int[points];
+		closed = new boolean[points];
+		findComponents();
+
+		lockSeams();
+		lockBorders();
+		for(int tri = 0; tri < triangleCount; tri++)
+			addQuadric(tri);
+
+		for(int tri = 0; tri < triangleCount; tri++)
+			for(int c = 0; c < 3; c++)
+				push(point[triangles[3 * tri + c]], point[triangles[3 * tri + (c + 1) % 3]]);
+	}
+
+	/**
+	 * @return The levels of detail for each ratio of the original triangles, from the finest
+	 */
+	public static List<ObjMesh> buildChain(ObjMesh mesh, float... ratios) {
+		MeshSimplifier simplifier = new MeshSimplifier(mesh);
+		int original = simplifier.getTriangleCount();
+		List<ObjMesh> chain = Lists.newArrayListWithCapacity(ratios.length);
+		float previous = 1.0f;
+		for(float ratio : ratios) {
+			checkArgument(ratio > 0.0f && ratio < previous, "ratios must decrease from 1");
+			chain.add(simplifier.simplify((int) (ratio * original)));
+			previous = ratio;
+		}
+		return chain;
+	}
+
+	public int getTriangleCount() {
+		return triangleCount;
+	}
+
+	/**
+	 * Collapses the cheapest edges until there are {@code target} triangles (or no valid collapse)
+	 *
+	 * @return The simplified mesh, with the same parts
+	 */
+	public ObjMesh simplify(int target) {
+		while(triangleCount > target && !queue.isEmpty()) {
+			Collapse collapse = queue.poll();
+			if(version[collapse.from] != collapse.fromVersion || version[collapse.to] != collapse.toVersion)
+				continue;
+			collapse(collapse.from, collapse.to);
+		}
+		return build();
+	}
+
+	private static float dotNormals(float[] vertices, int a, FloatBuffer source, int b) {
+		float dot = 0.0f;
+		for(int i = 0; i < 3; i++)
+			dot += vertices[a * VERTEX_SIZE + NORMAL_OFFSET + i] * source.get(b * VERTEX_SIZE + NORMAL_OFFSET + i);
+		return dot;
+	}
+
+	private void findComponents() {
+		for(int p = 0; p < component.length; p++)
+			component[p] = p;
+		for(int tri = 0; tri < triangleCount; tri++) {
+			int a = find(point[triangles[3 * tri]]);
+			for(int c = 1; c < 3; c++) {
+				int b = find(point[triangles[3 * tri + c]]);
+				if(a != b)
+					component[b] = a;
+			}
+		}
+		for(int p = 0; p < component.length; p++) {
+			component[p] = find(p);
+			closed[component[p]] = true;
+		}
+		for(int tri = 0; tri < triangleCount; tri++)
+			componentTriangles[component[point[triangles[3 * tri]]]]++;
+	}
+
+	private int find(int p) {
+		while(component[p] != p) {
+			component[p] = component[component[p]];
+			p = component[p];
+		}
+		return p;
+	}
+
+	private void lockSeams() {
+		// a point with 2 vertices (texcoords), in 2 parts or on a hard edge of a smooth part
+		int[] first = new int[positions.length / 3];
+		int[] firstPart = new int[positions.length / 3];
+		Arrays.fill(first, -1);
+		for(int tri = 0; tri < triangleCount; tri++) {
+			for(int c = 0; c < 3; c++) {
+				int v = triangles[3 * tri + c];
+				int p = point[v];
+				if(first[p] == -1) {
+					first[p] = v;
+					firstPart[p] = triPart[tri];
+				} else if(first[p] != v || firstPart[p] != triPart[tri]) {
+					locked[p] = true;
+				}
+				if(crease[v] && parts.get(triPart[tri]).isSmooth())
+					locked[p] = true;
+			}
+		}
+	}
+
+	private void lockBorders() {
+		// around an inner point every neighbour is in exactly 2 of its triangles
+		int[] counts = new int[positions.length / 3];
+		for(int p = 0; p < aroundCount.length; p++) {
+			boolean border = false;
+			for(int pass = 0; pass < 2 && !border; pass++) {
+				for(int i = 0; i < aroundCount[p]; i++) {
+					int tri = around[p][i];
+					for(int c = 0; c < 3; c++) {
+						int n = point[triangles[3 * tri + c]];
+						if(n == p)
+							continue;
+						if(pass == 0)
+							counts[n]++;
+						else if(counts[n] != 2)
+							border = true;
+					}
+				}
+			}
+			if(border) {
+				locked[p] = true;
+				closed[component[p]] = false;
+			}
+			for(int i = 0; i < aroundCount[p]; i++)
+				for(int c = 0; c < 3; c++)
+					counts[point[triangles[3 * around[p][i] + c]]] = 0;
+		}
+	}
+
+	private int nextStamp() {
+		return ++currentStamp;
+	}
+
+	private void addAround(int p, int tri) {
+		if(around[p] == null)
+			around[p] = new int[8];
+		else if(aroundCount[p] == around[p].length)
+			around[p] = Arrays.copyOf(around[p], 2 * aroundCount[p]);
+		around[p][aroundCount[p]++] = tri;
+	}
+
+	private void addQuadric(int tri) {
+		int a = point[triangles[3 * tri]];
+		normal(a, point[triangles[3 * tri + 1]], point[triangles[3 * tri + 2]], before);
+		double nx = before[0], ny = before[1], nz = before[2];
+		a *= 3;
+		double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+		if(length == 0.0)
+			return;
+		// weighted by the area
+		double weight = 0.5 * length;
+		nx /= length;
+		ny /= length;
+		nz /= length;
+		double d = -(nx * positions[a] + ny * positions[a + 1] + nz * positions[a + 2]);
+		for(int i = 0; i < 3; i++) {
+			int q = 10 * point[triangles[3 * tri + i]];
+			quadrics[q] += weight * nx * nx;
+			quadrics[q + 1] += weight * nx * ny;
+			quadrics[q + 2] += weight * nx * nz;
+			quadrics[q + 3] += weight * nx * d;
+			quadrics[q + 4] += weight * ny * ny;
+			quadrics[q + 5] += weight * ny * nz;
+			quadrics[q + 6] += weight * ny * d;
+			quadrics[q + 7] += weight * nz * nz;
+			quadrics[q + 8] += weight * nz * d;
+			quadrics[q + 9] += weight * d * d;
+		}
+	}
+
+	/**
+	 * Queues the collapse of {@code from} onto {@code to}, with the error of the two quadrics at {@code to}
+	 */
+	private void push(int from, int to) {
+		if(locked[from])
+			return;
+		int a = 10 * from, b = 10 * to;
+		double x = positions[3 * to], y = positions[3 * to + 1], z = positions[3 * to + 2];
+		double cost = 0.0;
+		for(int i = 0; i < 2; i++) {
+			double[] q = quadrics;
+			int o = i == 0 ? a : b;
+			cost += q[o] * x * x + 2 * q[o + 1] * x * y + 2 * q[o + 2] * x * z + 2 * q[o + 3] * x
+					+ q[o + 4] * y * y + 2 * q[o + 5] * y * z + 2 * q[o + 6] * y
+					+ q[o + 7] * z * z + 2 * q[o + 8] * z
+					+ q[o + 9];
+		}
+		queue.add(new Collapse(Math.max(cost, 0.0), from, to, version[from], version[to]));
+	}
+
+	private boolean contains(int tri, int p) {
+		return point[triangles[3 * tri]] == p || point[triangles[3 * tri + 1]] == p || point[triangles[3 * tri + 2]] == p;
+	}
+
+	private void collapse(int from, int to) {
+		// the vertex of 'to' on the side of 'from' (the same on both triangles of the edge)
+		int replacement = -1;
+		int shared = 0;
+		for(int i = 0; i < aroundCount[from]; i++) {
+			int tri = around[from][i];
+			if(removed[tri] || !contains(tri, to))
+				continue;
+			shared++;
+			for(int c = 0; c < 3; c++) {
+				int v = triangles[3 * tri + c];
+				if(point[v] != to)
+					continue;
+				if(replacement != -1 && replacement != v)
+					return;
+				replacement = v;
+			}
+		}
+		if(shared == 0)
+			return;
+
+		// link condition: the only common neighbours are the opposite corners of the shared triangles
+		int mark = nextStamp();
+		for(int i = 0; i < aroundCount[from]; i++) {
+			int tri = around[from][i];
+			if(removed[tri])
+				continue;
+			for(int c = 0; c < 3; c++)
+				stamp[point[triangles[3 * tri + c]]] = mark;
+		}
+		int common = 0;
+		int counted = nextStamp();
+		for(int i = 0; i < aroundCount[to]; i++) {
+			int tri = around[to][i];
+			if(removed[tri])
+				continue;
+			for(int c = 0; c < 3; c++) {
+				int n = point[triangles[3 * tri + c]];
+				if(n != from && n != to && stamp[n] == mark) {
+					common++;
+					stamp[n] = counted;
+				}
+			}
+		}
+		if(common != shared)
+			return;
+
+		// a closed piece stops at a tetrahedron, the next collapse leaves 2 triangles back to back
+		if(closed[component[from]] && componentTriangles[component[from]] - shared < 4)
+			return;
+
+		// no triangle may become one that is already there, turned over or not
+		for(int i = 0; i < aroundCount[from]; i++) {
+			int tri = around[from][i];
+			if(removed[tri] || contains(tri, to))
+				continue;
+			if(duplicates(tri, from, to))
+				return;
+		}
+
+		// no triangle may turn over
+		for(int i = 0; i < aroundCount[from]; i++) {
+			int tri = around[from][i];
+			if(removed[tri] || contains(tri, to))
+				continue;
+			if(flips(tri, from, to))
+				return;
+		}
+
+		for(int i = 0; i < aroundCount[from]; i++) {
+			int tri = around[from][i];
+			if(removed[tri])
+				continue;
+			if(contains(tri, to)) {
+				removed[tri] = true;
+				triangleCount--;
+				componentTriangles[component[from]]--;
+				continue;
+			}
+			for(int c = 0; c < 3; c++)
+				if(point[triangles[3 * tri + c]] == from)
+					triangles[3 * tri + c] = replacement;
+			addAround(to, tri);
+		}
+
+		for(int i = 0; i < 10; i++)
+			quadrics[10 * to + i] += quadrics[10 * from + i];
+		version[from]++;
+		version[to]++;
+		aroundCount[from] = 0;
+
+		// new costs for the edges around 'to'
+		compactAround(to);
+		int done = nextStamp();
+		for(int i = 0; i < aroundCount[to]; i++) {
+			int tri = around[to][i];
+			for(int c = 0; c < 3; c++) {
+				int n = point[triangles[3 * tri + c]];
+				if(n == to || stamp[n] == done)
+					continue;
+				stamp[n] = done;
+				push(to, n);
+				push(n, to);
+			}
+		}
+	}
+
+	private void compactAround(int p) {
+		int count = 0;
+		for(int i = 0; i < aroundCount[p]; i++)
+			if(!removed[around[p][i]])
+				around[p][count++] = around[p][i];
+		aroundCount[p] = count;
+	}
+
+	/**
+	 * @return Whether moving {@code from} onto {@code to} makes the triangle the same face as another one around {@code to}
+	 */
+	private boolean duplicates(int tri, int from, int to) {
+		int b = -1, c = -1;
+		for(int k = 0; k < 3; k++) {
+			int n = point[triangles[3 * tri + k]];
+			if(n == from)
+				continue;
+			if(b == -1)
+				b = n;
+			else
+				c = n;
+		}
+		for(int i = 0; i < aroundCount[to]; i++) {
+			int other = around[to][i];
+			if(!removed[other] && contains(other, b) && contains(other, c))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return Whether moving {@code from} onto {@code to} turns the triangle over (or makes it a line)
+	 */
+	private boolean flips(int tri, int from, int to) {
+		int a = point[triangles[3 * tri]], b = point[triangles[3 * tri + 1]], c = point[triangles[3 * tri + 2]];
+		normal(a, b, c, before);
+		normal(a == from ? to : a, b == from ? to : b, c == from ? to : c, after);
+		double l0 = Math.sqrt(before[0] * before[0] + before[1] * before[1] + before[2] * before[2]);
+		double l1 = Math.sqrt(after[0] * after[0] + after[1] * after[1] + after[2] * after[2]);
+		if(l1 <= 1e-12 * Math.max(l0, 1e-12))
+			return true;
+		// more than ~80 degrees
+		return before[0] * after[0] + before[1] * after[1] + before[2] * after[2] < 0.2 * l0 * l1;
+	}
+
+	private void normal(int a, int b, int c, double[] out) {
+		a *= 3;
+		b *= 3;
+		c *= 3;
+		double ux = positions[b] - positions[a], uy = positions[b + 1] - positions[a + 1], uz = positions[b + 2] - positions[a + 2];
+		double vx = positions[c] - positions[a], vy = positions[c + 1] - positions[a + 1], vz = positions[c + 2] - positions[a + 2];
+		out[0] = uy * vz - uz * vy;
+		out[1] = uz * vx - ux * vz;
+		out[2] = ux * vy - uy * vx;
+	}
+
+	private ObjMesh build() {
+		int[] remap = new int[vertices.length / VERTEX_SIZE];
+		Arrays.fill(remap, -1);
+		// the flat objects have a vertex per corner
+		float[] out = new float[Math.max(vertices.length, 3 * triangleCount * VERTEX_SIZE)];
+		int[] indices = new int[3 * triangleCount];
+		float[] bbMin = { Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE };
+		float[] bbMax = { -Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE };
+
+		List<ObjMesh.Part> simplified = Lists.newArrayListWithCapacity(parts.size());
+		int vertexCount = 0;
+		int index = 0;
+		for(int p = 0; p < parts.size(); p++) {
+			ObjMesh.Part source = parts.get(p);
+			ObjMesh.Part part = new ObjMesh.Part(source.getName());
+			part.material = source.getMaterial();
+			part.smooth = source.isSmooth();
+			part.triOffset = index;
+			for(int tri = 0; tri < triPart.length; tri++) {
+				if(removed[tri] || triPart[tri] != p)
+					continue;
+				if(!part.smooth)
+					normal(point[triangles[3 * tri]], point[triangles[3 * tri + 1]], point[triangles[3 * tri + 2]], before);
+				for(int c = 0; c < 3; c++) {
+					int v = triangles[3 * tri + c];
+					if(part.smooth && remap[v] != -1) {
+						indices[index++] = remap[v];
+						continue;
+					}
+
+					int o = vertexCount * VERTEX_SIZE;
+					System.arraycopy(vertices, v * VERTEX_SIZE, out, o, VERTEX_SIZE);
+					if(part.smooth) {
+						remap[v] = vertexCount;
+					} else {
+						double length = Math.sqrt(before[0] * before[0] + before[1] * before[1] + before[2] * before[2]);
+						for(int k = 0; k < 3; k++)
+							out[o + NORMAL_OFFSET + k] = length > 0.0 ? (float) (before[k] / length) : 0.0f;
+					}
+					for(int k = 0; k < 3; k++) {
+						bbMin[k] = Math.min(bbMin[k], out[o + k]);
+						bbMax[k] = Math.max(bbMax[k], out[o + k]);
+					}
+					indices[index++] = vertexCount++;
+				}
+			}
+			part.triCount = index - part.triOffset;
+			simplified.add(part);
+		}
+
+		if(vertexCount == 0) {
+			Arrays.fill(bbMin, 0.0f);
+			Arrays.fill(bbMax, 0.0f);
+		}
+		return new ObjMesh(FloatBuffer.wrap(Arrays.copyOf(out, vertexCount * VERTEX_SIZE)), vertexCount, IntBuffer.wrap(indices), simplified, bbMin, bbMax, index);
+	}
+
+}
@@ -0,0 +1,105 @@
+package pt.ipb.esact.compgraf.engine.obj;
+
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import pt.ipb.esact.compgraf.tools.math.GlMath;
+
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Reads the materials of a .mtl file. No GL calls: the textures named by the materials are only
+ * requested by {@link ObjMaterial#acquireTextures()}, so this can run on a worker thread.
+ */
+public class MtlParser {
+
+	private static final Pattern MAT_LINE_PATTERN = Pattern.compile("([^ ]*)[ ]+(.*)");
+
+	private static final Splitter LINES = Splitter.onPattern("\r?\n");
+
+	/**
+	 * @param prefix Directory of the .obj, prepended to the texture names
+	 * @return The materials by name, in file order
+	 */
+	public static Map<String, ObjMaterial> parse(byte[] bytes, String prefix) {
+		return parse(LINES.split(new String(bytes, Charset.defaultCharset())), prefix);
+	}
+
+	public static Map<String, ObjMaterial> parse(Iterable<String> lines, String prefix) {
+		Map<String, ObjMaterial> material = Maps.newLinkedHashMap();
+		
+		String currentMtl = null;
+		
+		for(String line : lines) {
+			Matcher m = MAT_LINE_PATTERN.matcher(line);
+			if(!m.matches())
+				continue;
+			
+			
+			String prop = m.group(1);
+			String value = m.group(2);
+			List<String> values = Lists.newArrayList(value.split("[ ]+"));
+			
+			if("newmtl".equals(prop)) {
+				currentMtl = m.group(2);
+				material.put(currentMtl, new ObjMaterial(currentMtl));
+			}
+			
+			if(Strings.isNullOrEmpty(currentMtl))
+				continue;
+			
+			if("Ka".equals(prop)) {
+				float r = GlMath.clamp(Float.parseFloat(values.get(0)), 0.0f, 1.0f);
+				float g = GlMath.clamp(Float.parseFloat(values.get(1)), 0.0f, 1.0f);
+				float b = GlMath.clamp(Float.parseFloat(values.get(2)), 0.0f, 1.0f);
+				material.get(currentMtl).setKa(r, g, b);
+			}
+
+			if("Kd".equals(prop)) {
+				float r = GlMath.clamp(Float.parseFloat(values.get(0)), 0.0f, 1.0f);
+				float g = GlMath.clamp(Float.parseFloat(values.get(1)), 0.0f, 1.0f);
+				float b = GlMath.clamp(Float.parseFloat(values.get(2)), 0.0f, 1.0f);
+				material.get(currentMtl).setKd(r, g, b);
+			}
+
+			if("Ks".equals(prop)) {
+				float r = GlMath.clamp(Float.parseFloat(values.get(0)), 0.0f, 1.0f);
+				float g = GlMath.clamp(Float.parseFloat(values.get(1)), 0.0f, 1.0f);
+				float b = GlMath.clamp(Float.parseFloat(values.get(2)), 0.0f, 1.0f);
+				material.get(currentMtl).setKs(r, g, b);
+			}
+			
+			if("Ke".equals(prop)) {
+				float r = GlMath.clamp(Float.parseFloat(values.get(0)), 0.0f, 1.0f);
+				float g = GlMath.clamp(Float.parseFloat(values.get(1)), 0.0f, 1.0f);
+				float b = GlMath.clamp(Float.parseFloat(values.get(2)), 0.0f, 1.0f);
+				material.get(currentMtl).setKe(r, g, b);
+			}
+
+			if("map_Kd".equals(prop)) {
+				material.get(currentMtl).setMapKd(prefix, value);
+			}
+
+			if("map_Bump".equals(prop)) {
+				material.get(currentMtl).setMapBump(prefix, value);
+			}
+
+			if("d".equals(prop)) {
+				material.get(currentMtl).setD(Float.parseFloat(value));
+			}
+			
+			if("Ns".equals(prop)) {
+				material.get(currentMtl).setNs(Float.parseFloat(value));
+			}
+		}
+		
+		return material;
+	}
+
+}
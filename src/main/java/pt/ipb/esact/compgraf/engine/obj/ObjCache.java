@@ -0,0 +1,218 @@
+package pt.ipb.esact.compgraf.engine.obj;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * Binary precompiled version of an {@link ObjMesh}, stored next to the .obj file. The file is
+ * memory mapped when read, the vertex and index arrays are views of the mapping.
+ *
+ * Layout (native byte order):
+ * <pre>
+ * int magic, int version, byte order, byte[16] source hash
+ * int vertexCount, int indexCount, int cornerCount, float[3] bbMin, float[3] bbMax
+ * int partCount, per part: string name, string material, byte smooth, int triOffset, int triCount
+ * padding to 4 bytes
+ * float[vertexCount * VERTEX_SIZE] interleaved vertices
+ * int[indexCount] indices
+ * </pre>
+ */
+public class ObjCache {
+
+	private static final Logger logger = LoggerFactory.getLogger(ObjCache.class);
+
+	public static final String EXTENSION = ".cache";
+
+	private static final int MAGIC = 0x4F424A43; // OBJC
+
+	private static final int VERSION = 5;
+
+	private static final int HASH_SIZE = 16;
+
+	private static final byte ORDER = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ? (byte) 0 : (byte) 1;
+
+	public static File cacheFile(String model) {
+		return new File(model + EXTENSION);
+	}
+
+	/**
+	 * Cache of the level of detail {@code level} (from 1) of the model, see {@link ObjLoader#setLods(float...)}
+	 */
+	public static File lodCacheFile(String model, int level) {
+		return new File(model + ".lod" + level + EXTENSION);
+	}
+
+	/**
+	 * Hash of a level of detail: the hash of the model plus the ratios up to that level (each level
+	 * is simplified from the previous one)
+	 */
+	public static byte[] lodHash(byte[] hash, float[] ratios, int level) {
+		Hasher hasher = Hashing.murmur3_128().newHasher();
+		hasher.putBytes(hash);
+		for(int i = 0; i < level; i++)
+			hasher.putFloat(ratios[i]);
+		return hasher.hash().asBytes();
+	}
+
+	/**
+	 * Content hash of the sources plus every option that changes the generated mesh
+	 */
+	public static byte[] hash(byte[] model, byte[] material, float scale, boolean compress, boolean optimize) {
+		Hasher hasher = Hashing.murmur3_128().newHasher();
+		hasher.putInt(VERSION);
+		hasher.putInt(model.length).putBytes(model);
+		hasher.putInt(material.length).putBytes(material);
+		hasher.putFloat(scale);
+		hasher.putBoolean(compress);
+		hasher.putBoolean(optimize);
+		return hasher.hash().asBytes();
+	}
+
+	/**
+	 * @return The cached mesh, or {@code null} when the cache doesn't exist, is damaged or was built from other sources
+	 */
+	public static ObjMesh read(File file, byte[] hash) {
+		if(!file.isFile())
+			return null;
+
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+			MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			map.order(ByteOrder.nativeOrder());
+
+			if(map.getInt() != MAGIC || map.getInt() != VERSION || map.get() != ORDER)
+				return null;
+
+			byte[] stored = new byte[HASH_SIZE];
+			map.get(stored);
+			if(!Arrays.equals(stored, hash))
+				return null;
+
+			int vertexCount = map.getInt();
+			int indexCount = map.getInt();
+			int cornerCount = map.getInt();
+			float[] bbMin = { map.getFloat(), map.getFloat(), map.getFloat() };
+			float[] bbMax = { map.getFloat(), map.getFloat(), map.getFloat() };
+
+			int partCount = map.getInt();
+			List<ObjMesh.Part> parts = Lists.newArrayListWithCapacity(partCount);
+			for(int i=0; i<partCount; i++) {
+				ObjMesh.Part part = new ObjMesh.Part(getString(map));
+				String material = getString(map);
+				part.material = material.isEmpty() ? null : material;
+				part.smooth = map.get() != 0;
+				part.triOffset = map.getInt();
+				part.triCount = map.getInt();
+				parts.add(part);
+			}
+			skipPadding(map);
+
+			int vertexBytes = 4 * ObjMesh.VERTEX_SIZE * vertexCount;
+			int indexBytes = 4 * indexCount;
+			if(map.remaining() != vertexBytes + indexBytes)
+				return null;
+
+			ByteBuffer vertices = slice(map, vertexBytes);
+			ByteBuffer indices = slice(map, indexBytes);
+
+			return new ObjMesh(vertices.asFloatBuffer(), vertexCount, indices.asIntBuffer(), parts, bbMin, bbMax, cornerCount);
+		} catch(IOException | RuntimeException e) {
+			logger.warn("Ignoring damaged cache {}: {}", file, e.toString());
+			return null;
+		}
+	}
+
+	public static void write(File file, byte[] hash, ObjMesh mesh) throws IOException {
+		List<byte[]> names = Lists.newArrayList();
+		int headerSize = 4 + 4 + 1 + HASH_SIZE + 4 * 3 + 4 * 6 + 4;
+		for(ObjMesh.Part part : mesh.parts) {
+			byte[] name = part.name.getBytes(StandardCharsets.UTF_8);
+			byte[] material = part.material == null ? new byte[0] : part.material.getBytes(StandardCharsets.UTF_8);
+			names.add(name);
+			names.add(material);
+			headerSize += 4 + name.length + 4 + material.length + 1 + 4 * 2;
+		}
+		headerSize = (headerSize + 3) & ~3;
+
+		int vertexFloats = ObjMesh.VERTEX_SIZE * mesh.vertexCount;
+		int indexCount = mesh.getIndexCount();
+
+		ByteBuffer buffer = ByteBuffer.allocate(headerSize + 4 * vertexFloats + 4 * indexCount);
+		buffer.order(ByteOrder.nativeOrder());
+
+		buffer.putInt(MAGIC).putInt(VERSION).put(ORDER).put(hash);
+		buffer.putInt(mesh.vertexCount).putInt(indexCount).putInt(mesh.cornerCount);
+		for(int c=0; c<3; c++)
+			buffer.putFloat(mesh.bbMin[c]);
+		for(int c=0; c<3; c++)
+			buffer.putFloat(mesh.bbMax[c]);
+
+		buffer.putInt(mesh.parts.size());
+		for(int i=0; i<mesh.parts.size(); i++) {
+			ObjMesh.Part part = mesh.parts.get(i);
+			putBytes(buffer, names.get(2 * i));
+			putBytes(buffer, names.get(2 * i + 1));
+			buffer.put(part.smooth ? (byte) 1 : (byte) 0);
+			buffer.putInt(part.triOffset).putInt(part.triCount);
+		}
+		pad(buffer);
+
+		FloatBuffer vertices = (FloatBuffer) mesh.vertices.duplicate().clear();
+		buffer.asFloatBuffer().put(vertices);
+		buffer.position(buffer.position() + 4 * vertexFloats);
+
+		IntBuffer indices = (IntBuffer) mesh.indices.duplicate().clear();
+		buffer.asIntBuffer().put(indices);
+
+		// write + rename, a reader never sees an incomplete file
+		File temp = new File(file.getPath() + ".tmp");
+		Files.write(temp.toPath(), buffer.array());
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private static ByteBuffer slice(ByteBuffer map, int length) {
+		ByteBuffer slice = map.slice();
+		slice.limit(length);
+		slice = slice.slice().order(ByteOrder.nativeOrder());
+		map.position(map.position() + length);
+		return slice;
+	}
+
+	private static void pad(ByteBuffer buffer) {
+		while((buffer.position() & 3) != 0)
+			buffer.put((byte) 0);
+	}
+
+	private static void skipPadding(ByteBuffer buffer) {
+		buffer.position((buffer.position() + 3) & ~3);
+	}
+
+	private static String getString(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+		buffer.putInt(bytes.length).put(bytes);
+	}
+
+}
@@ -0,0 +1,247 @@
+package pt.ipb.esact.compgraf.engine.obj;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Raw contents of a .obj file as produced by {@link ObjParser}.
+ * Everything is kept in primitive arrays, there are no per-vertex objects.
+ */
+public class ObjData {
+
+	public static final int EVENT_OBJECT = 0;
+
+	public static final int EVENT_MATERIAL = 1;
+
+	public static final int EVENT_SMOOTH = 2;
+
+	/**
+	 * A state change (o, usemtl, s) that applies to every face from {@link #face} onwards
+	 */
+	public static class Event {
+
+		public final int type;
+
+		public final String value;
+
+		public final int face;
+
+		public Event(int type, String value, int face) {
+			this.type = type;
+			this.value = value;
+			this.face = face;
+		}
+
+	}
+
+	float[] positions = new float[3 * 1024];
+
+	int positionCount;
+
+	float[] texcoords = new float[2 * 1024];
+
+	int texcoordCount;
+
+	float[] normals = new float[3 * 1024];
+
+	int normalCount;
+
+	// (v, vt, vn) zero based triplets per face corner, -1 when the index is missing
+	int[] corners = new int[3 * 4096];
+
+	int cornerCount;
+
+	// first corner of each face, faceStarts[faceCount] marks the end
+	int[] faceStarts = new int[1024];
+
+	int faceCount;
+
+	final List<Event> events = Lists.newArrayList();
+
+	// slots of corners[] holding a negative (relative) index, only needed to merge chunks
+	int[] relative = new int[0];
+
+	int relativeCount;
+
+	void addPosition(float x, float y, float z) {
+		positions = ensure(positions, 3 * positionCount + 3);
+		positions[3 * positionCount] = x;
+		positions[3 * positionCount + 1] = y;
+		positions[3 * positionCount + 2] = z;
+		positionCount++;
+	}
+
+	void addTexcoord(float u, float v) {
+		texcoords = ensure(texcoords, 2 * texcoordCount + 2);
+		texcoords[2 * texcoordCount] = u;
+		texcoords[2 * texcoordCount + 1] = v;
+		texcoordCount++;
+	}
+
+	void addNormal(float x, float y, float z) {
+		normals = ensure(normals, 3 * normalCount + 3);
+		normals[3 * normalCount] = x;
+		normals[3 * normalCount + 1] = y;
+		normals[3 * normalCount + 2] = z;
+		normalCount++;
+	}
+
+	void addCorner(int v, int t, int n) {
+		corners = ensure(corners, 3 * cornerCount + 3);
+		corners[3 * cornerCount] = v;
+		corners[3 * cornerCount + 1] = t;
+		corners[3 * cornerCount + 2] = n;
+		cornerCount++;
+	}
+
+	/**
+	 * Closes the face made of the corners added since the previous call
+	 */
+	void endFace(int firstCorner) {
+		faceStarts = ensure(faceStarts, faceCount + 2);
+		faceStarts[faceCount] = firstCorner;
+		faceStarts[faceCount + 1] = cornerCount;
+		faceCount++;
+	}
+
+	void addEvent(int type, String value) {
+		events.add(new Event(type, value, faceCount));
+	}
+
+	/**
+	 * Marks {@code corners[slot]} as resolved against this data's own counts
+	 */
+	void addRelative(int slot) {
+		relative = ensure(relative, relativeCount + 1);
+		relative[relativeCount++] = slot;
+	}
+
+	/**
+	 * Concatenates data parsed from consecutive pieces of the same file. Face starts, events and
+	 * relative indexes are moved by the counts of the preceding pieces.
+	 */
+	static ObjData merge(List<ObjData> chunks) {
+		if(chunks.size() == 1)
+			return chunks.get(0);
+
+		int positions = 0, texcoords = 0, normals = 0, corners = 0, faces = 0;
+		for(ObjData chunk : chunks) {
+			positions += chunk.positionCount;
+			texcoords += chunk.texcoordCount;
+			normals += chunk.normalCount;
+			corners += chunk.cornerCount;
+			faces += chunk.faceCount;
+		}
+
+		ObjData merged = new ObjData();
+		merged.positions = new float[Math.max(3 * positions, 3)];
+		merged.texcoords = new float[Math.max(2 * texcoords, 2)];
+		merged.normals = new float[Math.max(3 * normals, 3)];
+		merged.corners = new int[Math.max(3 * corners, 3)];
+		merged.faceStarts = new int[faces + 1];
+
+		for(ObjData chunk : chunks) {
+			int[] base = { merged.positionCount, merged.texcoordCount, merged.normalCount };
+
+			System.arraycopy(chunk.positions, 0, merged.positions, 3 * merged.positionCount, 3 * chunk.positionCount);
+			System.arraycopy(chunk.texcoords, 0, merged.texcoords, 2 * merged.texcoordCount, 2 * chunk.texcoordCount);
+			System.arraycopy(chunk.normals, 0, merged.normals, 3 * merged.normalCount, 3 * chunk.normalCount);
+
+			int cornerBase = 3 * merged.cornerCount;
+			System.arraycopy(chunk.corners, 0, merged.corners, cornerBase, 3 * chunk.cornerCount);
+			for(int i=0; i<chunk.relativeCount; i++) {
+				int slot = chunk.relative[i];
+				merged.corners[cornerBase + slot] += base[slot % 3];
+			}
+
+			for(int f=0; f<chunk.faceCount; f++)
+				merged.faceStarts[merged.faceCount + f] = chunk.faceStarts[f] + merged.cornerCount;
+
+			for(Event event : chunk.events)
+				merged.events.add(new Event(event.type, event.value, event.face + merged.faceCount));
+
+			merged.positionCount += chunk.positionCount;
+			merged.texcoordCount += chunk.texcoordCount;
+			merged.normalCount += chunk.normalCount;
+			merged.cornerCount += chunk.cornerCount;
+			merged.faceCount += chunk.faceCount;
+		}
+		merged.faceStarts[merged.faceCount] = merged.cornerCount;
+
+		return merged;
+	}
+
+	public int getPositionCount() {
+		return positionCount;
+	}
+
+	public int getTexcoordCount() {
+		return texcoordCount;
+	}
+
+	public int getNormalCount() {
+		return normalCount;
+	}
+
+	public int getFaceCount() {
+		return faceCount;
+	}
+
+	public int getCornerCount() {
+		return cornerCount;
+	}
+
+	public List<Event> getEvents() {
+		return events;
+	}
+
+	/**
+	 * @return The number of corners of the face
+	 */
+	public int faceSize(int face) {
+		return faceStarts[face + 1] - faceStarts[face];
+	}
+
+	public int faceStart(int face) {
+		return faceStarts[face];
+	}
+
+	public int cornerPosition(int corner) {
+		return corners[3 * corner];
+	}
+
+	public int cornerTexcoord(int corner) {
+		return corners[3 * corner + 1];
+	}
+
+	public int cornerNormal(int corner) {
+		return corners[3 * corner + 2];
+	}
+
+	public float[] getPositions() {
+		return positions;
+	}
+
+	public float[] getTexcoords() {
+		return texcoords;
+	}
+
+	public float[] getNormals() {
+		return normals;
+	}
+
+	private static float[] ensure(float[] array, int size) {
+		if(size <= array.length)
+			return array;
+		return Arrays.copyOf(array, Math.max(size, array.length * 2));
+	}
+
+	private static int[] ensure(int[] array, int size) {
+		if(size <= array.length)
+			return array;
+		return Arrays.copyOf(array, Math.max(size, array.length * 2));
+	}
+
+}
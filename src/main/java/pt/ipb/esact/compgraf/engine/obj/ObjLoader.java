@@ -1,465 +1,600 @@
 package pt.ipb.esact.compgraf.engine.obj;
 
-import com.google.common.base.Splitter;
+import com.google.common.base.Objects;
 import com.google.common.base.Strings;
-import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import com.google.common.collect.Multimap;
 import com.jogamp.opengl.util.gl2.GLUT;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import pt.ipb.esact.compgraf.tools.DefaultGLWindow;
+import pt.ipb.esact.compgraf.tools.GlState;
 import pt.ipb.esact.compgraf.tools.GlTools;
 import pt.ipb.esact.compgraf.tools.ReleaseListener;
+import pt.ipb.esact.compgraf.tools.RenderStats;
+import pt.ipb.esact.compgraf.tools.Shader;
+import pt.ipb.esact.compgraf.tools.TextureCache;
 import pt.ipb.esact.compgraf.tools.math.Colors;
-import pt.ipb.esact.compgraf.tools.math.GlMath;
-import pt.ipb.esact.compgraf.tools.math.Vectors;
+import pt.ipb.esact.compgraf.tools.math.Frustum;
 
 import javax.media.opengl.GL2;
+import javax.media.opengl.GL3ES3;
 import javax.vecmath.Vector3f;
-import java.io.BufferedReader;
-import java.io.FileReader;
+import java.io.File;
 import java.io.IOException;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
-import java.util.Collection;
+import java.nio.ShortBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ForkJoinTask;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static java.text.MessageFormat.format;
 
 public class ObjLoader implements ReleaseListener {
 
-	private static final int VERTS_DATA = 0;
+	private static final Logger logger = LoggerFactory.getLogger(ObjLoader.class);
 	
-	private static final int NORMS_DATA = 1;
+	/**
+	 * Attributes read by the instanced shaders (see {@link #renderInstanced(Shader, InstanceBuffer)})
+	 */
+	public static final String INSTANCE_TRANSFORM = "instance_transform";
 	
-	private static final int TEXES_DATA = 2;
+	public static final String INSTANCE_COLOR = "instance_color";
 	
-	private static final int OBJ_BUFFER_COUNT = 3;
+	private static final int FLOAT_SIZE = Float.SIZE / 8;
 	
-	private Multimap<String, Integer> triIndexes = ArrayListMultimap.create();
+	/**
+	 * A finer level of detail comes back only this much above the size that dropped it, so a
+	 * model at the limit doesn't switch every frame
+	 */
+	public static final float LOD_HYSTERESIS = 0.15f;
+
+	private Map<String, ObjMaterial> material = Maps.newHashMap();
 	
-	private Map<String, Integer> triBufferObjects = Maps.newHashMap();
+	private ObjMesh mesh;
 	
-	private Multimap<String, Integer> quadIndexes = ArrayListMultimap.create();
+	private String modelFile;
 	
-	private Map<String, Integer> quadBufferObjects = Maps.newHashMap();
+	private String materialFile;
 	
-	private Map<String, ObjMaterial> material = Maps.newHashMap();
+	// parsed by the worker that prepared the model, textures requested by the GL thread
+	private Map<String, ObjMaterial> parsedMaterial;
 	
-	private Map<String, String> objMaterial = Maps.newHashMap();
+	private String error;
 	
-	private List<String> objNames = Lists.newArrayList();
+	private int vertexBuffer;
 	
-	private Map<String, Boolean> shadeModel = Maps.newHashMap();
+	// triangles of every part, addressed by offset
+	private int indexBuffer;
 	
-	private List<Vector3f> vertices = Lists.newArrayList();
+	// GL_UNSIGNED_SHORT when every vertex index fits in 16 bits
+	private int indexType = GL2.GL_UNSIGNED_INT;
 	
-	private List<Vector3f> normals = Lists.newArrayList();
+	private int indexSize = Integer.SIZE / 8;
 	
-	private List<Vector3f> texcoords = Lists.newArrayList();
-
-	private IntBuffer vboIds = IntBuffer.allocate(OBJ_BUFFER_COUNT);
+	// draw list, built once at load
+	private int batchCount;
+	
+	private int[] batchOffsets = new int[0];
+	
+	private int[] batchCounts = new int[0];
+	
+	private ObjMaterial[] batchMaterials = new ObjMaterial[0];
+	
+	private boolean[] batchSmooth = new boolean[0];
+	
+	// parts of each batch, contiguous in the draw list
+	private int[] batchFirstPart = new int[0];
+	
+	private int[] batchPartCount = new int[0];
+	
+	// parts in draw list order with their bounding boxes (min xyz, max xyz), for culling
+	private int partCount;
+	
+	private int[] partOffsets = new int[0];
+	
+	private int[] partCounts = new int[0];
+	
+	private float[] partBounds = new float[0];
+	
+	private final float[] bounds = new float[6];
+	
+	// state left by the last batch drawn in render()
+	private ObjMaterial currentMaterial;
+	
+	private int currentShadeModel;
+	
+	// attributes of the last program used by renderInstanced()
+	private int instancedProgram;
+	
+	private int transformLocation = -1;
+	
+	private int colorLocation = -1;
+	
+	private final float[] instanceMatrix = new float[16];
+	
+	// instances given as buffers to renderInstanced()
+	private InstanceBuffer streamed;
 	
 	private float scale = 1.0f;
 	
 	private boolean compress = false;
 	
+	private boolean optimize = false;
+	
+	// false: the mesh stays on the CPU, for a StaticBatch
+	private boolean upload = true;
+	
+	private boolean cache = true;
+	
 	private Vector3f bbMax = new Vector3f();
 	
 	private Vector3f bbMin = new Vector3f();
-
-	private static final Pattern MAT_LINE_PATTERN = Pattern.compile("([^ ]*)[ ]+(.*)");
 	
-	private static final Pattern ro = Pattern.compile("^o[ ]+(.+)$");
-	private static final Pattern rf = Pattern.compile("^f[ ]+(.+)$");
-	private static final Pattern rv = Pattern.compile("^v[ ]+([\\-0-9.]+)[ ]+([\\-0-9.]+)[ ]+([\\-0-9.]+)");
-	private static final Pattern rvt = Pattern.compile("^vt[ ]+([\\-0-9.]+)[ ]+([\\-0-9.]+)");
-	private static final Pattern rvt3 = Pattern.compile("^vt[ ]+([\\-0-9.]+)[ ]+([\\-0-9.]+)[ ]+([\\-0-9.]+)");
-	private static final Pattern rvn = Pattern.compile("^vn[ ]+([\\-0-9.]+)[ ]+([\\-0-9.]+)[ ]+([\\-0-9.]+)");
-	private static final Pattern rs = Pattern.compile("^s[ ]+(off|\\d+)$");
-	private static final Pattern rusemtl = Pattern.compile("^usemtl[ ]+(.+)$");
+	// levels of detail, built by the worker with the model
+	private float[] lodRatios = new float[0];
+	
+	private float lodSize = 512.0f;
+	
+	private List<ObjMesh> lodMeshes;
 	
+	private ObjLoader[] lods = new ObjLoader[0];
+	
+	private int lod;
+	
+	// a level of detail of another loader, the materials are the model's
+	private boolean lodLevel;
+
 	public ObjLoader(DefaultGLWindow reference) {
         checkNotNull(reference);
         reference.addReleaseListener(this);
     }
 
+    /**
+     * A level of detail, shares the materials of the model
+     */
+    private ObjLoader(ObjLoader model, ObjMesh mesh, int level) {
+        this.modelFile = format("{0} (LOD {1})", model.modelFile, level);
+        this.material = model.material;
+        this.mesh = mesh;
+        this.upload = model.upload;
+        this.lodLevel = true;
+    }
+
     public void setScale(float scale) {
 		this.scale = scale;
 	}
 	
-	public void load(String model, String material) {
-		// extract prefix from model
-		String prefix = "";
-		int last = model.lastIndexOf('/');
-		if(last != -1)
-			prefix = model.substring(0, last) + '/';
-		
-		try (BufferedReader modelStream = new BufferedReader(new FileReader(model))) {
-            String line = null;
-			List<String> modelLines = Lists.newArrayList();
-			while((line = modelStream.readLine()) != null)
-				modelLines.add(line);
-			parseModel(modelLines, prefix);
-		} catch (IOException e) {
-			GlTools.exit(format("Error reading model from ''{0}'': {1}", model, e.getMessage()));
-		}
-
-		try(BufferedReader materialStream = new BufferedReader(new FileReader(material))) {
-			String line = null;
-			List<String> materialLines = Lists.newArrayList();
-			while((line = materialStream.readLine()) != null)
-				materialLines.add(line);
-			parseMaterial(materialLines, prefix);
-		} catch (IOException e) {
-			GlTools.exit(format("Error reading material from ''{0}'': {1}", material, e.getMessage()));
+	/**
+	 * When enabled, equal (position, normal, texcoord) vertices are shared between face corners,
+	 * producing smaller vertex buffers. Must be set before {@link #load(String, String)}.
+	 */
+	public void setCompress(boolean compress) {
+		this.compress = compress;
+	}
+	
+	public boolean isCompress() {
+		return compress;
+	}
+	
+	/**
+	 * When enabled, the triangles and vertices (and the levels of detail) are reordered for the
+	 * vertex cache and less overdraw (see {@link MeshOptimizer}), best used with
+	 * {@link #setCompress(boolean)}. Must be set before {@link #load(String, String)}.
+	 */
+	public void setOptimize(boolean optimize) {
+		this.optimize = optimize;
+	}
+	
+	public boolean isOptimize() {
+		return optimize;
+	}
+	
+	/**
+	 * When disabled, the mesh is loaded but not uploaded to GL: the loader is only the source of a
+	 * {@link StaticBatch} and {@link #render()} draws nothing. Must be set before {@link #load(String, String)}.
+	 */
+	public void setUpload(boolean upload) {
+		this.upload = upload;
+	}
+	
+	public boolean isUpload() {
+		return upload;
+	}
+	
+	/**
+	 * When enabled (default), the processed model is kept in a binary file next to the .obj
+	 * (see {@link ObjCache}) and reused while the .obj/.mtl files stay the same.
+	 */
+	public void setCache(boolean cache) {
+		this.cache = cache;
+	}
+	
+	public boolean isCache() {
+		return cache;
+	}
+	
+	/**
+	 * Simplified copies of the model built when it's loaded (see {@link MeshSimplifier}), kept in
+	 * the cache like the model. Must be set before {@link #load(String, String)}.
+	 *
+	 * @param ratios The fraction of the triangles of each level, decreasing, e.g. 0.25, 0.0625
+	 */
+	public void setLods(float... ratios) {
+		float previous = 1.0f;
+		for(float ratio : ratios) {
+			checkArgument(ratio > 0.0f && ratio < previous, "LOD ratios must decrease from 1");
+			previous = ratio;
 		}
+		this.lodRatios = ratios.clone();
+	}
 	
+	/**
+	 * @param pixels The projected size from which the model is drawn with every triangle, a level
+	 * with a fraction {@code r} of them is used below {@code pixels * sqrt(r)} (same triangles per pixel)
+	 */
+	public void setLodSize(float pixels) {
+		this.lodSize = pixels;
 	}
 	
-	private void parseMaterial(List<String> lines, String prefix) {
-		material.clear();
-		
-		String currentMtl = null;
+	/**
+	 * @return The level of detail of the last {@link #render(Frustum, float)}, 0 is the model
+	 */
+	public int getLod() {
+		return lod;
+	}
+	
+	public int getLodCount() {
+		return lods.length;
+	}
+	
+	/**
+	 * @return The fraction of face corners that reused an existing vertex (0 when not compressed)
+	 */
+	public float getVertexReduction() {
+		if(mesh == null || mesh.getCornerCount() == 0)
+			return 0.0f;
+		return 1.0f - (float) mesh.getVertexCount() / (float) mesh.getCornerCount();
+	}
+	
+	public int getVertexCount() {
+		return mesh == null ? 0 : mesh.getVertexCount();
+	}
+	
+	String getModelFile() {
+		return modelFile;
+	}
+	
+	/**
+	 * Sets the files read by {@link #loadAll(ObjLoader...)}
+	 */
+	public void setSource(String model, String material) {
+		this.modelFile = checkNotNull(model);
+		this.materialFile = checkNotNull(material);
+	}
+	
+	public void load(String model, String material) {
+		setSource(model, material);
+		loadAll(this);
+	}
+	
+	/**
+	 * Loads every loader (see {@link #setSource(String, String)}) at the same time: files are read,
+	 * parsed and cached on worker threads, only the buffer upload and materials run on the calling
+	 * (GL) thread, in the given order.
+	 */
+	public static void loadAll(ObjLoader... loaders) {
+		List<ForkJoinTask<?>> tasks = Lists.newArrayListWithCapacity(loaders.length);
+		for(final ObjLoader loader : loaders) {
+			checkNotNull(loader.modelFile, "ObjLoader without source");
+			tasks.add(ObjParser.POOL.submit(new Runnable() {
+				@Override
+				public void run() {
+					loader.prepare();
+				}
+			}));
+		}
 		
-		for(String line : lines) {
-			Matcher m = MAT_LINE_PATTERN.matcher(line);
-			if(!m.matches())
-				continue;
-			
-			String prop = m.group(1);
-			String value = m.group(2);
-			List<String> values = Lists.newArrayList(value.split("[ ]+"));
-			
-			if("newmtl".equals(prop)) {
-				currentMtl = m.group(2);
-				material.put(currentMtl, new ObjMaterial(currentMtl));
-			}
-			
-			if(Strings.isNullOrEmpty(currentMtl))
-				continue;
-			
-			if("Ka".equals(prop)) {
-				float r = GlMath.clamp(Float.parseFloat(values.get(0)), 0.0f, 1.0f);
-				float g = GlMath.clamp(Float.parseFloat(values.get(1)), 0.0f, 1.0f);
-				float b = GlMath.clamp(Float.parseFloat(values.get(2)), 0.0f, 1.0f);
-				material.get(currentMtl).setKa(r, g, b);
-			}
-
-			if("Kd".equals(prop)) {
-				float r = GlMath.clamp(Float.parseFloat(values.get(0)), 0.0f, 1.0f);
-				float g = GlMath.clamp(Float.parseFloat(values.get(1)), 0.0f, 1.0f);
-				float b = GlMath.clamp(Float.parseFloat(values.get(2)), 0.0f, 1.0f);
-				material.get(currentMtl).setKd(r, g, b);
-			}
-
-			if("Ks".equals(prop)) {
-				float r = GlMath.clamp(Float.parseFloat(values.get(0)), 0.0f, 1.0f);
-				float g = GlMath.clamp(Float.parseFloat(values.get(1)), 0.0f, 1.0f);
-				float b = GlMath.clamp(Float.parseFloat(values.get(2)), 0.0f, 1.0f);
-				material.get(currentMtl).setKs(r, g, b);
-			}
-			
-			if("Ke".equals(prop)) {
-				float r = GlMath.clamp(Float.parseFloat(values.get(0)), 0.0f, 1.0f);
-				float g = GlMath.clamp(Float.parseFloat(values.get(1)), 0.0f, 1.0f);
-				float b = GlMath.clamp(Float.parseFloat(values.get(2)), 0.0f, 1.0f);
-				material.get(currentMtl).setKe(r, g, b);
-			}
-
-			if("map_Kd".equals(prop)) {
-				material.get(currentMtl).setMapKd(prefix, value);
-			}
-
-			if("map_Bump".equals(prop)) {
-				material.get(currentMtl).setMapBump(prefix, value);
-			}
-
-			if("d".equals(prop)) {
-				material.get(currentMtl).setD(Float.parseFloat(value));
-			}
-			
-			if("Ns".equals(prop)) {
-				material.get(currentMtl).setNs(Float.parseFloat(value));
-			}
+		for(int i=0; i<loaders.length; i++) {
+			tasks.get(i).join();
+			loaders[i].finish();
 		}
 	}
+	
+	/**
+	 * Worker side of the load, no GL calls allowed
+	 */
+	private void prepare() {
+		error = null;
+		
+		byte[] modelBytes = null;
+		try {
+			modelBytes = Files.readAllBytes(Paths.get(modelFile));
+		} catch (IOException e) {
+			error = format("Error reading model from ''{0}'': {1}", modelFile, e.getMessage());
+			return;
+		}
 
-	private void parseModel(List<String> lines, String prefix) {
-		vertices.clear();
-		texcoords.clear();
-		normals.clear();
-
-		triIndexes.clear();
-		quadIndexes.clear();
-
-		triBufferObjects.clear();
-		quadBufferObjects.clear();
-
-		objNames.clear();
+		byte[] materialBytes = null;
+		try {
+			materialBytes = Files.readAllBytes(Paths.get(materialFile));
+		} catch (IOException e) {
+			error = format("Error reading material from ''{0}'': {1}", materialFile, e.getMessage());
+			return;
+		}
 
-		shadeModel.clear();
+		mesh = loadMesh(modelFile, modelBytes, materialBytes);
+		lodMeshes = lodRatios.length > 0 ? loadLods(modelFile, modelBytes, materialBytes, mesh) : null;
 		
-		GL2 gl = GlTools.gl();
+		// extract prefix from model
+		String prefix = "";
+		int last = modelFile.lastIndexOf('/');
+		if(last != -1)
+			prefix = modelFile.substring(0, last) + '/';
 		
-		List<Vector3f> verts = Lists.newArrayList();
-		List<Vector3f> norms = Lists.newArrayList();
-		List<Vector3f> texes = Lists.newArrayList();
+		parsedMaterial = MtlParser.parse(materialBytes, prefix);
+	}
+	
+	private void finish() {
+		if(error != null) {
+			GlTools.exit(error);
+			return;
+		}
 		
-		gl.glGenBuffers(OBJ_BUFFER_COUNT, vboIds);
+		if(compress)
+			logger.info(format("{0}: {1} corners -> {2} vertices ({3,number,percent} reduction)", modelFile, mesh.getCornerCount(), mesh.getVertexCount(), getVertexReduction()));
 		
-		String oname = "root";
-		for(String line : lines) {
-			Matcher m;
-			
-			m = ro.matcher(line);
-			if(m.matches()) {
-				oname = m.group(1);
-				addObject(oname);
-			}
-			
-			m = rv.matcher(line);
-			if(m.matches()) {
-				verts.add(new Vector3f(
-					Float.parseFloat(m.group(1)) * scale,
-					Float.parseFloat(m.group(2)) * scale,
-					Float.parseFloat(m.group(3)) * scale
-				));
-			}
-			
-			m = rvt.matcher(line);
-			if(m.matches()) {
-				texes.add(new Vector3f(
-					Float.parseFloat(m.group(1)),
-					Float.parseFloat(m.group(2)),
-					0.0f
-				));
-			}
-			
-			m = rvt3.matcher(line);
-			if(m.matches()) {
-				texes.add(new Vector3f(
-					Float.parseFloat(m.group(1)),
-					Float.parseFloat(m.group(2)),
-					0.0f
-				));
-			}
-			
-			m = rvn.matcher(line);
-			if(m.matches()) {
-				norms.add(new Vector3f(
-					Float.parseFloat(m.group(1)),
-					Float.parseFloat(m.group(2)),
-					Float.parseFloat(m.group(3))
-				));
-			}
-			
-			m = rs.matcher(line);
-			if(m.matches()) {
-				boolean smooth = false;
-				try {
-					smooth = Integer.parseInt(m.group(1)) == 1;
-				} catch(NumberFormatException e) {
-					smooth = "on".equals(m.group(1));
-				}
-				shadeModel.put(oname, smooth);
-			}
-			
-			m = rusemtl.matcher(line);
-			if(m.matches())
-				objMaterial.put(oname, m.group(1));
-			
-			m = rf.matcher(line);
-			if(m.matches()) {
-				List<String> tokens = Lists.newArrayList(Splitter.onPattern("[ ]+").split(m.group(1)));
-				int vertexCount = tokens.size();
-
-				Vector3f fVerts[] = new Vector3f[vertexCount];
-				Vector3f fNorms[] = new Vector3f[vertexCount];
-				Vector3f fTexes[] = new Vector3f[vertexCount];
-				
-				for(int f=0; f<tokens.size(); f++) {
-					List<String> ns = Lists.newArrayList(Splitter.onPattern("/").split(tokens.get(f)));
-				
-					try {
-						int vx = Integer.parseInt(ns.get(0));
-						fVerts[f] = verts.get(vx-1);
-					} catch (NumberFormatException|IndexOutOfBoundsException e) {
-						fVerts[f] = new Vector3f();
-					}
-					
-					try {
-						int tx = Integer.parseInt(ns.get(1));
-						fTexes[f] = texes.get(tx-1);
-					} catch (NumberFormatException|IndexOutOfBoundsException e) {
-						fTexes[f] = new Vector3f();
-					}
-					
-					try {
-						int nx = Integer.parseInt(ns.get(2));
-						fNorms[f] = norms.get(nx-1);
-					} catch (NumberFormatException|IndexOutOfBoundsException e) {
-						fNorms[f] = new Vector3f();
-					}
-					
-				}
-				
-				addFace(fVerts, fNorms, fTexes, vertexCount, oname);
-			}
-		}
+		material = parsedMaterial;
+		parsedMaterial = null;
+		for(ObjMaterial m : material.values())
+			m.acquireTextures();
+		logger.debug(TextureCache.report());
 		
-		if(objNames.isEmpty())
-			addObject("root");
+		// the draw list needs the materials
+		upload(mesh);
 		
-		FloatBuffer vertsPtr = vertsPointer();
-		FloatBuffer normsPtr = normsPointer();
-		FloatBuffer texesPtr = texesPointer();
+		lods = new ObjLoader[lodMeshes == null ? 0 : lodMeshes.size()];
+		for(int i=0; i<lods.length; i++) {
+			lods[i] = new ObjLoader(this, lodMeshes.get(i), i + 1);
+			lods[i].upload(lodMeshes.get(i));
+		}
+		lodMeshes = null;
+		lod = 0;
+	}
+	
+	private ObjMesh loadMesh(String model, byte[] modelBytes, byte[] materialBytes) {
+		if(!cache)
+			return buildMesh(modelBytes);
 		
-		final int FLOAT_SIZE = Float.SIZE / 8;
-		final int INT_SIZE = Integer.SIZE / 8;
+		File cacheFile = ObjCache.cacheFile(model);
+		byte[] hash = ObjCache.hash(modelBytes, materialBytes, scale, compress, optimize);
 		
-		// Generate the Buffers
-		// Vertex Data
-		gl.glBindBuffer(GL2.GL_ARRAY_BUFFER, vboIds.get(VERTS_DATA));
-		gl.glBufferData(GL2.GL_ARRAY_BUFFER, FLOAT_SIZE * vertices.size() * 3, vertsPtr, GL2.GL_STATIC_DRAW);
-
-		// Texture coordinates
-		gl.glBindBuffer(GL2.GL_ARRAY_BUFFER, vboIds.get(TEXES_DATA));
-		gl.glBufferData(GL2.GL_ARRAY_BUFFER, FLOAT_SIZE * texcoords.size() * 2, texesPtr, GL2.GL_STATIC_DRAW);
-
-		// Normal data
-		gl.glBindBuffer(GL2.GL_ARRAY_BUFFER, vboIds.get(NORMS_DATA));
-		gl.glBufferData(GL2.GL_ARRAY_BUFFER, FLOAT_SIZE * normals.size() * 3, normsPtr, GL2.GL_STATIC_DRAW);
-
-		// Triangle Indexes
-		for(String o : triBufferObjects.keySet()) {
-			int b = triBufferObjects.get(o);
-			gl.glBindBuffer(GL2.GL_ELEMENT_ARRAY_BUFFER, b);
-			Collection<Integer> idxList = triIndexes.get(o);
-			int i=0;
-			int[] buffer = new int[idxList.size()];
-			for(int idx : idxList)
-				buffer[i++] = idx;
-			gl.glBufferData(GL2.GL_ELEMENT_ARRAY_BUFFER, INT_SIZE * triIndexes.get(o).size(), IntBuffer.wrap(buffer), GL2.GL_STATIC_DRAW);
+		ObjMesh cached = ObjCache.read(cacheFile, hash);
+		if(cached != null) {
+			logger.debug("{}: using cache {}", model, cacheFile);
+			return cached;
 		}
-
-		// Quad Indexes
-		for(String o : quadBufferObjects.keySet()) {
-			int b = quadBufferObjects.get(o);
-			gl.glBindBuffer(GL2.GL_ELEMENT_ARRAY_BUFFER, b);
-			Collection<Integer> idxList = quadIndexes.get(o);
-			int[] buffer = new int[idxList.size()];
-			int i=0;
-			for(int idx : idxList)
-				buffer[i++] = idx;
-			gl.glBufferData(GL2.GL_ELEMENT_ARRAY_BUFFER, INT_SIZE * quadIndexes.get(o).size(), IntBuffer.wrap(buffer), GL2.GL_STATIC_DRAW);
+		
+		ObjMesh built = buildMesh(modelBytes);
+		try {
+			ObjCache.write(cacheFile, hash, built);
+		} catch (IOException e) {
+			// not fatal, the model is parsed again next time
+			logger.warn("Unable to write cache {}: {}", cacheFile, e.getMessage());
 		}
+		return built;
 	}
-
-	private FloatBuffer vertsPointer() {
-		float[] buffer = new float[vertices.size() * 3];
-		for(int i=0; i<vertices.size(); i++) {
-			Vector3f v = vertices.get(i);
-			buffer[3 * i + 0] = v.x;
-			buffer[3 * i + 1] = v.y;
-			buffer[3 * i + 2] = v.z;
-		}
-		return FloatBuffer.wrap(buffer);
+	
+	private ObjMesh buildMesh(byte[] modelBytes) {
+		ObjMesh built = new ObjMeshBuilder(compress).build(new ObjParser(scale).parse(modelBytes, 0, modelBytes.length));
+		return optimize ? new MeshOptimizer().optimize(built) : built;
 	}
-
-	private FloatBuffer normsPointer() {
-		float[] buffer = new float[normals.size() * 3];
-		for(int i=0; i<normals.size(); i++) {
-			Vector3f v = normals.get(i);
-			buffer[3 * i + 0] = v.x;
-			buffer[3 * i + 1] = v.y;
-			buffer[3 * i + 2] = v.z;
+	
+	private List<ObjMesh> buildLods(ObjMesh mesh) {
+		List<ObjMesh> built = MeshSimplifier.buildChain(mesh, lodRatios);
+		if(optimize) {
+			MeshOptimizer optimizer = new MeshOptimizer();
+			for(int i=0; i<built.size(); i++)
+				built.set(i, optimizer.optimize(built.get(i)));
 		}
-		return FloatBuffer.wrap(buffer);
+		return built;
 	}
 	
-	private FloatBuffer texesPointer() {
-		float[] buffer = new float[texcoords.size() * 2];
-		for(int i=0; i<texcoords.size(); i++) {
-			Vector3f v = texcoords.get(i);
-			buffer[2 * i + 0] = v.x;
-			buffer[2 * i + 1] = v.y;
+	/**
+	 * The levels of detail from the cache, or simplified again (all of them) when one is missing
+	 */
+	private List<ObjMesh> loadLods(String model, byte[] modelBytes, byte[] materialBytes, ObjMesh mesh) {
+		if(!cache)
+			return buildLods(mesh);
+		
+		byte[] hash = ObjCache.hash(modelBytes, materialBytes, scale, compress, optimize);
+		List<ObjMesh> cached = Lists.newArrayListWithCapacity(lodRatios.length);
+		for(int level=1; level<=lodRatios.length; level++) {
+			ObjMesh lod = ObjCache.read(ObjCache.lodCacheFile(model, level), ObjCache.lodHash(hash, lodRatios, level));
+			if(lod == null)
+				break;
+			cached.add(lod);
 		}
-		return FloatBuffer.wrap(buffer);
+		if(cached.size() == lodRatios.length)
+			return cached;
+		
+		long start = System.nanoTime();
+		List<ObjMesh> built = buildLods(mesh);
+		logger.info(format("{0}: {1} levels of detail in {2} ms", model, built.size(), (System.nanoTime() - start) / 1000000));
+		for(int level=1; level<=built.size(); level++) {
+			File file = ObjCache.lodCacheFile(model, level);
+			try {
+				ObjCache.write(file, ObjCache.lodHash(hash, lodRatios, level), built.get(level - 1));
+			} catch (IOException e) {
+				logger.warn("Unable to write cache {}: {}", file, e.getMessage());
+			}
+		}
+		return built;
 	}
-
-	private void addFace(Vector3f[] verts, Vector3f[] norms, Vector3f[] texes, int count, String o) {
-		if(count < 3 || count > 4)
+	
+	private void upload(ObjMesh mesh) {
+		GL2 gl = GlTools.gl();
+		
+		bbMin.set(mesh.getBbMin());
+		bbMax.set(mesh.getBbMax());
+		bounds[0] = bbMin.x;
+		bounds[1] = bbMin.y;
+		bounds[2] = bbMin.z;
+		bounds[3] = bbMax.x;
+		bounds[4] = bbMax.y;
+		bounds[5] = bbMax.z;
+		
+		// Triangle Indexes of every part in one buffer, in draw list order
+		int[] indices = buildDrawList(mesh);
+		int indexCount = indices.length;
+		
+		if(!upload) {
+			logger.info(format("{0}: {1} objects kept on the CPU, not uploaded", modelFile, mesh.getParts().size()));
 			return;
-
-		for(int i=0; i<count; i++)
-			norms[i].normalize();
-
-		final float e = 0.00001f;
-
-		for(int i=0; i<count; i++) {
-			Vector3f v = verts[i];
-			Vector3f t = texes[i];
-			Vector3f n = norms[i];
-
-			int matchIdx = 0;
-			if(compress) {
-				for(matchIdx = 0; matchIdx < vertices.size(); matchIdx++) {
-					if(
-						Vectors.sub(v, vertices.get(matchIdx)).lengthSquared() <= e &&
-						Vectors.sub(n, normals.get(matchIdx)).lengthSquared() <= e &&
-						Vectors.sub(t, texcoords.get(matchIdx)).lengthSquared() <= e
-					) { // there's a match
-						boolean match = false;
-						if(count == 3) { triIndexes.get(o).add(matchIdx); match=true; }
-						if(count == 4) { quadIndexes.get(o).add(matchIdx); match=true; }
-						if(match)
-							break;
-					}
-				}
-			}
-
-			// No match
-			if(matchIdx == vertices.size() || !compress) {
-				if(count == 3) triIndexes.get(o).add(vertices.size());
-				if(count == 4) quadIndexes.get(o).add(vertices.size());
-				
-				vertices.add(v);
-				normals.add(n);
-				texcoords.add(t);
-
-				if(v.x > bbMax.x) bbMax.x = v.x;
-				if(v.x < bbMin.x) bbMin.x = v.x;
-
-				if(v.y > bbMax.y) bbMax.y = v.y;
-				if(v.y < bbMin.y) bbMin.y = v.y;
-
-				if(v.z > bbMax.z) bbMax.z = v.z;
-				if(v.z < bbMin.z) bbMin.z = v.z;
-			}
 		}
+		
+		int[] ids = new int[2];
+		gl.glGenBuffers(2, ids, 0);
+		vertexBuffer = ids[0];
+		indexBuffer = ids[1];
+		
+		// Interleaved vertex data, straight from the (possibly mapped) mesh buffer
+		int vertexBytes = mesh.getVertexCount() * ObjMesh.STRIDE;
+		gl.glBindBuffer(GL2.GL_ARRAY_BUFFER, vertexBuffer);
+		gl.glBufferData(GL2.GL_ARRAY_BUFFER, vertexBytes, mesh.getVertices(), GL2.GL_STATIC_DRAW);
+		gl.glBindBuffer(GL2.GL_ARRAY_BUFFER, 0);
+		
+		gl.glBindBuffer(GL2.GL_ELEMENT_ARRAY_BUFFER, indexBuffer);
+		if(mesh.getVertexCount() <= 0x10000) {
+			indexType = GL2.GL_UNSIGNED_SHORT;
+			indexSize = Short.SIZE / 8;
+			gl.glBufferData(GL2.GL_ELEMENT_ARRAY_BUFFER, indexSize * indexCount, narrow(indices), GL2.GL_STATIC_DRAW);
+		} else {
+			indexType = GL2.GL_UNSIGNED_INT;
+			indexSize = Integer.SIZE / 8;
+			gl.glBufferData(GL2.GL_ELEMENT_ARRAY_BUFFER, indexSize * indexCount, IntBuffer.wrap(indices), GL2.GL_STATIC_DRAW);
+		}
+		gl.glBindBuffer(GL2.GL_ELEMENT_ARRAY_BUFFER, 0);
+		
+		// previous layout: 32 bit indexes, 3 vertex buffers + 2 index buffers per part
+		int intBytes = (Integer.SIZE / 8) * indexCount;
+		int indexBytes = indexSize * indexCount;
+		logger.info(format("{0}: {1} bytes in 2 buffers (vertices {2}, {3}-bit indexes {4}), {5} bytes and {6} buffers saved",
+				modelFile, vertexBytes + indexBytes, vertexBytes, 8 * indexSize, indexBytes,
+				intBytes - indexBytes, 3 + 2 * mesh.getParts().size() - 2));
+		logger.info(format("{0}: {1} objects drawn in {2} batches", modelFile, mesh.getParts().size(), batchCount));
 	}
-
-	private void addObject(String oname) {
-		objNames.add(oname);
+	
+	/**
+	 * Sorts the parts by material and shade model and merges the runs with the same state in one
+	 * batch each, the index ranges are moved so that every batch is contiguous.
+	 *
+	 * @return The reordered indexes
+	 */
+	private int[] buildDrawList(ObjMesh mesh) {
+		final List<ObjMesh.Part> parts = Lists.newArrayList();
+		for(ObjMesh.Part part : mesh.getParts())
+			if(part.getTriCount() > 0)
+				parts.add(part);
 		
-		GL2 gl = GlTools.gl();
+		// stable: parts keep the file order inside the same state
+		Collections.sort(parts, new Comparator<ObjMesh.Part>() {
+			@Override
+			public int compare(ObjMesh.Part a, ObjMesh.Part b) {
+				int c = Strings.nullToEmpty(a.getMaterial()).compareTo(Strings.nullToEmpty(b.getMaterial()));
+				if(c != 0)
+					return c;
+				return Boolean.compare(a.isSmooth(), b.isSmooth());
+			}
+		});
 		
-		IntBuffer buffer = IntBuffer.allocate(1);
+		IntBuffer source = mesh.getIndices().duplicate();
+		int[] indices = new int[mesh.getIndexCount()];
 		
-		// Buffer for triangle indexes
-		gl.glGenBuffers(1, buffer);
-		triBufferObjects.put(oname, buffer.get(0));
+		batchOffsets = new int[parts.size()];
+		batchCounts = new int[parts.size()];
+		batchMaterials = new ObjMaterial[parts.size()];
+		batchSmooth = new boolean[parts.size()];
+		batchFirstPart = new int[parts.size()];
+		batchPartCount = new int[parts.size()];
+		batchCount = 0;
+		
+		partCount = parts.size();
+		partOffsets = new int[partCount];
+		partCounts = new int[partCount];
+		partBounds = new float[6 * partCount];
+		FloatBuffer vertices = mesh.getVertices();
+		
+		int offset = 0;
+		int p = 0;
+		ObjMesh.Part previous = null;
+		for(ObjMesh.Part part : parts) {
+			source.position(part.getTriOffset());
+			source.get(indices, offset, part.getTriCount());
+			
+			partOffsets[p] = offset;
+			partCounts[p] = part.getTriCount();
+			computeBounds(vertices, indices, offset, part.getTriCount(), partBounds, 6 * p);
+			
+			boolean same = previous != null
+					&& Objects.equal(previous.getMaterial(), part.getMaterial())
+					&& previous.isSmooth() == part.isSmooth();
+			if(same) {
+				batchCounts[batchCount - 1] += part.getTriCount();
+				batchPartCount[batchCount - 1]++;
+			} else {
+				batchOffsets[batchCount] = offset;
+				batchCounts[batchCount] = part.getTriCount();
+				batchMaterials[batchCount] = material.get(part.getMaterial());
+				batchSmooth[batchCount] = part.isSmooth();
+				batchFirstPart[batchCount] = p;
+				batchPartCount[batchCount] = 1;
+				batchCount++;
+			}
+			
+			offset += part.getTriCount();
+			previous = part;
+			p++;
+		}
 		
-		// Buffer for quad indexes
-		gl.glGenBuffers(1, buffer);
-		quadBufferObjects.put(oname, buffer.get(0));
+		return indices;
 	}
 	
+	private static void computeBounds(FloatBuffer vertices, int[] indices, int offset, int count, float[] out, int o) {
+		float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, minZ = Float.MAX_VALUE;
+		float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+		for(int i=offset; i<offset + count; i++) {
+			int v = indices[i] * ObjMesh.VERTEX_SIZE;
+			float x = vertices.get(v), y = vertices.get(v + 1), z = vertices.get(v + 2);
+			minX = Math.min(minX, x);
+			minY = Math.min(minY, y);
+			minZ = Math.min(minZ, z);
+			maxX = Math.max(maxX, x);
+			maxY = Math.max(maxY, y);
+			maxZ = Math.max(maxZ, z);
+		}
+		out[o] = minX;
+		out[o + 1] = minY;
+		out[o + 2] = minZ;
+		out[o + 3] = maxX;
+		out[o + 4] = maxY;
+		out[o + 5] = maxZ;
+	}
+	
+	static ShortBuffer narrow(int[] indices) {
+		short[] narrow = new short[indices.length];
+		for(int i=0; i<indices.length; i++)
+			narrow[i] = (short) indices[i];
+		return ShortBuffer.wrap(narrow);
+	}
+
 	public void release() {
 		GL2 gl = GlTools.gl();
 		release(gl);
@@ -470,63 +605,346 @@ public class ObjLoader implements ReleaseListener {
 	}
 	
 	public void render(boolean mesh) {
+		render(mesh, null);
+	}
+	
+	/**
+	 * Draws only what is inside the view: nothing at all when the model's bounding box is outside,
+	 * otherwise the objects ('o' parts) whose own box is visible
+	 *
+	 * @param frustum The view volume in the space of the model (see {@link pt.ipb.esact.compgraf.tools.math.MatrixStack#getFrustum()})
+	 */
+	public void render(Frustum frustum) {
+		render(false, frustum);
+	}
+	
+	public void render(boolean mesh, Frustum frustum) {
+		if(this.mesh == null || vertexBuffer == 0)
+			return;
+		
+		// every part is inside when the whole box is
+		if(frustum != null) {
+			int result = frustum.classify(bounds, 0);
+			if(result == Frustum.OUTSIDE) {
+				RenderStats.culled(partCount);
+				return;
+			}
+			if(result == Frustum.INSIDE)
+				frustum = null;
+		}
+		if(frustum == null)
+			RenderStats.visible(partCount);
+		
 		GL2 gl = GlTools.gl();
 		
 		gl.glPushAttrib(GL2.GL_LIGHTING_BIT | GL2.GL_ENABLE_BIT | GL2.GL_CURRENT_BIT | GL2.GL_TEXTURE_BIT);
+		GlState.begin();
+
+			bindArrays(gl, mesh);
+	
+			if(mesh) {
+				Colors.WHITE.set();
+				RenderStats.stateChange();
+			}
+			
+			currentMaterial = null;
+			currentShadeModel = 0;
+			for(int i=0; i<batchCount; i++) {
+				if(frustum == null) {
+					draw(gl, mesh, i, batchOffsets[i], batchCounts[i]);
+					continue;
+				}
+				
+				// consecutive visible parts still go in one draw
+				int runOffset = 0;
+				int runCount = 0;
+				int last = batchFirstPart[i] + batchPartCount[i];
+				for(int p=batchFirstPart[i]; p<last; p++) {
+					if(frustum.intersects(partBounds, 6 * p)) {
+						RenderStats.visible(1);
+						if(runCount == 0)
+							runOffset = partOffsets[p];
+						runCount += partCounts[p];
+					} else {
+						RenderStats.culled(1);
+						if(runCount > 0)
+							draw(gl, mesh, i, runOffset, runCount);
+						runCount = 0;
+					}
+				}
+				if(runCount > 0)
+					draw(gl, mesh, i, runOffset, runCount);
+			}
+	
+			unbindArrays(gl, mesh);
 
-			gl.glEnableClientState(GL2.GL_VERTEX_ARRAY);
-			gl.glEnableClientState(GL2.GL_NORMAL_ARRAY);
-			if(!mesh)
-				gl.glEnableClientState(GL2.GL_TEXTURE_COORD_ARRAY);
+		GlState.end();
+		gl.glPopAttrib();
+	}
 	
-			gl.glBindBuffer(GL2.GL_ARRAY_BUFFER, vboIds.get(VERTS_DATA));
-			gl.glVertexPointer(3, GL2.GL_FLOAT, 0, 0);
+	/**
+	 * Draws the level of detail for the size of the model on the screen (see {@link #setLods(float...)}),
+	 * a coarser level is taken below its size and left only {@link #LOD_HYSTERESIS} above it
+	 *
+	 * @param screenSize The projected size of the bounding box in pixels (see
+	 * {@link pt.ipb.esact.compgraf.tools.math.MatrixStack#getScreenSize(Vector3f, Vector3f, int)})
+	 */
+	public void render(Frustum frustum, float screenSize) {
+		lod = selectLod(lod, screenSize);
+		if(lod == 0)
+			render(false, frustum);
+		else
+			lods[lod - 1].render(false, frustum);
+	}
 	
-			gl.glBindBuffer(GL2.GL_ARRAY_BUFFER, vboIds.get(NORMS_DATA));
-			gl.glNormalPointer(GL2.GL_FLOAT, 0, 0);
+	/**
+	 * @return The level of detail for the size, starting from the {@code current} one
+	 */
+	public int selectLod(int current, float screenSize) {
+		int level = Math.min(current, lods.length);
+		while(level < lods.length && screenSize < lodThreshold(level + 1))
+			level++;
+		while(level > 0 && screenSize > lodThreshold(level) * (1.0f + LOD_HYSTERESIS))
+			level--;
+		return level;
+	}
 	
-			if(!mesh) {
-				gl.glBindBuffer(GL2.GL_ARRAY_BUFFER, vboIds.get(TEXES_DATA));
-				gl.glTexCoordPointer(2, GL2.GL_FLOAT, 0, 0);
-			}
+	private float lodThreshold(int level) {
+		return lodSize * (float) Math.sqrt(lodRatios[level - 1]);
+	}
+	
+	/**
+	 * Draws a range of the batch, switching the material and shade model only when they differ
+	 * from the last draw
+	 */
+	private void draw(GL2 gl, boolean mesh, int batch, int offset, int count) {
+		if(!mesh)
+			applyState(gl, batch);
+		
+		gl.glDrawElements(!mesh ? GL2.GL_TRIANGLES : GL2.GL_LINES, count, indexType, (long) indexSize * offset);
+		RenderStats.drawCall();
+	}
+	
+	private void applyState(GL2 gl, int batch) {
+		ObjMaterial m = batchMaterials[batch];
+		if(m != null && m != currentMaterial) {
+			m.set();
+			currentMaterial = m;
+			RenderStats.stateChange();
+		}
+		int shadeModel = batchSmooth[batch] ? GL2.GL_SMOOTH : GL2.GL_FLAT;
+		if(shadeModel != currentShadeModel) {
+			gl.glShadeModel(shadeModel);
+			currentShadeModel = shadeModel;
+			RenderStats.stateChange();
+		}
+	}
+	
+	private void bindArrays(GL2 gl, boolean mesh) {
+		gl.glEnableClientState(GL2.GL_VERTEX_ARRAY);
+		gl.glEnableClientState(GL2.GL_NORMAL_ARRAY);
+		if(!mesh)
+			gl.glEnableClientState(GL2.GL_TEXTURE_COORD_ARRAY);
+		
+		gl.glBindBuffer(GL2.GL_ARRAY_BUFFER, vertexBuffer);
+		gl.glVertexPointer(3, GL2.GL_FLOAT, ObjMesh.STRIDE, 0);
+		gl.glNormalPointer(GL2.GL_FLOAT, ObjMesh.STRIDE, FLOAT_SIZE * ObjMesh.NORMAL_OFFSET);
+		if(!mesh)
+			gl.glTexCoordPointer(2, GL2.GL_FLOAT, ObjMesh.STRIDE, FLOAT_SIZE * ObjMesh.TEXCOORD_OFFSET);
+		
+		gl.glBindBuffer(GL2.GL_ELEMENT_ARRAY_BUFFER, indexBuffer);
+	}
+	
+	private void unbindArrays(GL2 gl, boolean mesh) {
+		gl.glBindBuffer(GL2.GL_ARRAY_BUFFER, 0);
+		gl.glBindBuffer(GL2.GL_ELEMENT_ARRAY_BUFFER, 0);
+		
+		gl.glDisableClientState(GL2.GL_VERTEX_ARRAY);
+		gl.glDisableClientState(GL2.GL_NORMAL_ARRAY);
+		if(!mesh)
+			gl.glDisableClientState(GL2.GL_TEXTURE_COORD_ARRAY);
+	}
 	
-			for(String o : objNames) {
-				if(!mesh) {
-					String mat = objMaterial.get(o);
-					if(material.containsKey(mat)) {
-						ObjMaterial m = material.get(mat);
-						m.set();
+	/**
+	 * @return Whether {@link #renderInstanced(Shader, InstanceBuffer)} can draw all the instances in
+	 * one call per material (GL 3.3 instanced arrays), otherwise it draws them one by one
+	 */
+	public static boolean isInstancingSupported(GL2 gl) {
+		return gl.isGL3ES3() && gl.isFunctionAvailable("glVertexAttribDivisor") && gl.isFunctionAvailable("glDrawElementsInstanced");
+	}
+	
+	/**
+	 * Copies the packed instances to a buffer kept by the loader and draws them, see
+	 * {@link #renderInstanced(Shader, InstanceBuffer)}
+	 *
+	 * @param transforms Column-major 4x4 matrices, 16 floats per instance
+	 * @param colors RGBA, 4 floats per instance, or {@code null} (white)
+	 */
+	public void renderInstanced(Shader shader, FloatBuffer transforms, FloatBuffer colors, int count) {
+		if(streamed == null || (colors != null && !streamed.isColored())) {
+			if(streamed != null)
+				streamed.release(GlTools.gl());
+			streamed = new InstanceBuffer(Math.max(count, 1), colors != null);
+		}
+		streamed.set(transforms, colors, count);
+		renderInstanced(shader, streamed);
+	}
+	
+	/**
+	 * Draws every instance with one {@code glDrawElementsInstanced} per batch (material range): the
+	 * arrays, buffers and each material are set once for all of them. The transforms are applied
+	 * after the current modelview.
+	 *
+	 * @param shader The bound program, reading the instance from the {@code instance_transform}
+	 * (mat4) and {@code instance_color} (vec4) attributes (see assets/shaders/instanced.vert).
+	 * Without them the instances are drawn one by one with {@code glMultMatrixf}.
+	 */
+	public void renderInstanced(Shader shader, InstanceBuffer instances) {
+		if(this.mesh == null || vertexBuffer == 0 || instances.size() == 0)
+			return;
+		
+		GL2 gl = GlTools.gl();
+		
+		if(shader.getProgram() != instancedProgram) {
+			instancedProgram = shader.getProgram();
+			transformLocation = shader.attributeLocation(INSTANCE_TRANSFORM);
+			colorLocation = shader.attributeLocation(INSTANCE_COLOR);
+		}
+		boolean hardware = transformLocation != -1 && isInstancingSupported(gl);
+		
+		gl.glPushAttrib(GL2.GL_LIGHTING_BIT | GL2.GL_ENABLE_BIT | GL2.GL_CURRENT_BIT | GL2.GL_TEXTURE_BIT);
+		GlState.begin();
+		
+			bindArrays(gl, false);
+			
+			if(hardware) {
+				GL3ES3 gl3 = gl.getGL3ES3();
+				instances.bind(gl);
+				
+				// a mat4 takes 4 consecutive locations, one per column
+				for(int c=0; c<4; c++) {
+					gl.glEnableVertexAttribArray(transformLocation + c);
+					gl.glVertexAttribPointer(transformLocation + c, 4, GL2.GL_FLOAT, false, InstanceBuffer.TRANSFORM_SIZE * FLOAT_SIZE, 4L * c * FLOAT_SIZE);
+					gl3.glVertexAttribDivisor(transformLocation + c, 1);
+				}
+				if(colorLocation != -1) {
+					if(instances.isColored()) {
+						gl.glEnableVertexAttribArray(colorLocation);
+						gl.glVertexAttribPointer(colorLocation, 4, GL2.GL_FLOAT, false, InstanceBuffer.COLOR_SIZE * FLOAT_SIZE, instances.colorOffset());
+						gl3.glVertexAttribDivisor(colorLocation, 1);
+					} else {
+						gl.glVertexAttrib4f(colorLocation, 1.0f, 1.0f, 1.0f, 1.0f);
 					}
-					gl.glShadeModel(shadeModel.get(o) ? GL2.GL_SMOOTH : GL2.GL_FLAT);
+				}
+				gl.glBindBuffer(GL2.GL_ARRAY_BUFFER, 0);
+			}
+			
+			currentMaterial = null;
+			currentShadeModel = 0;
+			for(int i=0; i<batchCount; i++) {
+				applyState(gl, i);
+				
+				long offset = (long) indexSize * batchOffsets[i];
+				if(hardware) {
+					gl.glDrawElementsInstanced(GL2.GL_TRIANGLES, batchCounts[i], indexType, offset, instances.size());
+					RenderStats.drawCall();
 				} else {
-					Colors.WHITE.set();
+					drawInstances(gl, instances, batchCounts[i], offset);
 				}
-	
-				// Triangle Indexes
-				if(triBufferObjects.containsKey(o)) {
-					int b = triBufferObjects.get(o);
-					gl.glBindBuffer(GL2.GL_ELEMENT_ARRAY_BUFFER, b);
-					gl.glDrawElements(!mesh ? GL2.GL_TRIANGLES : GL2.GL_LINES, triIndexes.get(o).size(), GL2.GL_UNSIGNED_INT, 0);
+			}
+			
+			if(hardware) {
+				GL3ES3 gl3 = gl.getGL3ES3();
+				for(int c=0; c<4; c++) {
+					gl3.glVertexAttribDivisor(transformLocation + c, 0);
+					gl.glDisableVertexAttribArray(transformLocation + c);
 				}
-	
-				// Quads Indexes
-				if(quadBufferObjects.containsKey(o)) {
-					int b = quadBufferObjects.get(o);
-					gl.glBindBuffer(GL2.GL_ELEMENT_ARRAY_BUFFER, b);
-					gl.glDrawElements(!mesh ? GL2.GL_QUADS : GL2.GL_LINES, quadIndexes.get(o).size(), GL2.GL_UNSIGNED_INT, 0);
+				if(colorLocation != -1 && instances.isColored()) {
+					gl3.glVertexAttribDivisor(colorLocation, 0);
+					gl.glDisableVertexAttribArray(colorLocation);
 				}
+			}
+			
+			unbindArrays(gl, false);
+		
+		GlState.end();
+		gl.glPopAttrib();
+	}
 	
+	/**
+	 * Fallback: one draw per instance, still without repeating the arrays and material setup
+	 */
+	private void drawInstances(GL2 gl, InstanceBuffer instances, int count, long offset) {
+		FloatBuffer transforms = instances.getTransforms();
+		FloatBuffer colors = instances.getColors();
+		for(int n=0; n<instances.size(); n++) {
+			int t = n * InstanceBuffer.TRANSFORM_SIZE;
+			int c = n * InstanceBuffer.COLOR_SIZE;
+			if(transformLocation != -1) {
+				for(int col=0; col<4; col++)
+					gl.glVertexAttrib4f(transformLocation + col, transforms.get(t + 4 * col), transforms.get(t + 4 * col + 1), transforms.get(t + 4 * col + 2), transforms.get(t + 4 * col + 3));
+				if(colorLocation != -1) {
+					if(colors != null)
+						gl.glVertexAttrib4f(colorLocation, colors.get(c), colors.get(c + 1), colors.get(c + 2), colors.get(c + 3));
+					else
+						gl.glVertexAttrib4f(colorLocation, 1.0f, 1.0f, 1.0f, 1.0f);
+				}
+				gl.glDrawElements(GL2.GL_TRIANGLES, count, indexType, offset);
+			} else {
+				if(colors != null)
+					gl.glColor4f(colors.get(c), colors.get(c + 1), colors.get(c + 2), colors.get(c + 3));
+				for(int i=0; i<16; i++)
+					instanceMatrix[i] = transforms.get(t + i);
+				gl.glPushMatrix();
+				gl.glMultMatrixf(instanceMatrix, 0);
+				gl.glDrawElements(GL2.GL_TRIANGLES, count, indexType, offset);
+				gl.glPopMatrix();
 			}
+			RenderStats.drawCall();
+		}
+	}
 	
-			gl.glBindBuffer(GL2.GL_ARRAY_BUFFER, 0);
-			gl.glBindBuffer(GL2.GL_ELEMENT_ARRAY_BUFFER, 0);
+	/**
+	 * @return Whether the bounding box of the model is (at least partly) inside the view
+	 */
+	public boolean isVisible(Frustum frustum) {
+		return mesh != null && frustum.intersects(bounds, 0);
+	}
 	
-			gl.glDisableClientState(GL2.GL_VERTEX_ARRAY);
-			gl.glDisableClientState(GL2.GL_NORMAL_ARRAY);
-			if(!mesh)
-				gl.glDisableClientState(GL2.GL_TEXTURE_COORD_ARRAY);
-
-		gl.glPopAttrib();
+	/**
+	 * @return The bounding box minimum, in model space (don't change it)
+	 */
+	public Vector3f getBbMin() {
+		return bbMin;
+	}
+	
+	public Vector3f getBbMax() {
+		return bbMax;
+	}
+	
+	/**
+	 * @return The draw calls of one {@link #render()}
+	 */
+	public int getBatchCount() {
+		return batchCount;
+	}
+	
+	/**
+	 * @return The geometry on the CPU, {@code null} before the load
+	 */
+	ObjMesh getMesh() {
+		return mesh;
+	}
+	
+	ObjMaterial getMaterial(String name) {
+		return material.get(name);
+	}
+	
+	/**
+	 * @return The number of objects ('o' parts) drawn, each one culled on its own
+	 */
+	public int getPartCount() {
+		return partCount;
 	}
 	
 	public void drawBoundingBox() {
@@ -536,7 +954,7 @@ public class ObjLoader implements ReleaseListener {
 		float xSize = bbMax.x - bbMin.x;
 		float ySize = bbMax.y - bbMin.y;
 		float zSize = bbMax.z - bbMin.z;
-		Vector3f center = new Vector3f(bbMin.x + xSize / 2.0f, bbMin.y + ySize / 2.0f, bbMin.z + zSize / 2.0f);
+
 		gl.glPushAttrib(GL2.GL_CURRENT_BIT | GL2.GL_ENABLE_BIT);
 			gl.glDisable(GL2.GL_TEXTURE_2D);
 			gl.glDisable(GL2.GL_DEPTH_TEST);
@@ -544,7 +962,7 @@ public class ObjLoader implements ReleaseListener {
 			gl.glDisable(GL2.GL_BLEND);
 			Colors.GREEN.set();
 			gl.glPushMatrix();
-				gl.glTranslatef(center.x, center.y, center.z);
+				gl.glTranslatef(bbMin.x + xSize / 2.0f, bbMin.y + ySize / 2.0f, bbMin.z + zSize / 2.0f);
 				gl.glScalef(xSize, ySize, zSize);
 				glut.glutWireCube(1.0f);
 			gl.glPopMatrix();
@@ -556,13 +974,21 @@ public class ObjLoader implements ReleaseListener {
 		if(gl == null)
 			return;
 		
-		gl.glDeleteBuffers(OBJ_BUFFER_COUNT, vboIds);
-
-		for(int id : triBufferObjects.values())
-			gl.glDeleteBuffers(1, new int[] { id }, 0);
-
-		for(int id : quadBufferObjects.values())
-			gl.glDeleteBuffers(1, new int[] { id }, 0);
+		if(vertexBuffer != 0)
+			gl.glDeleteBuffers(2, new int[] { vertexBuffer, indexBuffer }, 0);
+		vertexBuffer = 0;
+		indexBuffer = 0;
+		
+		if(streamed != null)
+			streamed.release(gl);
+		
+		for(ObjLoader level : lods)
+			level.release(gl);
+		lods = new ObjLoader[0];
+		
+		// the materials are the model's
+		if(lodLevel)
+			return;
 		
 		// Release material stuff
 		for(ObjMaterial mat : material.values())
@@ -1,19 +1,22 @@
 package pt.ipb.esact.compgraf.engine.obj;
 
 import java.nio.FloatBuffer;
+import java.util.Arrays;
 import java.util.Set;
 
 import javax.media.opengl.GL2;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import pt.ipb.esact.compgraf.tools.GlState;
 import pt.ipb.esact.compgraf.tools.GlTools;
 import pt.ipb.esact.compgraf.tools.ReleaseListener;
 import pt.ipb.esact.compgraf.tools.Shader;
+import pt.ipb.esact.compgraf.tools.TextureCache;
+import pt.ipb.esact.compgraf.tools.TextureHandle;
 import pt.ipb.esact.compgraf.tools.math.GlMath;
 
 import com.google.common.collect.Sets;
-import com.jogamp.opengl.util.texture.Texture;
 
 
 public class ObjMaterial implements ReleaseListener {
@@ -24,10 +27,15 @@ public class ObjMaterial implements ReleaseListener {
 
 	private Set<Integer> textureIds = Sets.newHashSet();
 	
-	FloatBuffer ka = FloatBuffer.allocate(4);
-	FloatBuffer kd = FloatBuffer.allocate(4);
-	FloatBuffer ke = FloatBuffer.allocate(4);
-	FloatBuffer ks = FloatBuffer.allocate(4);
+	float[] ka = new float[4];
+	float[] kd = new float[4];
+	float[] ke = new float[4];
+	float[] ks = new float[4];
+	
+	// kd with the dissolve applied, see update()
+	private float[] color = new float[4];
+	
+	private boolean blend;
 
 	private boolean kaset;
 
@@ -49,39 +57,49 @@ public class ObjMaterial implements ReleaseListener {
 	
 	private boolean mbumpset;
 	
-	private Texture textBump;
+	private TextureHandle textBump;
 	
-	private Texture texDiffuse;
+	private TextureHandle texDiffuse;
     private String diffuseName;
 
+	// requested by acquireTextures()
+	private String diffusePath;
+
+	private String bumpPath;
+
     public ObjMaterial(String name) {
 		this.name = name;
 	}
 	
 	public void setKa(float r, float g, float b) {
 		kaset = true;
-		ka = FloatBuffer.wrap(new float[] {r, g, b, 1.0f});
+		ka = new float[] {r, g, b, 1.0f};
+		update();
 	}
 
 	public void setKd(float r, float g, float b) {
 		kdset = true;
-		kd = FloatBuffer.wrap(new float[] {r, g, b, 1.0f});
+		kd = new float[] {r, g, b, 1.0f};
+		update();
 	}
 
 	public void setKs(float r, float g, float b) {
 		ksset = true;
-		ks = FloatBuffer.wrap(new float[] {r, g, b, 1.0f});
+		ks = new float[] {r, g, b, 1.0f};
+		update();
 	}
 
 	public void setKe(float r, float g, float b) {
 		keset = true;
-		ke = FloatBuffer.wrap(new float[] {r, g, b, 1.0f});
+		ke = new float[] {r, g, b, 1.0f};
+		update();
 	}
 
 	public void setMapKd(String prefix, String value) {
 		mkdset = true;
 		diffuseName = findPath(value);
-		texDiffuse = GlTools.loadTexture(prefix + diffuseName);
+		diffusePath = prefix + diffuseName;
+		update();
 	}
 
 	private String findPath(String value) {
@@ -98,13 +116,29 @@ public class ObjMaterial implements ReleaseListener {
 
 	public void setMapBump(String prefix, String value) {
 		mbumpset = true;
-		String name = findPath(value);
-		textBump = GlTools.loadTexture(prefix + name);
+		bumpPath = prefix + findPath(value);
+		update();
+	}
+
+	/**
+	 * Starts loading the maps given to {@link #setMapKd(String, String)} and
+	 * {@link #setMapBump(String, String)}, kept out of the setters so the .mtl can be read without GL
+	 */
+	public void acquireTextures() {
+		if(mkdset && texDiffuse == null)
+			texDiffuse = TextureCache.acquire(diffusePath);
+		if(mbumpset && textBump == null)
+			textBump = TextureCache.acquire(bumpPath);
+	}
+
+	public String getName() {
+		return name;
 	}
 
 	public void setD(float value) {
 		dset = true;
 		d = GlMath.clamp(value, 0.0f, 1.0f);
+		update();
 	}
 
 	public void setNs(float value) {
@@ -124,67 +158,69 @@ public class ObjMaterial implements ReleaseListener {
 		return s.toString();
 	}
 	
+	/**
+	 * Precomputes what set() needs, the .mtl statements may come in any order
+	 */
+	private void update() {
+		color = kd.clone();
+		if(dset && d < 1.0f && !(mkdset || mbumpset))
+			color[3] = d;
+		
+		blend = (dset && d < 1.0f) || (mkdset && diffuseName.toLowerCase().endsWith("png"));
+	}
+	
 	public void set() {
 		GL2 gl = GlTools.gl();
 		
-		if(kdset) {
-			if(dset && d < 1.0f && !(mkdset || mbumpset))
-				kd.put(3, d);
-			gl.glColor4fv(kd);
-		}
+		if(kdset)
+			GlState.color(color);
 		
 		if(kaset)
-			gl.glMaterialfv(GL2.GL_FRONT, GL2.GL_AMBIENT, ka);
+			GlState.material(GL2.GL_AMBIENT, ka);
 		if(kdset)
-			gl.glMaterialfv(GL2.GL_FRONT, GL2.GL_DIFFUSE, kd);
+			GlState.material(GL2.GL_DIFFUSE, color);
 		if(ksset)
-			gl.glMaterialfv(GL2.GL_FRONT, GL2.GL_SPECULAR, ks);
+			GlState.material(GL2.GL_SPECULAR, ks);
 		if(nsset)
-			gl.glMaterialf(GL2.GL_FRONT, GL2.GL_SHININESS, ns);
+			GlState.shininess(ns);
         if(keset)
-            gl.glMaterialfv(GL2.GL_FRONT, GL2.GL_EMISSION, ke);
+            GlState.material(GL2.GL_EMISSION, ke);
 
-        if(dset && d < 1.0f) {
-            enableBlend(gl);
+        if(blend) {
+            GlState.blend(true);
+            GlState.blendFunc(GL2.GL_SRC_ALPHA, GL2.GL_ONE_MINUS_SRC_ALPHA);
 		}
 
 		if(mkdset || mbumpset) {
-			gl.glEnable(GL2.GL_TEXTURE_2D);
+			GlState.texture2D(true);
 		}
 
 		if(mbumpset) {
-			gl.glActiveTexture(Shader.NORMAL_MAP_INDEX);
-			textBump.bind(gl);
+			GlState.activeTexture(Shader.NORMAL_MAP_INDEX);
+			GlState.bindTexture(textBump.getTarget(), textBump.getTextureObject(gl));
 		}
 
 		if(mkdset) {
-			gl.glActiveTexture(Shader.DIFFUSE_MAP_INDEX);
-			texDiffuse.bind(gl);
-            if(diffuseName.toLowerCase().endsWith("png")) {
-                enableBlend(gl);
-            }
+			GlState.activeTexture(Shader.DIFFUSE_MAP_INDEX);
+			GlState.bindTexture(texDiffuse.getTarget(), texDiffuse.getTextureObject(gl));
 		}
 
 		if(!mkdset && !mbumpset)
-			gl.glDisable(GL2.GL_TEXTURE_2D);
+			GlState.texture2D(false);
 	}
 
-    private void enableBlend(GL2 gl) {
-        gl.glEnable(GL2.GL_BLEND);
-        gl.glBlendFunc(GL2.GL_SRC_ALPHA, GL2.GL_ONE_MINUS_SRC_ALPHA);
-    }
-
     @Override
 	public String toString() {
-		return "ObjMaterial [name=" + name + ", textureIds=" + textureIds + ", ka=" + ka + ", kd=" + kd + ", ks=" + ks + ", kaset=" + kaset + ", ksset=" + ksset + ", kdset=" + kdset + ", nsset=" + nsset + ", dset=" + dset + ", ns=" + ns + ", d=" + d + ", mkdset=" + mkdset + ", mbumpset=" + mbumpset + ", textBump=" + textBump + ", texDiffuse=" + texDiffuse + "]";
+		return "ObjMaterial [name=" + name + ", textureIds=" + textureIds + ", ka=" + Arrays.toString(ka) + ", kd=" + Arrays.toString(kd) + ", ks=" + Arrays.toString(ks) + ", kaset=" + kaset + ", ksset=" + ksset + ", kdset=" + kdset + ", nsset=" + nsset + ", dset=" + dset + ", ns=" + ns + ", d=" + d + ", mkdset=" + mkdset + ", mbumpset=" + mbumpset + ", textBump=" + textBump + ", texDiffuse=" + texDiffuse + "]";
 	}
 
 	@Override
 	public void release(GL2 gl) {
-		if(texDiffuse != null)
-			texDiffuse.destroy(gl);
-		if(textBump != null)
-			textBump.destroy(gl);
+		// shared with the other materials using the same image
+		TextureCache.release(gl, texDiffuse);
+		TextureCache.release(gl, textBump);
+		texDiffuse = null;
+		textBump = null;
 	}
 	
 	
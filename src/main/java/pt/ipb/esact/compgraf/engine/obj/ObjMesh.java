@@ -0,0 +1,120 @@
+package pt.ipb.esact.compgraf.engine.obj;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.List;
+
+/**
+ * Geometry ready to be uploaded: one interleaved vertex array and one index array shared by every
+ * object (part) of the model. Built by {@link ObjMeshBuilder} or read from an {@link ObjCache}.
+ */
+public class ObjMesh {
+
+	// position (3), normal (3), texcoord (2)
+	public static final int VERTEX_SIZE = 8;
+
+	public static final int NORMAL_OFFSET = 3;
+
+	public static final int TEXCOORD_OFFSET = 6;
+
+	public static final int STRIDE = VERTEX_SIZE * Float.SIZE / 8;
+
+	/**
+	 * An object ('o' line) of the model: a range of triangle indexes drawn with one material
+	 */
+	public static class Part {
+
+		final String name;
+
+		String material;
+
+		boolean smooth;
+
+		int triOffset;
+
+		int triCount;
+
+		Part(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getMaterial() {
+			return material;
+		}
+
+		public boolean isSmooth() {
+			return smooth;
+		}
+
+		public int getTriOffset() {
+			return triOffset;
+		}
+
+		public int getTriCount() {
+			return triCount;
+		}
+
+	}
+
+	final FloatBuffer vertices;
+
+	final int vertexCount;
+
+	final IntBuffer indices;
+
+	final List<Part> parts;
+
+	final float[] bbMin;
+
+	final float[] bbMax;
+
+	// face corners before deduplication
+	final int cornerCount;
+
+	ObjMesh(FloatBuffer vertices, int vertexCount, IntBuffer indices, List<Part> parts, float[] bbMin, float[] bbMax, int cornerCount) {
+		this.vertices = vertices;
+		this.vertexCount = vertexCount;
+		this.indices = indices;
+		this.parts = parts;
+		this.bbMin = bbMin;
+		this.bbMax = bbMax;
+		this.cornerCount = cornerCount;
+	}
+
+	public FloatBuffer getVertices() {
+		return vertices;
+	}
+
+	public int getVertexCount() {
+		return vertexCount;
+	}
+
+	public IntBuffer getIndices() {
+		return indices;
+	}
+
+	public int getIndexCount() {
+		return indices.capacity();
+	}
+
+	public List<Part> getParts() {
+		return parts;
+	}
+
+	public float[] getBbMin() {
+		return bbMin;
+	}
+
+	public float[] getBbMax() {
+		return bbMax;
+	}
+
+	public int getCornerCount() {
+		return cornerCount;
+	}
+
+}
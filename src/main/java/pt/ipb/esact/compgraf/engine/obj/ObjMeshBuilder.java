@@ -0,0 +1,229 @@
+package pt.ipb.esact.compgraf.engine.obj;
+
+import static pt.ipb.esact.compgraf.engine.obj.ObjMesh.NORMAL_OFFSET;
+import static pt.ipb.esact.compgraf.engine.obj.ObjMesh.TEXCOORD_OFFSET;
+import static pt.ipb.esact.compgraf.engine.obj.ObjMesh.VERTEX_SIZE;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Turns the raw {@link ObjData} into an {@link ObjMesh}. Doesn't need a GL context.
+ */
+public class ObjMeshBuilder {
+
+	private final boolean compress;
+
+	private float[] vertices;
+
+	private int vertexCount;
+
+	private int cornerCount;
+
+	private VertexIndex vertexIndex;
+
+	private final Map<String, Integer> partIndex = Maps.newLinkedHashMap();
+
+	private final List<ObjMesh.Part> parts = Lists.newArrayList();
+
+	private final List<int[]> triIndexes = Lists.newArrayList();
+
+	private int[] triCounts = new int[8];
+
+	private final Triangulator triangulator = new Triangulator();
+
+	// vertex of each corner of the face being added
+	private int[] faceVertices = new int[16];
+
+	private int[] faceTriangles = new int[3 * 16];
+
+	private final float[] bbMin = new float[3];
+
+	private final float[] bbMax = new float[3];
+
+	/**
+	 * @param compress Share equal (position, normal, texcoord) vertices between face corners
+	 */
+	public ObjMeshBuilder(boolean compress) {
+		this.compress = compress;
+	}
+
+	public ObjMesh build(ObjData data) {
+		vertices = new float[VERTEX_SIZE * data.getCornerCount()];
+		vertexCount = 0;
+		cornerCount = 0;
+		vertexIndex = compress ? new VertexIndex(VERTEX_SIZE) : null;
+		// from the first vertex, not from the origin
+		Arrays.fill(bbMin, Float.MAX_VALUE);
+		Arrays.fill(bbMax, -Float.MAX_VALUE);
+
+		List<ObjData.Event> events = data.getEvents();
+		int nextEvent = 0;
+
+		int part = -1;
+		for(int face=0; face<=data.getFaceCount(); face++) {
+			// o, usemtl and s lines that precede this face
+			for(; nextEvent < events.size() && events.get(nextEvent).face <= face; nextEvent++) {
+				ObjData.Event event = events.get(nextEvent);
+				switch(event.type) {
+				case ObjData.EVENT_OBJECT:
+					part = part(event.value);
+					break;
+				case ObjData.EVENT_MATERIAL:
+					if(part == -1)
+						part = part("root");
+					parts.get(part).material = event.value;
+					break;
+				case ObjData.EVENT_SMOOTH:
+					if(part == -1)
+						part = part("root");
+					boolean smooth = false;
+					try {
+						smooth = Integer.parseInt(event.value) == 1;
+					} catch(NumberFormatException e) {
+						smooth = "on".equals(event.value);
+					}
+					parts.get(part).smooth = smooth;
+					break;
+				}
+			}
+
+			if(face == data.getFaceCount())
+				break;
+
+			if(part == -1)
+				part = part("root");
+
+			addFace(data, data.faceStart(face), data.faceSize(face), part);
+		}
+
+		if(parts.isEmpty())
+			part("root");
+
+		// the index is only needed while building
+		vertexIndex = null;
+
+		return finish();
+	}
+
+	private int part(String name) {
+		Integer index = partIndex.get(name);
+		if(index != null)
+			return index;
+
+		index = parts.size();
+		partIndex.put(name, index);
+		parts.add(new ObjMesh.Part(name));
+		triIndexes.add(new int[64]);
+		if(index >= triCounts.length)
+			triCounts = Arrays.copyOf(triCounts, triCounts.length * 2);
+		return index;
+	}
+
+	private void addFace(ObjData data, int start, int count, int part) {
+		if(count < 3)
+			return;
+
+		if(faceVertices.length < count) {
+			faceVertices = new int[2 * count];
+			faceTriangles = new int[3 * 2 * count];
+		}
+
+		for(int i=0; i<count; i++) {
+			int corner = start + i;
+			int offset = VERTEX_SIZE * vertexCount;
+			copy(data.getPositions(), data.getPositionCount(), data.cornerPosition(corner), 3, offset);
+			copy(data.getNormals(), data.getNormalCount(), data.cornerNormal(corner), 3, offset + NORMAL_OFFSET);
+			copy(data.getTexcoords(), data.getTexcoordCount(), data.cornerTexcoord(corner), 2, offset + TEXCOORD_OFFSET);
+			normalize(vertices, offset + NORMAL_OFFSET);
+
+			int index = vertexCount;
+			if(compress)
+				index = vertexIndex.getOrAdd(vertices, offset, vertexCount);
+
+			faceVertices[i] = index;
+			cornerCount++;
+
+			// No match
+			if(index == vertexCount) {
+				vertexCount++;
+				for(int c=0; c<3; c++) {
+					float v = vertices[offset + c];
+					if(v > bbMax[c]) bbMax[c] = v;
+					if(v < bbMin[c]) bbMin[c] = v;
+				}
+			}
+		}
+
+		// quads and n-gons are split here, only triangles are drawn
+		int triangles = triangulator.triangulate(vertices, VERTEX_SIZE, faceVertices, count, faceTriangles);
+		for(int i=0; i<3 * triangles; i++)
+			addIndex(triIndexes, triCounts, part, faceVertices[faceTriangles[i]]);
+	}
+
+	private static void addIndex(List<int[]> lists, int[] counts, int part, int index) {
+		int[] list = lists.get(part);
+		if(counts[part] == list.length) {
+			list = Arrays.copyOf(list, list.length * 2);
+			lists.set(part, list);
+		}
+		list[counts[part]++] = index;
+	}
+
+	/**
+	 * Copies the attribute at {@code index} into the vertex being built, zeros when it doesn't exist
+	 */
+	private void copy(float[] source, int count, int index, int components, int offset) {
+		if(index < 0 || index >= count) {
+			for(int c=0; c<components; c++)
+				vertices[offset + c] = 0.0f;
+			return;
+		}
+		System.arraycopy(source, components * index, vertices, offset, components);
+	}
+
+	private static void normalize(float[] v, int offset) {
+		float x = v[offset];
+		float y = v[offset + 1];
+		float z = v[offset + 2];
+		float length = (float) Math.sqrt(x * x + y * y + z * z);
+		if(length == 0.0f)
+			return;
+		v[offset] = x / length;
+		v[offset + 1] = y / length;
+		v[offset + 2] = z / length;
+	}
+
+	private ObjMesh finish() {
+		int total = 0;
+		for(int p=0; p<parts.size(); p++)
+			total += triCounts[p];
+
+		// triangles of every part, in part order
+		int[] indices = new int[total];
+		int offset = 0;
+		for(int p=0; p<parts.size(); p++) {
+			ObjMesh.Part part = parts.get(p);
+
+			part.triOffset = offset;
+			part.triCount = triCounts[p];
+			System.arraycopy(triIndexes.get(p), 0, indices, offset, triCounts[p]);
+			offset += triCounts[p];
+		}
+
+		if(vertexCount == 0) {
+			Arrays.fill(bbMin, 0.0f);
+			Arrays.fill(bbMax, 0.0f);
+		}
+
+		FloatBuffer vertexBuffer = FloatBuffer.wrap(vertices, 0, VERTEX_SIZE * vertexCount).slice();
+		return new ObjMesh(vertexBuffer, vertexCount, IntBuffer.wrap(indices), parts, bbMin, bbMax, cornerCount);
+	}
+
+}
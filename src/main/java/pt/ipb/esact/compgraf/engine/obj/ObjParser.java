@@ -0,0 +1,347 @@
+package pt.ipb.esact.compgraf.engine.obj;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Single pass .obj tokenizer over the bytes of the file. Each line is dispatched on its keyword
+ * and the numbers are parsed in place, without creating intermediate Strings. Big byte arrays
+ * are split in line aligned chunks that are parsed in parallel and merged in order.
+ */
+public class ObjParser {
+
+	private static final int MAX_DIGITS = 18;
+
+	// below this size the chunks aren't worth the merge
+	private static final int CHUNK_SIZE = 256 * 1024;
+
+	/**
+	 * Shared by the parser chunks and {@link ObjLoader#loadAll(ObjLoader...)}
+	 */
+	static final ForkJoinPool POOL = new ForkJoinPool();
+
+	private static final double[] POW10 = new double[23];
+
+	static {
+		POW10[0] = 1.0;
+		for(int i=1; i<POW10.length; i++)
+			POW10[i] = POW10[i - 1] * 10.0;
+	}
+
+	private final float scale;
+
+	private ObjData data;
+
+	// cursor inside the line being parsed
+	private int p;
+
+	public ObjParser() {
+		this(1.0f);
+	}
+
+	public ObjParser(float scale) {
+		this.scale = scale;
+	}
+
+	/**
+	 * Parses the lines contained in {@code bytes[from, to[}, in parallel when there's enough of them
+	 */
+	public ObjData parse(byte[] bytes, int from, int to) {
+		if(to - from < 2 * CHUNK_SIZE)
+			return parseChunk(bytes, from, to);
+
+		final List<Chunk> chunks = Lists.newArrayList();
+		int start = from;
+		while(start < to) {
+			int end = Math.min(start + CHUNK_SIZE, to);
+			while(end < to && bytes[end - 1] != '\n')
+				end++;
+			chunks.add(new Chunk(bytes, start, end));
+			start = end;
+		}
+
+		RecursiveTask<ObjData> all = new RecursiveTask<ObjData>() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected ObjData compute() {
+				invokeAll(chunks);
+				List<ObjData> parts = Lists.newArrayListWithCapacity(chunks.size());
+				for(Chunk chunk : chunks)
+					parts.add(chunk.getRawResult());
+				return ObjData.merge(parts);
+			}
+		};
+
+		// already inside the pool (ObjLoader.loadAll): run here, the chunks are stolen by the other workers
+		if(ForkJoinTask.inForkJoinPool())
+			return all.invoke();
+		return POOL.invoke(all);
+	}
+
+	private ObjData parseChunk(byte[] bytes, int from, int to) {
+		data = new ObjData();
+		parseLines(bytes, from, to);
+		ObjData result = data;
+		data = null;
+		return result;
+	}
+
+	private class Chunk extends RecursiveTask<ObjData> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final byte[] bytes;
+
+		private final int from;
+
+		private final int to;
+
+		Chunk(byte[] bytes, int from, int to) {
+			this.bytes = bytes;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected ObjData compute() {
+			// the parser keeps a cursor, one per chunk
+			return new ObjParser(scale).parseChunk(bytes, from, to);
+		}
+
+	}
+
+	private void parseLines(byte[] b, int from, int to) {
+		int start = from;
+		for(int i=from; i<to; i++) {
+			if(b[i] == '\n') {
+				parseLine(b, start, i);
+				start = i + 1;
+			}
+		}
+		if(start < to)
+			parseLine(b, start, to);
+	}
+
+	private void parseLine(byte[] b, int start, int e) {
+		p = start;
+		skipSpaces(b, e);
+		if(p >= e)
+			return;
+
+		byte c = b[p];
+		switch(c) {
+		case 'v':
+			if(p + 1 >= e)
+				break;
+			if(isSpace(b, p + 1, e)) {
+				p += 1;
+				float x = parseFloat(b, e) * scale;
+				float y = parseFloat(b, e) * scale;
+				float z = parseFloat(b, e) * scale;
+				data.addPosition(x, y, z);
+			} else if(b[p + 1] == 't' && isSpace(b, p + 2, e)) {
+				p += 2;
+				float u = parseFloat(b, e);
+				float v = parseFloat(b, e);
+				data.addTexcoord(u, v);
+			} else if(b[p + 1] == 'n' && isSpace(b, p + 2, e)) {
+				p += 2;
+				float x = parseFloat(b, e);
+				float y = parseFloat(b, e);
+				float z = parseFloat(b, e);
+				data.addNormal(x, y, z);
+			}
+			break;
+
+		case 'f':
+			if(isSpace(b, p + 1, e)) {
+				p += 1;
+				parseFace(b, e);
+			}
+			break;
+
+		case 'o':
+			if(isSpace(b, p + 1, e)) {
+				p += 1;
+				data.addEvent(ObjData.EVENT_OBJECT, parseString(b, e));
+			}
+			break;
+
+		case 's':
+			if(isSpace(b, p + 1, e)) {
+				p += 1;
+				data.addEvent(ObjData.EVENT_SMOOTH, parseString(b, e));
+			}
+			break;
+
+		case 'u':
+			if(startsWith(b, p, e, "usemtl") && isSpace(b, p + 6, e)) {
+				p += 6;
+				data.addEvent(ObjData.EVENT_MATERIAL, parseString(b, e));
+			}
+			break;
+
+		default:
+			// comments, mtllib, groups, ... are ignored
+			break;
+		}
+	}
+
+	private void parseFace(byte[] b, int e) {
+		int first = data.cornerCount;
+		for(;;) {
+			skipSpaces(b, e);
+			if(p >= e)
+				break;
+
+			int slot = 3 * data.cornerCount;
+			int v = index(parseInt(b, e), data.positionCount, slot);
+			int t = -1;
+			int n = -1;
+			if(p < e && b[p] == '/') {
+				p++;
+				if(p < e && b[p] != '/')
+					t = index(parseInt(b, e), data.texcoordCount, slot + 1);
+				if(p < e && b[p] == '/') {
+					p++;
+					n = index(parseInt(b, e), data.normalCount, slot + 2);
+				}
+			}
+
+			// skip whatever is left of a malformed token
+			while(p < e && !isSpace(b[p]))
+				p++;
+
+			data.addCorner(v, t, n);
+		}
+		data.endFace(first);
+	}
+
+	/**
+	 * Converts the (1 based or negative relative) .obj index to a 0 based index
+	 */
+	private int index(int raw, int count, int slot) {
+		if(raw > 0)
+			return raw - 1;
+		if(raw < 0) {
+			data.addRelative(slot);
+			return count + raw;
+		}
+		return -1;
+	}
+
+	private int parseInt(byte[] b, int e) {
+		boolean negative = false;
+		if(p < e && (b[p] == '-' || b[p] == '+')) {
+			negative = b[p] == '-';
+			p++;
+		}
+		int value = 0;
+		while(p < e && b[p] >= '0' && b[p] <= '9') {
+			value = value * 10 + (b[p] - '0');
+			p++;
+		}
+		return negative ? -value : value;
+	}
+
+	private float parseFloat(byte[] b, int e) {
+		skipSpaces(b, e);
+		int start = p;
+
+		boolean negative = false;
+		if(p < e && (b[p] == '-' || b[p] == '+')) {
+			negative = b[p] == '-';
+			p++;
+		}
+
+		long mantissa = 0;
+		int digits = 0;
+		int exponent = 0;
+		while(p < e && b[p] >= '0' && b[p] <= '9') {
+			if(digits < MAX_DIGITS) {
+				mantissa = mantissa * 10 + (b[p] - '0');
+				if(mantissa != 0)
+					digits++;
+			} else {
+				exponent++;
+			}
+			p++;
+		}
+
+		if(p < e && b[p] == '.') {
+			p++;
+			while(p < e && b[p] >= '0' && b[p] <= '9') {
+				if(digits < MAX_DIGITS) {
+					mantissa = mantissa * 10 + (b[p] - '0');
+					if(mantissa != 0)
+						digits++;
+					exponent--;
+				}
+				p++;
+			}
+		}
+
+		if(p < e && (b[p] == 'e' || b[p] == 'E')) {
+			p++;
+			exponent += parseInt(b, e);
+		}
+
+		if(p < e && !isSpace(b[p])) {
+			// not a plain decimal number (nan, inf, ...) -> let the JDK deal with it
+			while(p < e && !isSpace(b[p]))
+				p++;
+			try {
+				return Float.parseFloat(new String(b, start, p - start, StandardCharsets.US_ASCII));
+			} catch(NumberFormatException ex) {
+				return 0.0f;
+			}
+		}
+
+		double value = mantissa;
+		if(exponent < 0 && -exponent < POW10.length)
+			value /= POW10[-exponent];
+		else if(exponent > 0 && exponent < POW10.length)
+			value *= POW10[exponent];
+		else if(exponent != 0)
+			value *= Math.pow(10.0, exponent);
+
+		return (float) (negative ? -value : value);
+	}
+
+	private String parseString(byte[] b, int e) {
+		skipSpaces(b, e);
+		int end = e;
+		while(end > p && isSpace(b[end - 1]))
+			end--;
+		return new String(b, p, end - p, StandardCharsets.UTF_8);
+	}
+
+	private void skipSpaces(byte[] b, int e) {
+		while(p < e && isSpace(b[p]))
+			p++;
+	}
+
+	private static boolean isSpace(byte c) {
+		return c == ' ' || c == '\t' || c == '\r';
+	}
+
+	private static boolean isSpace(byte[] b, int i, int e) {
+		return i < e && (b[i] == ' ' || b[i] == '\t');
+	}
+
+	private static boolean startsWith(byte[] b, int i, int e, String keyword) {
+		if(i + keyword.length() > e)
+			return false;
+		for(int k=0; k<keyword.length(); k++)
+			if(b[i + k] != keyword.charAt(k))
+				return false;
+		return true;
+	}
+
+}
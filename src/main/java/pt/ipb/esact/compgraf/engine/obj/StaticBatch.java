@@ -0,0 +1,430 @@
+package pt.ipb.esact.compgraf.engine.obj;
+
+import static com.google.common.base.Preconditions.checkElementIndex;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.text.MessageFormat.format;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+import javax.media.opengl.GL2;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import pt.ipb.esact.compgraf.tools.DefaultGLWindow;
+import pt.ipb.esact.compgraf.tools.GlState;
+import pt.ipb.esact.compgraf.tools.GlTools;
+import pt.ipb.esact.compgraf.tools.ReleaseListener;
+import pt.ipb.esact.compgraf.tools.RenderStats;
+import pt.ipb.esact.compgraf.tools.math.Frustum;
+import pt.ipb.esact.compgraf.tools.math.Matrix4;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+/**
+ * Meshes that don't move, merged in one vertex and one index buffer: the world transform of each
+ * one is baked into its vertices and the triangles are grouped by material, so the whole set is
+ * drawn with one draw call per material instead of one per material of each mesh. The buffers are
+ * built again (on the next render) only when the set changes or a mesh that wasn't loaded yet is.
+ * The sources only need their mesh on the CPU, see {@link ObjLoader#setUpload(boolean)}.
+ * <pre>
+ * matrices.glTranslatef(0, 0, -4);
+ * scene.add(wall, matrices.getModel());
+ * ...
+ * matrices.load(this); // only the view
+ * scene.render();
+ * </pre>
+ */
+public class StaticBatch implements ReleaseListener {
+
+	private static final Logger logger = LoggerFactory.getLogger(StaticBatch.class);
+
+	private static final int FLOAT_SIZE = Float.SIZE / 8;
+
+	private static class Entry {
+
+		final ObjLoader loader;
+
+		final Matrix4 transform = new Matrix4();
+
+		Entry(ObjLoader loader, Matrix4 transform) {
+			this.loader = loader;
+			this.transform.set(transform);
+		}
+
+	}
+
+	/**
+	 * Triangles of every mesh with the same material and shade model
+	 */
+	private static class Group {
+
+		final ObjMaterial material;
+
+		final boolean smooth;
+
+		int[] indices = new int[64];
+
+		int size;
+
+		int offset;
+
+		// min xyz, max xyz in world space
+		final float[] bounds = { Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE };
+
+		Group(ObjMaterial material, boolean smooth) {
+			this.material = material;
+			this.smooth = smooth;
+		}
+
+		void add(int index, float[] vertices) {
+			if(size == indices.length)
+				indices = Arrays.copyOf(indices, 2 * size);
+			indices[size++] = index;
+
+			int v = index * ObjMesh.VERTEX_SIZE;
+			for(int i = 0; i < 3; i++) {
+				bounds[i] = Math.min(bounds[i], vertices[v + i]);
+				bounds[3 + i] = Math.max(bounds[3 + i], vertices[v + i]);
+			}
+		}
+
+	}
+
+	private final List<Entry> entries = Lists.newArrayList();
+
+	private List<Group> groups = Collections.emptyList();
+
+	private boolean dirty;
+
+	// meshes left out of the last build because they weren't loaded, it's built again when they are
+	private int pending;
+
+	private int vertexBuffer;
+
+	private int indexBuffer;
+
+	private int indexType = GL2.GL_UNSIGNED_INT;
+
+	private int indexSize = Integer.SIZE / 8;
+
+	private int meshCount;
+
+	private int vertexCount;
+
+	private int indexCount;
+
+	// draw calls of the same meshes rendered one by one
+	private int unbatchedDrawCalls;
+
+	public StaticBatch(DefaultGLWindow reference) {
+		checkNotNull(reference);
+		reference.addReleaseListener(this);
+	}
+
+	/**
+	 * Adds a loaded mesh at a fixed place
+	 *
+	 * @param transform The object to world transform (copied), e.g. {@code MatrixStack.getModel()}.
+	 * Rigid or with uniform scale, the normals are only rotated.
+	 * @return The index of the mesh in the batch
+	 */
+	public int add(ObjLoader loader, Matrix4 transform) {
+		entries.add(new Entry(checkNotNull(loader), transform));
+		dirty = true;
+		return entries.size() - 1;
+	}
+
+	public void setTransform(int index, Matrix4 transform) {
+		checkElementIndex(index, entries.size());
+		Entry entry = entries.get(index);
+		if(entry == null)
+			return;
+		entry.transform.set(transform);
+		dirty = true;
+	}
+
+	/**
+	 * Takes the mesh out of the batch, the other indexes stay the same
+	 */
+	public void remove(int index) {
+		checkElementIndex(index, entries.size());
+		entries.set(index, null);
+		dirty = true;
+	}
+
+	public void clear() {
+		entries.clear();
+		dirty = true;
+	}
+
+	/**
+	 * @return The draw calls of one {@link #render()}
+	 */
+	public int getDrawCalls() {
+		return groups.size();
+	}
+
+	/**
+	 * @return The draw calls of the same meshes each with its own {@link ObjLoader#render()}
+	 */
+	public int getUnbatchedDrawCalls() {
+		return unbatchedDrawCalls;
+	}
+
+	public String report() {
+		float reduction = unbatchedDrawCalls == 0 ? 0.0f : 1.0f - (float) groups.size() / (float) unbatchedDrawCalls;
+		return format("static batch: {0} meshes, {1} vertices, {2} triangles in {3} draw calls instead of {4} ({5,number,percent} fewer)",
+				meshCount, vertexCount, indexCount / 3, groups.size(), unbatchedDrawCalls, reduction);
+	}
+
+	/**
+	 * @return Meshes added but not loaded yet, left out of the batch
+	 */
+	public int getPending() {
+		return pending;
+	}
+
+	private int loadedCount() {
+		int count = 0;
+		for(Entry entry : entries)
+			if(entry != null && entry.loader.getMesh() != null)
+				count++;
+		return count;
+	}
+
+	private void rebuild(GL2 gl) {
+		dirty = false;
+
+		int total = 0;
+		for(Entry entry : entries)
+			if(entry != null && entry.loader.getMesh() != null)
+				total += entry.loader.getMesh().getVertexCount();
+
+		float[] vertices = new float[total * ObjMesh.VERTEX_SIZE];
+		List<Group> groups = Lists.newArrayList();
+		int base = 0;
+		meshCount = 0;
+		unbatchedDrawCalls = 0;
+		pending = 0;
+		Set<String> skipped = Sets.newTreeSet();
+		for(Entry entry : entries) {
+			if(entry == null)
+				continue;
+			ObjMesh mesh = entry.loader.getMesh();
+			if(mesh == null) {
+				pending++;
+				skipped.add(String.valueOf(entry.loader.getModelFile()));
+				continue;
+			}
+
+			bake(mesh, entry.transform, vertices, base);
+
+			IntBuffer source = mesh.getIndices();
+			for(ObjMesh.Part part : mesh.getParts()) {
+				if(part.getTriCount() == 0)
+					continue;
+				Group group = group(groups, entry.loader.getMaterial(part.getMaterial()), part.isSmooth());
+				for(int i = part.getTriOffset(); i < part.getTriOffset() + part.getTriCount(); i++)
+					group.add(base + source.get(i), vertices);
+			}
+
+			base += mesh.getVertexCount();
+			meshCount++;
+			unbatchedDrawCalls += entry.loader.getBatchCount();
+		}
+
+		// same order as the ObjLoader draw list
+		Collections.sort(groups, new Comparator<Group>() {
+			@Override
+			public int compare(Group a, Group b) {
+				String nameA = a.material == null ? null : a.material.getName();
+				String nameB = b.material == null ? null : b.material.getName();
+				int c = Strings.nullToEmpty(nameA).compareTo(Strings.nullToEmpty(nameB));
+				if(c != 0)
+					return c;
+				return Boolean.compare(a.smooth, b.smooth);
+			}
+		});
+
+		int count = 0;
+		for(Group group : groups)
+			count += group.size;
+		int[] indices = new int[count];
+		int offset = 0;
+		for(Group group : groups) {
+			System.arraycopy(group.indices, 0, indices, offset, group.size);
+			group.offset = offset;
+			offset += group.size;
+			// not needed after the upload
+			group.indices = null;
+		}
+
+		upload(gl, vertices, total, indices);
+		this.groups = groups;
+		this.vertexCount = total;
+		this.indexCount = count;
+		logger.info(report());
+		if(pending > 0)
+			logger.warn("{} meshes not loaded yet, left out of the batch until they are: {}", pending, skipped);
+	}
+
+	private static Group group(List<Group> groups, ObjMaterial material, boolean smooth) {
+		for(Group group : groups)
+			if(group.material == material && group.smooth == smooth)
+				return group;
+		Group group = new Group(material, smooth);
+		groups.add(group);
+		return group;
+	}
+
+	/**
+	 * Copies the vertices of the mesh from {@code base}, with the positions and normals in world space
+	 */
+	private static void bake(ObjMesh mesh, Matrix4 transform, float[] out, int base) {
+		float[] m = transform.m;
+		FloatBuffer source = mesh.getVertices();
+		int o = base * ObjMesh.VERTEX_SIZE;
+		for(int v = 0; v < mesh.getVertexCount(); v++, o += ObjMesh.VERTEX_SIZE) {
+			int i = v * ObjMesh.VERTEX_SIZE;
+			float x = source.get(i), y = source.get(i + 1), z = source.get(i + 2);
+			out[o] = m[0] * x + m[4] * y + m[8] * z + m[12];
+			out[o + 1] = m[1] * x + m[5] * y + m[9] * z + m[13];
+			out[o + 2] = m[2] * x + m[6] * y + m[10] * z + m[14];
+
+			int n = i + ObjMesh.NORMAL_OFFSET;
+			x = source.get(n);
+			y = source.get(n + 1);
+			z = source.get(n + 2);
+			float nx = m[0] * x + m[4] * y + m[8] * z;
+			float ny = m[1] * x + m[5] * y + m[9] * z;
+			float nz = m[2] * x + m[6] * y + m[10] * z;
+			float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+			float inverse = length > 0.0f ? 1.0f / length : 0.0f;
+			out[o + ObjMesh.NORMAL_OFFSET] = nx * inverse;
+			out[o + ObjMesh.NORMAL_OFFSET + 1] = ny * inverse;
+			out[o + ObjMesh.NORMAL_OFFSET + 2] = nz * inverse;
+
+			int t = i + ObjMesh.TEXCOORD_OFFSET;
+			out[o + ObjMesh.TEXCOORD_OFFSET] = source.get(t);
+			out[o + ObjMesh.TEXCOORD_OFFSET + 1] = source.get(t + 1);
+		}
+	}
+
+	private void upload(GL2 gl, float[] vertices, int vertexCount, int[] indices) {
+		if(vertexBuffer == 0) {
+			int[] ids = new int[2];
+			gl.glGenBuffers(2, ids, 0);
+			vertexBuffer = ids[0];
+			indexBuffer = ids[1];
+		}
+
+		gl.glBindBuffer(GL2.GL_ARRAY_BUFFER, vertexBuffer);
+		gl.glBufferData(GL2.GL_ARRAY_BUFFER, (long) vertices.length * FLOAT_SIZE, FloatBuffer.wrap(vertices), GL2.GL_STATIC_DRAW);
+		gl.glBindBuffer(GL2.GL_ARRAY_BUFFER, 0);
+
+		gl.glBindBuffer(GL2.GL_ELEMENT_ARRAY_BUFFER, indexBuffer);
+		if(vertexCount <= 0x10000) {
+			indexType = GL2.GL_UNSIGNED_SHORT;
+			indexSize = Short.SIZE / 8;
+			gl.glBufferData(GL2.GL_ELEMENT_ARRAY_BUFFER, (long) indexSize * indices.length, ObjLoader.narrow(indices), GL2.GL_STATIC_DRAW);
+		} else {
+			indexType = GL2.GL_UNSIGNED_INT;
+			indexSize = Integer.SIZE / 8;
+			gl.glBufferData(GL2.GL_ELEMENT_ARRAY_BUFFER, (long) indexSize * indices.length, IntBuffer.wrap(indices), GL2.GL_STATIC_DRAW);
+		}
+		gl.glBindBuffer(GL2.GL_ELEMENT_ARRAY_BUFFER, 0);
+	}
+
+	public void render() {
+		render(null);
+	}
+
+	/**
+	 * Draws the batch with only the view on the modelview (the transforms are in the vertices)
+	 *
+	 * @param frustum The view volume in world space or {@code null}, groups outside are skipped
+	 */
+	public void render(Frustum frustum) {
+		GL2 gl = GlTools.gl();
+
+		// a mesh left out was loaded meanwhile
+		if(dirty || (pending > 0 && loadedCount() > meshCount))
+			rebuild(gl);
+		if(groups.isEmpty())
+			return;
+
+		gl.glPushAttrib(GL2.GL_LIGHTING_BIT | GL2.GL_ENABLE_BIT | GL2.GL_CURRENT_BIT | GL2.GL_TEXTURE_BIT);
+		GlState.begin();
+
+			gl.glEnableClientState(GL2.GL_VERTEX_ARRAY);
+			gl.glEnableClientState(GL2.GL_NORMAL_ARRAY);
+			gl.glEnableClientState(GL2.GL_TEXTURE_COORD_ARRAY);
+
+			gl.glBindBuffer(GL2.GL_ARRAY_BUFFER, vertexBuffer);
+			gl.glVertexPointer(3, GL2.GL_FLOAT, ObjMesh.STRIDE, 0);
+			gl.glNormalPointer(GL2.GL_FLOAT, ObjMesh.STRIDE, FLOAT_SIZE * ObjMesh.NORMAL_OFFSET);
+			gl.glTexCoordPointer(2, GL2.GL_FLOAT, ObjMesh.STRIDE, FLOAT_SIZE * ObjMesh.TEXCOORD_OFFSET);
+
+			gl.glBindBuffer(GL2.GL_ELEMENT_ARRAY_BUFFER, indexBuffer);
+
+			ObjMaterial currentMaterial = null;
+			int currentShadeModel = 0;
+			for(Group group : groups) {
+				if(frustum != null) {
+					if(!frustum.intersects(group.bounds, 0)) {
+						RenderStats.culled(1);
+						continue;
+					}
+					RenderStats.visible(1);
+				}
+
+				if(group.material != null && group.material != currentMaterial) {
+					group.material.set();
+					currentMaterial = group.material;
+					RenderStats.stateChange();
+				}
+				int shadeModel = group.smooth ? GL2.GL_SMOOTH : GL2.GL_FLAT;
+				if(shadeModel != currentShadeModel) {
+					gl.glShadeModel(shadeModel);
+					currentShadeModel = shadeModel;
+					RenderStats.stateChange();
+				}
+
+				gl.glDrawElements(GL2.GL_TRIANGLES, group.size, indexType, (long) indexSize * group.offset);
+				RenderStats.drawCall();
+			}
+
+			gl.glBindBuffer(GL2.GL_ARRAY_BUFFER, 0);
+			gl.glBindBuffer(GL2.GL_ELEMENT_ARRAY_BUFFER, 0);
+
+			gl.glDisableClientState(GL2.GL_VERTEX_ARRAY);
+			gl.glDisableClientState(GL2.GL_NORMAL_ARRAY);
+			gl.glDisableClientState(GL2.GL_TEXTURE_COORD_ARRAY);
+
+		GlState.end();
+		gl.glPopAttrib();
+	}
+
+	@Override
+	public void release(GL2 gl) {
+		if(gl == null)
+			return;
+
+		if(vertexBuffer != 0)
+			gl.glDeleteBuffers(2, new int[] { vertexBuffer, indexBuffer }, 0);
+		vertexBuffer = 0;
+		indexBuffer = 0;
+		// built again if rendered after this
+		dirty = true;
+	}
+
+}
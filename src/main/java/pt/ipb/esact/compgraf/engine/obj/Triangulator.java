@@ -0,0 +1,173 @@
+package pt.ipb.esact.compgraf.engine.obj;
+
+import java.util.Arrays;
+
+/**
+ * Splits a polygon into triangles. Convex polygons are split in a fan from the first corner,
+ * concave ones by ear clipping on the plane that best fits the polygon (Newell's normal).
+ * Every polygon with n corners results in exactly n - 2 triangles, degenerated polygons included.
+ */
+class Triangulator {
+
+	private static final float EPSILON = 1e-12f;
+
+	// projected corners
+	private float[] u = new float[16];
+
+	private float[] v = new float[16];
+
+	// remaining corners, as a circular list
+	private int[] prev = new int[16];
+
+	private int[] next = new int[16];
+
+	/**
+	 * @param positions Array with the position of corner {@code i} at {@code positions[corners[i] * stride]}
+	 * @param corners The polygon corners, in order
+	 * @param count Number of corners
+	 * @param out Receives {@code 3 * (count - 2)} indexes into {@code corners}
+	 * @return The number of triangles written
+	 */
+	int triangulate(float[] positions, int stride, int[] corners, int count, int[] out) {
+		if(count < 3)
+			return 0;
+
+		if(count == 3) {
+			out[0] = 0;
+			out[1] = 1;
+			out[2] = 2;
+			return 1;
+		}
+
+		project(positions, stride, corners, count);
+
+		if(isConvex(count))
+			return fan(count, out);
+
+		return clipEars(count, out);
+	}
+
+	/**
+	 * Drops the dominant axis of the polygon normal and keeps the polygon counter clockwise
+	 */
+	private void project(float[] positions, int stride, int[] corners, int count) {
+		if(u.length < count) {
+			int size = Math.max(count, 2 * u.length);
+			u = Arrays.copyOf(u, size);
+			v = Arrays.copyOf(v, size);
+			prev = Arrays.copyOf(prev, size);
+			next = Arrays.copyOf(next, size);
+		}
+
+		// Newell's normal
+		float nx = 0.0f, ny = 0.0f, nz = 0.0f;
+		for(int i=0; i<count; i++) {
+			int a = corners[i] * stride;
+			int b = corners[(i + 1) % count] * stride;
+			nx += (positions[a + 1] - positions[b + 1]) * (positions[a + 2] + positions[b + 2]);
+			ny += (positions[a + 2] - positions[b + 2]) * (positions[a] + positions[b]);
+			nz += (positions[a] - positions[b]) * (positions[a + 1] + positions[b + 1]);
+		}
+
+		float ax = Math.abs(nx), ay = Math.abs(ny), az = Math.abs(nz);
+		int first, second;
+		float sign;
+		if(ax >= ay && ax >= az) {
+			first = 1; second = 2; sign = nx;
+		} else if(ay >= az) {
+			first = 2; second = 0; sign = ny;
+		} else {
+			first = 0; second = 1; sign = nz;
+		}
+
+		for(int i=0; i<count; i++) {
+			int a = corners[i] * stride;
+			u[i] = positions[a + first];
+			// mirror clockwise polygons
+			v[i] = sign < 0.0f ? -positions[a + second] : positions[a + second];
+		}
+	}
+
+	private boolean isConvex(int count) {
+		for(int i=0; i<count; i++)
+			if(cross((i + count - 1) % count, i, (i + 1) % count) < 0.0f)
+				return false;
+		return true;
+	}
+
+	private int fan(int count, int[] out) {
+		for(int i=1; i<count - 1; i++) {
+			out[3 * (i - 1)] = 0;
+			out[3 * (i - 1) + 1] = i;
+			out[3 * (i - 1) + 2] = i + 1;
+		}
+		return count - 2;
+	}
+
+	private int clipEars(int count, int[] out) {
+		for(int i=0; i<count; i++) {
+			prev[i] = (i + count - 1) % count;
+			next[i] = (i + 1) % count;
+		}
+
+		int triangles = 0;
+		int remaining = count;
+		int current = 0;
+		int misses = 0;
+		while(remaining > 3) {
+			int a = prev[current];
+			int b = next[current];
+
+			// nothing clips cleanly (self intersecting polygon): cut anyway, nothing is lost
+			if(isEar(a, current, b) || misses >= remaining) {
+				out[3 * triangles] = a;
+				out[3 * triangles + 1] = current;
+				out[3 * triangles + 2] = b;
+				triangles++;
+
+				next[a] = b;
+				prev[b] = a;
+				remaining--;
+				misses = 0;
+				current = b;
+			} else {
+				misses++;
+				current = b;
+			}
+		}
+
+		out[3 * triangles] = prev[current];
+		out[3 * triangles + 1] = current;
+		out[3 * triangles + 2] = next[current];
+		return triangles + 1;
+	}
+
+	private boolean isEar(int a, int b, int c) {
+		if(cross(a, b, c) <= EPSILON)
+			return false;
+
+		for(int p=next[c]; p!=a; p=next[p]) {
+			// only reflex corners can be inside an ear
+			if(cross(prev[p], p, next[p]) > 0.0f)
+				continue;
+			if(inside(p, a, b, c))
+				return false;
+		}
+		return true;
+	}
+
+	private boolean inside(int p, int a, int b, int c) {
+		if(sameCorner(p, a) || sameCorner(p, b) || sameCorner(p, c))
+			return false;
+		return cross(a, b, p) >= 0.0f && cross(b, c, p) >= 0.0f && cross(c, a, p) >= 0.0f;
+	}
+
+	private boolean sameCorner(int p, int q) {
+		return u[p] == u[q] && v[p] == v[q];
+	}
+
+	private float cross(int a, int b, int c) {
+		return (u[b] - u[a]) * (v[c] - v[a]) - (v[b] - v[a]) * (u[c] - u[a]);
+	}
+
+}
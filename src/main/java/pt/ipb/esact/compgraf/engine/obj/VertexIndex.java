@@ -0,0 +1,119 @@
+package pt.ipb.esact.compgraf.engine.obj;
+
+import java.util.Arrays;
+
+/**
+ * Spatial hash of (position, normal, texcoord) tuples used to find duplicated vertices in
+ * expected O(1). Every component is quantized to {@link #QUANTUM}, two vertices are the same
+ * when all their quantized components are equal. The components too big to quantize (or not
+ * finite) are only equal to the same float.
+ */
+class VertexIndex {
+
+	static final float QUANTUM = 0.0001f;
+
+	private static final float INV_QUANTUM = 1.0f / QUANTUM;
+
+	// quantized components stay under it, the keys of the others are their bits with the sign set
+	private static final double LIMIT = 0x1p62;
+
+	private final int size;
+
+	// quantized components of every vertex added so far
+	private long[] keys;
+
+	// open addressing table: vertex index + 1, 0 when empty
+	private int[] table;
+
+	private int count;
+
+	private final long[] scratch;
+
+	/**
+	 * @param size Number of floats per vertex
+	 */
+	VertexIndex(int size) {
+		this.size = size;
+		this.keys = new long[size * 1024];
+		this.table = new int[2048];
+		this.scratch = new long[size];
+	}
+
+	/**
+	 * Looks up the vertex stored in {@code data[offset, offset + size[}
+	 *
+	 * @param candidate The index to use when the vertex is new
+	 * @return The index of an equivalent vertex, or {@code candidate} when there is none
+	 */
+	int getOrAdd(float[] data, int offset, int candidate) {
+		if(2 * (count + 1) > table.length)
+			rehash(table.length * 2);
+
+		long[] key = quantize(data, offset);
+		int mask = table.length - 1;
+		int slot = hash(key, 0) & mask;
+		while(table[slot] != 0) {
+			int existing = table[slot] - 1;
+			if(equals(existing, key))
+				return existing;
+			slot = (slot + 1) & mask;
+		}
+
+		if(size * (candidate + 1) > keys.length)
+			keys = Arrays.copyOf(keys, Math.max(size * (candidate + 1), keys.length * 2));
+		System.arraycopy(key, 0, keys, size * candidate, size);
+		table[slot] = candidate + 1;
+		count++;
+		return candidate;
+	}
+
+	int size() {
+		return count;
+	}
+
+	private long[] quantize(float[] data, int offset) {
+		for(int i=0; i<size; i++) {
+			double scaled = (double) data[offset + i] * INV_QUANTUM;
+			// an int would saturate from ~214748 units up and merge different vertices
+			if(Math.abs(scaled) < LIMIT)
+				scratch[i] = Math.round(scaled);
+			else
+				scratch[i] = Long.MIN_VALUE | (Float.floatToIntBits(data[offset + i]) & 0xFFFFFFFFL);
+		}
+		return scratch;
+	}
+
+	private boolean equals(int vertex, long[] key) {
+		int base = size * vertex;
+		for(int i=0; i<size; i++)
+			if(keys[base + i] != key[i])
+				return false;
+		return true;
+	}
+
+	private int hash(long[] key, int offset) {
+		int h = 0x9E3779B9;
+		for(int i=0; i<size; i++) {
+			long k = key[offset + i];
+			h ^= (int) (k ^ (k >>> 32));
+			h *= 0x01000193;
+			h ^= h >>> 15;
+		}
+		return h;
+	}
+
+	private void rehash(int capacity) {
+		int[] old = table;
+		table = new int[capacity];
+		int mask = capacity - 1;
+		for(int entry : old) {
+			if(entry == 0)
+				continue;
+			int slot = hash(keys, size * (entry - 1)) & mask;
+			while(table[slot] != 0)
+				slot = (slot + 1) & mask;
+			table[slot] = entry;
+		}
+	}
+
+}
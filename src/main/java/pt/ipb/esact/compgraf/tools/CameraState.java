@@ -0,0 +1,62 @@
+package pt.ipb.esact.compgraf.tools;
+
+import javax.vecmath.Vector3f;
+
+/**
+ * Cópia de uma {@link Camera} publicada pela thread de simulação, com os valores do passo anterior
+ * para o render interpolar. Ver {@link Cameras#publish()}: as cópias são reutilizadas, uma obtida
+ * com {@link Cameras#getPublished()} só é válida até à próxima chamada.
+ */
+public final class CameraState {
+
+	private Camera camera;
+
+	// 0 = nunca publicado
+	volatile long sequence;
+
+	private final Vector3f eye = new Vector3f(), at = new Vector3f(), up = new Vector3f();
+
+	private final Vector3f previousEye = new Vector3f(), previousAt = new Vector3f(), previousUp = new Vector3f();
+
+	CameraState() {
+	}
+
+	/**
+	 * Copia a camera, o passo anterior é o de {@code previous} (pode ser este estado)
+	 */
+	void set(Camera camera, CameraState previous, long sequence) {
+		// Mudou de camera: não interpolar entre as duas
+		boolean same = previous.camera == camera;
+		if(same) {
+			previousEye.set(previous.eye);
+			previousAt.set(previous.at);
+			previousUp.set(previous.up);
+		}
+
+		eye.set(camera.eye);
+		at.set(camera.at);
+		up.set(camera.up);
+
+		if(!same) {
+			previousEye.set(eye);
+			previousAt.set(at);
+			previousUp.set(up);
+		}
+		this.camera = camera;
+		this.sequence = sequence;
+	}
+
+	public Camera getCamera() {
+		return camera;
+	}
+
+	/**
+	 * Escreve em {@code out} o estado entre o passo anterior (0) e o atual (1)
+	 */
+	public void interpolate(float alpha, Camera out) {
+		out.eye.interpolate(previousEye, eye, alpha);
+		out.at.interpolate(previousAt, at, alpha);
+		out.up.interpolate(previousUp, up, alpha);
+	}
+
+}
@@ -1,6 +1,7 @@
 package pt.ipb.esact.compgraf.tools;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 
 import com.google.common.collect.Lists;
 
@@ -8,7 +9,22 @@ public abstract class Cameras {
 
 	public static final List<Camera> cameras = Lists.newArrayList();
 	
-	private static Camera current = null;
+	// mudada na thread do GL, lida pela thread de simulação
+	private static volatile Camera current = null;
+	
+	// Triple buffer: o publish() escreve no back e troca-o com o do meio, o render troca o do meio
+	// com o front quando este é mais recente. Nenhum estado é escrito enquanto é lido e nada é alocado.
+	private static final AtomicReference<CameraState> middle = new AtomicReference<>(new CameraState());
+
+	// do publish() (sincronizado)
+	private static CameraState back = new CameraState();
+
+	private static final CameraState last = new CameraState();
+
+	private static long sequence = 0;
+
+	// do render
+	private static CameraState front = new CameraState();
 	
 	public static Camera addDefaultCamera() {
 		Camera camera = new Camera();
@@ -30,4 +46,30 @@ public abstract class Cameras {
 		return current;
 	}
 	
+	/**
+	 * Publica uma cópia da camera atual (invocado pela thread de simulação depois de cada passo)
+	 */
+	public static synchronized void publish() {
+		Camera camera = current;
+		if(camera == null)
+			return;
+
+		sequence++;
+		back.set(camera, last, sequence);
+		last.set(camera, last, sequence);
+		back = middle.getAndSet(back);
+	}
+	
+	/**
+	 * Só para a thread do render: o estado devolvido é reutilizado na chamada seguinte
+	 *
+	 * @return O último estado publicado, {@code null} se nunca foi publicado
+	 */
+	public static CameraState getPublished() {
+		// só o publish() põe no meio um estado mais recente do que o front
+		if(middle.get().sequence > front.sequence)
+			front = middle.getAndSet(front);
+		return front.sequence == 0 ? null : front;
+	}
+	
 }
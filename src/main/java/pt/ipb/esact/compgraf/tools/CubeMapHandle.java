@@ -0,0 +1,101 @@
+package pt.ipb.esact.compgraf.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+import javax.media.opengl.GL2;
+
+import com.jogamp.opengl.util.texture.Texture;
+import com.jogamp.opengl.util.texture.TextureData;
+import com.jogamp.opengl.util.texture.TextureIO;
+
+/**
+ * A {@code GL_TEXTURE_CUBE_MAP} being loaded by {@link TextureLoader}: the six faces are decoded
+ * in parallel and uploaded together. Nothing is bound until the cube map is resident, so the
+ * texture unit stays incomplete (untextured) meanwhile.
+ */
+public class CubeMapHandle extends TextureHandle {
+
+	public static final int FACES = 6;
+
+	// +X, -X, +Y, -Y, +Z, -Z
+	private final String[] faces;
+
+	private final TextureData[] data = new TextureData[FACES];
+
+	CubeMapHandle(String[] faces, TextureCache.Sampler sampler) {
+		super(new File(faces[0]).getParent(), sampler, FACES);
+		this.faces = faces;
+	}
+
+	@Override
+	public int getTarget() {
+		return GL2.GL_TEXTURE_CUBE_MAP;
+	}
+
+	@Override
+	public int getTextureObject(GL2 gl) {
+		Texture t = getTexture();
+		return t != null ? t.getTextureObject(gl) : 0;
+	}
+
+	@Override
+	void decodeImage(int face) throws IOException {
+		TextureData image = read(faces[face], false);
+		toImageOrder(image);
+		data[face] = image;
+	}
+
+	@Override
+	Texture create(GL2 gl) {
+		Texture tex = TextureIO.newTexture(GL2.GL_TEXTURE_CUBE_MAP);
+		for(int i=0; i<FACES; i++)
+			tex.updateImage(gl, data[i], GL2.GL_TEXTURE_CUBE_MAP_POSITIVE_X + i);
+		GlTools.applySampler(gl, tex, sampler);
+		tex.setTexParameteri(gl, GL2.GL_TEXTURE_WRAP_R, sampler.wrapT);
+		return tex;
+	}
+
+	@Override
+	void discard() {
+		for(int i=0; i<FACES; i++) {
+			if(data[i] != null)
+				data[i].flush();
+			data[i] = null;
+		}
+	}
+
+	/**
+	 * The cube map faces are sampled with the first row at the top, the decoders may return them
+	 * bottom-up (GL order) for 2D textures
+	 */
+	private static void toImageOrder(TextureData image) {
+		Buffer buffer = image.getBuffer();
+		if(image.getMustFlipVertically() || image.isDataCompressed() || !(buffer instanceof ByteBuffer))
+			return;
+
+		ByteBuffer bytes = (ByteBuffer) buffer;
+		int height = image.getHeight();
+		int base = bytes.position();
+		int row = bytes.remaining() / height;
+		byte[] top = new byte[row];
+		byte[] bottom = new byte[row];
+		for(int y=0; y<height / 2; y++) {
+			int a = base + y * row;
+			int b = base + (height - 1 - y) * row;
+			bytes.position(a);
+			bytes.get(top);
+			bytes.position(b);
+			bytes.get(bottom);
+			bytes.position(a);
+			bytes.put(bottom);
+			bytes.position(b);
+			bytes.put(top);
+		}
+		bytes.position(base);
+		image.setMustFlipVertically(true);
+	}
+
+}
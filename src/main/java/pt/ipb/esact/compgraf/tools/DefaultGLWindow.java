@@ -13,20 +13,26 @@ import java.awt.event.MouseWheelEvent;
 import java.awt.event.MouseWheelListener;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.InputStream;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
 
 import javax.media.opengl.GLAutoDrawable;
 import javax.media.opengl.GLCapabilities;
 import javax.media.opengl.GLContext;
+import javax.media.opengl.GLDrawableFactory;
 import javax.media.opengl.GLEventListener;
+import javax.media.opengl.GLOffscreenAutoDrawable;
 import javax.media.opengl.GLProfile;
 import javax.media.opengl.awt.GLCanvas;
 import javax.swing.JFrame;
@@ -35,6 +41,7 @@ import javax.vecmath.Vector3f;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import pt.ipb.esact.compgraf.tools.math.Matrix4;
 import pt.ipb.esact.compgraf.tools.math.Vectors;
 
 import com.google.common.base.Splitter;
@@ -42,6 +49,7 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.jogamp.common.nio.Buffers;
 import com.jogamp.opengl.util.Animator;
+import com.jogamp.opengl.util.GLReadBufferUtil;
 import com.jogamp.opengl.util.gl2.GLUT;
 import com.jogamp.opengl.util.texture.Texture;
 
@@ -53,13 +61,79 @@ public abstract class DefaultGLWindow extends GLUTWrapper implements GLListener,
 
     private GLContext context;
 
+    // Tamanho da superfície de desenho (canvas ou offscreen)
+    private int surfaceWidth = 800;
+
+    private int surfaceHeight = 600;
+
+    // null = com janela
+    private final HeadlessOptions headless;
+
+    private final CountDownLatch headlessDone = new CountDownLatch(1);
+
+    private FrameProbe probe;
+
+    private long frameCount = 0L;
+
+    // Nunca simular mais do que isto numa frame (p.e. depois de um breakpoint)
+    private static final long MAX_FRAME_TIME = TimeUnit.MILLISECONDS.toNanos(250);
+
+    // nanosegundos
     private long elapsedTime = 0L;
 
-    private long currentTime = 0L;
+    private long lastTime = System.nanoTime();
+
+    // 0 = sem fixed timestep
+    private long updateStep = 0L;
+
+    private long accumulator = 0L;
+
+    private float alpha = 0.0f;
+
+    // 0 = sem limite
+    private long frameCap = 0L;
+
+    private long nextFrame = 0L;
+
+    // -1 = não alterar
+    private int swapInterval = -1;
+
+    // update(dt) numa thread própria
+    private boolean threaded = false;
+
+    private volatile Thread updateThread;
+
+    // instante do último passo publicado pela updateThread
+    private volatile long lastStep;
+
+    // camera interpolada a partir do estado publicado
+    private final Camera renderCamera = new Camera();
+
+    // Pan e zoom do rato à espera da updateThread (a única que altera a camera enquanto corre):
+    // rotação, pan e pan vertical (horizontal, vertical cada) e passos de zoom
+    private static final int ROTATE = 0, PAN = 1, PAN_VERTICAL = 2, ZOOM = 6;
+
+    private final float[] cameraEdits = new float[7];
+
+    private final float[] appliedEdits = new float[7];
+
+    // Vectores de trabalho do pan/zoom (thread que altera a camera)
+    private final Vector3f scratchForward = new Vector3f();
+
+    private final Vector3f scratchLeft = new Vector3f();
+
+    private final Vector3f scratchEye = new Vector3f();
+
+    // Cópias no CPU das matrizes enviadas ao GL
+    private final Matrix4 viewMatrix = new Matrix4();
+
+    private final Matrix4 projectionMatrix = new Matrix4();
 
-    private long lastTime = System.currentTimeMillis();
+    // Um bit por key code (KeyEvent.VK_*), escrito pela thread do AWT
+    private final AtomicLongArray keys = new AtomicLongArray(0x10000 / 64);
 
-    private Set<Integer> keycodes = new HashSet<>();
+    // Eventos do AWT entregues na thread do GL no início de cada frame
+    private final InputQueue events = new InputQueue(256);
     private Map<String, Integer> keymap = Maps.newHashMap();
 
     private GLDemo demo;
@@ -84,6 +158,8 @@ public abstract class DefaultGLWindow extends GLUTWrapper implements GLListener,
         public void reshape(GLAutoDrawable drawable, int x, int y, int width, int height) {
             context = drawable.getContext();
             setCurrent(drawable.getGL().getGL2());
+            surfaceWidth = width;
+            surfaceHeight = height;
             resize(width, height);
         }
 
@@ -92,7 +168,7 @@ public abstract class DefaultGLWindow extends GLUTWrapper implements GLListener,
             context = drawable.getContext();
             setCurrent(drawable.getGL().getGL2());
             DefaultGLWindow.this.init();
-            currentTime = System.nanoTime();
+            lastTime = System.nanoTime();
         }
 
         @Override
@@ -112,38 +188,33 @@ public abstract class DefaultGLWindow extends GLUTWrapper implements GLListener,
 
     private Animator animator;
 
-    protected boolean controlDown;
+    protected volatile boolean controlDown;
 
-    protected boolean shiftDown;
+    protected volatile boolean shiftDown;
 
-    protected boolean altDown;
+    protected volatile boolean altDown;
 
     private KeyListener keyProxy = new KeyAdapter() {
 
         @Override
         public void keyReleased(KeyEvent e) {
-            keycodes.remove(e.getKeyCode());
+            setKey(e.getKeyCode(), false);
             altDown = e.isAltDown();
             controlDown = e.isControlDown();
             shiftDown = e.isShiftDown();
-            context.makeCurrent();
-            onKeyUp(e);
-            context.release();
+            post(e);
         }
 
         @Override
         public void keyPressed(KeyEvent e) {
-            if (!keycodes.contains(e.getKeyCode()))
-                keycodes.add(e.getKeyCode());
+            setKey(e.getKeyCode(), true);
             altDown = e.isAltDown();
             controlDown = e.isControlDown();
             shiftDown = e.isShiftDown();
             if (e.getKeyCode() == KeyEvent.VK_ESCAPE)
                 exit();
 
-            context.makeCurrent();
-            onKeyDown(e);
-            context.release();
+            post(e);
         }
     };
 
@@ -153,12 +224,10 @@ public abstract class DefaultGLWindow extends GLUTWrapper implements GLListener,
                 menu.show(e.getComponent(), e.getX(), e.getY());
                 return;
             }
-            mouseDown = true;
-            lastMouseLocation = MouseInfo.getPointerInfo().getLocation();
             altDown = e.isAltDown();
             controlDown = e.isControlDown();
             shiftDown = e.isShiftDown();
-            onMouseDown(e);
+            post(e);
         }
 
         ;
@@ -168,11 +237,10 @@ public abstract class DefaultGLWindow extends GLUTWrapper implements GLListener,
                 menu.show(e.getComponent(), e.getX(), e.getY());
                 return;
             }
-            mouseDown = false;
             altDown = e.isAltDown();
             controlDown = e.isControlDown();
             shiftDown = e.isShiftDown();
-            onMouseUp(e);
+            post(e);
         }
 
         ;
@@ -182,15 +250,13 @@ public abstract class DefaultGLWindow extends GLUTWrapper implements GLListener,
     private MouseWheelListener scrollProxy = new MouseWheelListener() {
         @Override
         public void mouseWheelMoved(MouseWheelEvent e) {
-            zoom = e.getWheelRotation();
+            post(e);
         }
     };
 
     private JPopupMenu menu;
 
     public DefaultGLWindow(String caption, boolean continuous) {
-        frame = new JFrame(caption);
-
         GLProfile profile = GLProfile.getDefault();
         GLCapabilities capabilities = new GLCapabilities(profile);
 
@@ -198,6 +264,14 @@ public abstract class DefaultGLWindow extends GLUTWrapper implements GLListener,
         capabilities.setDoubleBuffered(true);
         capabilities.setNumSamples(2);
 
+        headless = HeadlessOptions.fromSystemProperties();
+        if (headless != null) {
+            startHeadless(caption, capabilities);
+            return;
+        }
+
+        frame = new JFrame(caption);
+
         canvas = new GLCanvas(capabilities);
 
         canvas.addGLEventListener(eventProxy);
@@ -230,9 +304,123 @@ public abstract class DefaultGLWindow extends GLUTWrapper implements GLListener,
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         frame.setVisible(true);
         canvas.requestFocus();
+
+        fillKeyMap();
+
         animator.start();
+    }
+
+    /**
+     * Sem janela: init/resize/render num drawable offscreen (FBO ou pbuffer), ver {@link HeadlessOptions}
+     */
+    private void startHeadless(final String caption, final GLCapabilities capabilities) {
+        capabilities.setOnscreen(false);
+
+        // Setup initial camera
+        Cameras.addDefaultCamera();
+
+        // Tools
+        demo = new GLDemo();
 
         fillKeyMap();
+
+        // Só depois do construtor da subclasse (se foi criada na thread do AWT)
+        EventQueue.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        runHeadless(caption, capabilities);
+                    }
+                }, "headless");
+                thread.start();
+            }
+        });
+    }
+
+    private void runHeadless(String caption, GLCapabilities capabilities) {
+        GLOffscreenAutoDrawable drawable = null;
+        try {
+            drawable = GLDrawableFactory.getFactory(capabilities.getGLProfile())
+                    .createOffscreenAutoDrawable(null, capabilities, null, headless.width, headless.height);
+            drawable.addGLEventListener(eventProxy);
+            if (headless.dump != null)
+                drawable.addGLEventListener(new FrameDumper());
+
+            logger.info("{}: rendering offscreen at {}x{}", caption, headless.width, headless.height);
+
+            long start = System.nanoTime();
+            long end = headless.duration > 0 ? start + headless.duration : Long.MAX_VALUE;
+            int frames = 0;
+            while ((headless.frames <= 0 || frames < headless.frames) && System.nanoTime() < end) {
+                drawable.display();
+                frames++;
+            }
+
+            double seconds = (System.nanoTime() - start) / 1e9;
+            logger.info("{}: {} frames in {} s ({} fps)", caption, frames,
+                    String.format("%.3f", seconds), String.format("%.1f", frames / seconds));
+        } catch (RuntimeException e) {
+            logger.error("Headless run failed", e);
+        } finally {
+            if (drawable != null)
+                drawable.destroy();
+            headlessDone.countDown();
+        }
+    }
+
+    /**
+     * Escreve as frames em png na pasta {@link HeadlessOptions#dump}
+     */
+    private class FrameDumper implements GLEventListener {
+
+        private final GLReadBufferUtil reader = new GLReadBufferUtil(false, false);
+
+        private int frame = 0;
+
+        @Override
+        public void init(GLAutoDrawable drawable) {
+            headless.dump.mkdirs();
+        }
+
+        @Override
+        public void display(GLAutoDrawable drawable) {
+            if (frame % headless.dumpEvery == 0 && reader.readPixels(drawable.getGL(), false))
+                reader.write(new File(headless.dump, String.format("frame-%05d.png", frame)));
+            frame++;
+        }
+
+        @Override
+        public void reshape(GLAutoDrawable drawable, int x, int y, int width, int height) {
+        }
+
+        @Override
+        public void dispose(GLAutoDrawable drawable) {
+            reader.dispose(drawable.getGL());
+        }
+    }
+
+    /**
+     * Observar as frames (p.e. benchmarks), {@code null} remove
+     */
+    public void setFrameProbe(FrameProbe probe) {
+        this.probe = probe;
+    }
+
+    /**
+     * @return {@code true} a desenhar offscreen, sem janela
+     */
+    public boolean isHeadless() {
+        return headless != null;
+    }
+
+    /**
+     * Espera pelo fim das frames do modo headless (já com o release feito)
+     */
+    public void awaitHeadless() throws InterruptedException {
+        if (headless != null)
+            headlessDone.await();
     }
 
     public void setPopupMenu(JPopupMenu menu) {
@@ -252,11 +440,11 @@ public abstract class DefaultGLWindow extends GLUTWrapper implements GLListener,
     }
 
     public int getWidth() {
-        return frame.getWidth();
+        return frame != null ? frame.getWidth() : surfaceWidth;
     }
 
     public int getHeight() {
-        return frame.getHeight();
+        return frame != null ? frame.getHeight() : surfaceHeight;
     }
 
     private void fillKeyMap() {
@@ -334,6 +522,7 @@ public abstract class DefaultGLWindow extends GLUTWrapper implements GLListener,
         glLoadIdentity();
         float aspect = (float) width / (float) height;
         gluPerspective(90.0f, aspect, near, far);
+        projectionMatrix.setIdentity().perspective(90.0f, aspect, near, far);
     }
 
     public void setProjectionOrtho(int width, int height, float volume, float near, float far) {
@@ -344,6 +533,7 @@ public abstract class DefaultGLWindow extends GLUTWrapper implements GLListener,
         glLoadIdentity();
         float aspect = (float) width / (float) height;
         glOrtho(-volume, volume, -volume / aspect, volume / aspect, near, far);
+        projectionMatrix.setIdentity().ortho(-volume, volume, -volume / aspect, volume / aspect, near, far);
     }
 
     public void setProjectionOrtho2D(int width, int height) {
@@ -353,12 +543,20 @@ public abstract class DefaultGLWindow extends GLUTWrapper implements GLListener,
         glMatrixMode(GL_PROJECTION);
         glLoadIdentity();
         gluOrtho2D(0, width, 0, height);
+        projectionMatrix.setIdentity().ortho(0, width, 0, height, -1, 1);
     }
 
     public void setupCamera() {
         // Use the current camera
         Camera camera = Cameras.getCurrent();
 
+        // Com a updateThread o render usa o último estado publicado
+        CameraState published = Cameras.getPublished();
+        if (updateThread != null && Thread.currentThread() != updateThread && published != null) {
+            published.interpolate(alpha, renderCamera);
+            camera = renderCamera;
+        }
+
         // Mudar para a matriz de MODELVIEW
         glMatrixMode(GL_MODELVIEW);
         glLoadIdentity();
@@ -367,6 +565,25 @@ public abstract class DefaultGLWindow extends GLUTWrapper implements GLListener,
                 camera.at.x, camera.at.y, camera.at.z,
                 camera.up.x, camera.up.y, camera.up.z
         );
+        viewMatrix.setIdentity().lookAt(
+                camera.eye.x, camera.eye.y, camera.eye.z,
+                camera.at.x, camera.at.y, camera.at.z,
+                camera.up.x, camera.up.y, camera.up.z
+        );
+    }
+
+    /**
+     * @return A câmara do último {@link #setupCamera()} (cópia no CPU do gluLookAt)
+     */
+    public Matrix4 getViewMatrix() {
+        return viewMatrix;
+    }
+
+    /**
+     * @return A projeção do último setProjection* (cópia no CPU)
+     */
+    public Matrix4 getProjectionMatrix() {
+        return projectionMatrix;
     }
 
     protected GLDemo demo() {
@@ -409,8 +626,8 @@ public abstract class DefaultGLWindow extends GLUTWrapper implements GLListener,
     public void renderText(String text, int bitmap, int left, int top) {
         Iterable<String> lines = Splitter.on('\n').split(text);
 
-        int height = canvas.getSize().height;
-        int width = canvas.getSize().width;
+        int height = surfaceHeight;
+        int width = surfaceWidth;
 
         // Set up 2D mode
         glMatrixMode(GL_PROJECTION);
@@ -451,18 +668,38 @@ public abstract class DefaultGLWindow extends GLUTWrapper implements GLListener,
 
     @Override
     public void dispose() {
+        stopUpdateThread();
         release();
         for (ReleaseListener l : releaseListeners)
             l.release(getCurrent());
     }
 
     protected void render() {
-        Rectangle rectangle = canvas.getBounds();
         setCurrent(context.getGL().getGL2());
 
-        currentTime = System.currentTimeMillis();
-        elapsedTime = currentTime - lastTime;
-        lastTime = currentTime;
+        RenderStats.newFrame();
+
+        if (probe != null)
+            probe.beforeRender(this, frameCount);
+
+        // Input recebido desde a última frame
+        dispatchEvents();
+
+        // Textures decoded in the background since the last frame
+        TextureLoader.uploadPending();
+
+        long now = System.nanoTime();
+        elapsedTime = now - lastTime;
+        lastTime = now;
+
+        // Headless com passo fixo: animações iguais em todas as execuções
+        if (headless != null && headless.fixedDelta > 0)
+            elapsedTime = headless.fixedDelta;
+
+        if (swapInterval != -1) {
+            setSwapInterval(swapInterval);
+            swapInterval = -1;
+        }
 
         Point location = null;
         if (mousePan && mouseDown) {
@@ -480,56 +717,300 @@ public abstract class DefaultGLWindow extends GLUTWrapper implements GLListener,
             zoom = 0;
         }
 
-        render(rectangle.width, rectangle.height);
+        if (updateStep > 0 && threaded) {
+            // A simulação corre na updateThread, aqui só se calcula o alpha
+            if (updateThread == null)
+                startUpdateThread();
+            alpha = Math.min(1.0f, (float) (now - lastStep) / updateStep);
+        } else if (updateStep > 0) {
+            // Fixed timestep: consumir o tempo da frame em passos de updateStep
+            accumulator += Math.min(elapsedTime, MAX_FRAME_TIME);
+            float dt = updateStep / 1e9f;
+            while (accumulator >= updateStep) {
+                update(dt);
+                accumulator -= updateStep;
+            }
+            alpha = (float) accumulator / updateStep;
+        }
+
+        render(surfaceWidth, surfaceHeight);
 
         if (mousePan && mouseDown)
             lastMouseLocation = location;
+
+        if (probe != null)
+            probe.afterRender(this, frameCount);
+        frameCount++;
+
+        if (frameCap > 0)
+            waitForNextFrame();
+    }
+
+    /**
+     * Invocado com um passo fixo quando {@link #setUpdateRate(float)} está ativo, antes do render
+     * (ou na thread de simulação, ver {@link #setUpdateThread(boolean)}).
+     * A simulação deve avançar aqui e o render interpolar com {@link #getAlpha()}.
+     *
+     * @param dt A duração do passo em segundos
+     */
+    protected void update(float dt) {
+
+    }
+
+    /**
+     * Ativa o fixed timestep: {@link #update(float)} passa a ser invocado {@code hz} vezes por segundo
+     *
+     * @param hz Atualizações por segundo, 0 desativa
+     */
+    public void setUpdateRate(float hz) {
+        updateStep = hz > 0 ? (long) (1e9 / hz) : 0L;
+        accumulator = 0L;
+        alpha = 0.0f;
+    }
+
+    /**
+     * Corre o {@link #update(float)} numa thread dedicada (requer {@link #setUpdateRate(float)}), em paralelo
+     * com o render. Depois de cada passo a camera atual é publicada ({@link Cameras#publish()}) e o render
+     * passa a usar esse estado, interpolado com {@link #getAlpha()}. O update não pode fazer chamadas GL e
+     * o render deve ler apenas estado publicado (p.e. {@link pt.ipb.esact.compgraf.engine.movement.Kinematic#getState()}).
+     * Enquanto a thread corre só ela altera as cameras: o pan e zoom do rato são-lhe entregues antes de cada passo.
+     */
+    public void setUpdateThread(boolean enabled) {
+        threaded = enabled;
+        if (!enabled)
+            stopUpdateThread();
+    }
+
+    private void startUpdateThread() {
+        lastStep = System.nanoTime();
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runUpdates();
+            }
+        }, "simulation");
+        thread.setDaemon(true);
+        updateThread = thread;
+        thread.start();
+    }
+
+    private void stopUpdateThread() {
+        Thread thread = updateThread;
+        if (thread == null)
+            return;
+
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        updateThread = null;
+
+        // o que ficou por aplicar
+        applyCameraEdits();
+    }
+
+    private void runUpdates() {
+        long next = System.nanoTime();
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                long step = updateStep;
+                if (step <= 0)
+                    break;
+
+                long wait = next - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                    continue;
+                }
+
+                applyCameraEdits();
+                update(step / 1e9f);
+                Cameras.publish();
+
+                long now = System.nanoTime();
+                lastStep = now;
+                next += step;
+
+                // Atrasados demasiado: não tentar recuperar
+                if (now - next > MAX_FRAME_TIME)
+                    next = now;
+            }
+        } catch (RuntimeException e) {
+            logger.error("Simulation thread stopped", e);
+            throw e;
+        }
+    }
+
+    /**
+     * @return A fração de passo que ficou por simular [0, 1[, para interpolar entre o estado anterior e o atual
+     */
+    public float getAlpha() {
+        return alpha;
+    }
+
+    /**
+     * Limita o número de frames por segundo (dorme no fim de cada frame)
+     *
+     * @param fps Frames por segundo, 0 remove o limite
+     */
+    public void setFrameCap(int fps) {
+        frameCap = fps > 0 ? 1000000000L / fps : 0L;
+        nextFrame = 0L;
+    }
+
+    /**
+     * Sincronizar o swap dos buffers com o refresh do monitor
+     */
+    public void setVSync(boolean vsync) {
+        // aplicado na próxima frame, com o contexto atual
+        swapInterval = vsync ? 1 : 0;
+    }
+
+    private void waitForNextFrame() {
+        long now = System.nanoTime();
+        // Atrasados mais do que uma frame: recomeçar a contagem
+        if (nextFrame == 0L || now - nextFrame > frameCap)
+            nextFrame = now;
+        nextFrame += frameCap;
+
+        long remaining;
+        while ((remaining = nextFrame - System.nanoTime()) > 0)
+            LockSupport.parkNanos(remaining);
+    }
+
+    /**
+     * Entrega um evento de input ao {@link #render()} seguinte (qualquer thread)
+     */
+    protected void post(AWTEvent e) {
+        if (!events.offer(e))
+            logger.warn("Input queue full, dropping {}", e);
+    }
+
+    private void dispatchEvents() {
+        AWTEvent e;
+        while ((e = events.poll()) != null) {
+            switch (e.getID()) {
+                case KeyEvent.KEY_PRESSED:
+                    onKeyDown((KeyEvent) e);
+                    break;
+                case KeyEvent.KEY_RELEASED:
+                    onKeyUp((KeyEvent) e);
+                    break;
+                case MouseEvent.MOUSE_PRESSED:
+                    mouseDown = true;
+                    lastMouseLocation = ((MouseEvent) e).getLocationOnScreen();
+                    onMouseDown((MouseEvent) e);
+                    break;
+                case MouseEvent.MOUSE_RELEASED:
+                    mouseDown = false;
+                    onMouseUp((MouseEvent) e);
+                    break;
+                case MouseEvent.MOUSE_WHEEL:
+                    zoom = ((MouseWheelEvent) e).getWheelRotation();
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private void setKey(int keyCode, boolean pressed) {
+        if (keyCode < 0 || keyCode >= 0x10000)
+            return;
+        int word = keyCode >>> 6;
+        long bit = 1L << (keyCode & 63);
+        long value;
+        do {
+            value = keys.get(word);
+        } while (!keys.compareAndSet(word, value, pressed ? value | bit : value & ~bit));
     }
 
     private void zoomScene(int zoom) {
-        float d = zoom;
-        float signal = d / Math.abs(d);
-        float percent = 0.1f * signal;
-
-        Camera c = Cameras.getCurrent();
-        Vector3f inc = Vectors.sub(c.at, c.eye);
-        inc.scale(percent);
-        c.eye = Vectors.add(c.eye, inc);
+        if (updateThread != null) {
+            synchronized (cameraEdits) {
+                cameraEdits[ZOOM] += Math.signum(zoom);
+            }
+        } else {
+            zoomCamera(Cameras.getCurrent(), Math.signum(zoom));
+        }
         setupCamera();
     }
 
+    /**
+     * Roda a camera à volta do at, ou com o shift (e o ctrl) faz pan. Com a updateThread a alteração
+     * é aplicada por ela no passo seguinte.
+     */
     public void rotateOrPanScene(float hrot, float vrot) {
+        int mode = !isShiftPressed() ? ROTATE : isCtrlPressed() ? PAN_VERTICAL : PAN;
+        if (updateThread != null) {
+            synchronized (cameraEdits) {
+                cameraEdits[2 * mode] += hrot;
+                cameraEdits[2 * mode + 1] += vrot;
+            }
+        } else {
+            moveCamera(Cameras.getCurrent(), mode, hrot, vrot);
+        }
+        setupCamera();
+    }
+
+    /**
+     * Aplica o pan e zoom acumulados desde o último passo (na updateThread, antes do update)
+     */
+    private void applyCameraEdits() {
+        synchronized (cameraEdits) {
+            System.arraycopy(cameraEdits, 0, appliedEdits, 0, cameraEdits.length);
+            Arrays.fill(cameraEdits, 0.0f);
+        }
+
         Camera camera = Cameras.getCurrent();
-        Vector3f fw = Vectors.sub(camera.eye, camera.at);
+        if (camera == null)
+            return;
+        for (int mode = ROTATE; mode <= PAN_VERTICAL; mode++)
+            if (appliedEdits[2 * mode] != 0.0f || appliedEdits[2 * mode + 1] != 0.0f)
+                moveCamera(camera, mode, appliedEdits[2 * mode], appliedEdits[2 * mode + 1]);
+        if (appliedEdits[ZOOM] != 0.0f)
+            zoomCamera(camera, appliedEdits[ZOOM]);
+    }
+
+    private void zoomCamera(Camera c, float steps) {
+        // 10% da distância ao at por passo da roda
+        float percent = 0.1f * Math.signum(steps);
+        Vector3f inc = Vectors.sub(c.at, c.eye, scratchForward);
+        for (int i = 0; i < Math.abs(steps); i++)
+            Vectors.scaleAdd(inc, percent, c.eye, c.eye);
+    }
+
+    private void moveCamera(Camera camera, int mode, float hrot, float vrot) {
+        Vector3f fw = Vectors.sub(camera.eye, camera.at, scratchForward);
         Vector3f up = camera.up;
-        Vector3f left = new Vector3f(rotate(90, up, fw));
+        Vector3f left = rotate(90, up, fw, scratchLeft);
         left.y = 0.0f;
 
-        if (isShiftPressed()) {
+        if (mode != ROTATE) {
             hrot *= 0.1f;
             vrot *= 0.1f;
 
             left.scale(hrot);
-            camera.eye = Vectors.add(camera.eye, left);
-            camera.at = Vectors.add(camera.at, left);
+            camera.eye.add(left);
+            camera.at.add(left);
 
             fw.scale(vrot);
-            if (!isCtrlPressed()) {
+            if (mode == PAN) {
                 fw.y = 0.0f;
             } else {
                 fw.x = 0.0f;
                 fw.z = 0.0f;
                 fw.y *= -1.0f;
             }
-            camera.eye = Vectors.add(camera.eye, fw);
-            camera.at = Vectors.add(camera.at, fw);
+            camera.eye.add(fw);
+            camera.at.add(fw);
         } else {
-            Vector3f eye = new Vector3f(rotate(hrot, up, fw));
-            eye = new Vector3f(rotate(vrot, left, eye));
-            camera.eye = Vectors.add(eye, camera.at);
+            Vector3f eye = rotate(hrot, up, fw, scratchEye);
+            rotate(vrot, left, eye, eye);
+            Vectors.add(eye, camera.at, camera.eye);
         }
-
-        setupCamera();
     }
 
     public boolean isAltPressed() {
@@ -544,6 +1025,9 @@ public abstract class DefaultGLWindow extends GLUTWrapper implements GLListener,
         return controlDown;
     }
 
+    /**
+     * @return O canvas da janela, {@code null} no modo headless
+     */
     public GLCanvas getCanvas() {
         return canvas;
     }
@@ -552,7 +1036,7 @@ public abstract class DefaultGLWindow extends GLUTWrapper implements GLListener,
      * @return O tempo que passou desde que a última frame foi desenhada
      */
     public float timeElapsed() {
-        return (float) elapsedTime / (1000.0f); // para segundos
+        return (float) elapsedTime / 1e9f; // para segundos
     }
 
     /**
@@ -563,17 +1047,18 @@ public abstract class DefaultGLWindow extends GLUTWrapper implements GLListener,
      * @see KeyEvent
      */
     public boolean isKeyPressed(int keyCode) {
-        return keycodes.contains(keyCode);
+        if (keyCode < 0 || keyCode >= 0x10000)
+            return false;
+        return (keys.get(keyCode >>> 6) & (1L << (keyCode & 63))) != 0;
     }
 
     public boolean isKeyPressed(char c) {
-        return keycodes.contains((int) Character.toUpperCase(c));
+        return isKeyPressed((int) Character.toUpperCase(c));
     }
 
     public boolean isKeyPressed(String name) {
-        if (!keymap.containsKey(name))
-            return false;
-        return keycodes.contains(keymap.get(name));
+        Integer keyCode = keymap.get(name);
+        return keyCode != null && isKeyPressed(keyCode.intValue());
     }
 
     protected static FloatBuffer newFloatBuffer(float... values) {
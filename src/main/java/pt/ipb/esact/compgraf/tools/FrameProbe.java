@@ -0,0 +1,18 @@
+package pt.ipb.esact.compgraf.tools;
+
+/**
+ * Observes the frames of a {@link DefaultGLWindow} (e.g. to measure them), both calls happen on
+ * the GL thread around {@link GLListener#render(int, int)}.
+ *
+ * @see DefaultGLWindow#setFrameProbe(FrameProbe)
+ */
+public interface FrameProbe {
+
+	/**
+	 * Start of the frame, the {@link RenderStats} counters were just reset
+	 */
+	void beforeRender(DefaultGLWindow window, long frame);
+
+	void afterRender(DefaultGLWindow window, long frame);
+
+}
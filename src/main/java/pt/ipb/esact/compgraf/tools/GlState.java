@@ -0,0 +1,197 @@
+package pt.ipb.esact.compgraf.tools;
+
+import java.util.Arrays;
+
+import javax.media.opengl.GL2;
+
+/**
+ * Shadow copy of the GL state touched by the engine materials (current color, front material,
+ * blending, texture units and bound 2D textures). Calls that would set a value that is already
+ * current are skipped and counted in {@link RenderStats}.
+ *
+ * The shadow is only trusted between {@link #begin()} and {@link #end()}: outside that scope any
+ * code may change the state behind our back, so every call goes straight to GL.
+ */
+public class GlState {
+
+	private static final int MAX_UNITS = 32;
+
+	private static boolean active = false;
+
+	// current color
+	private static final float[] color = new float[4];
+
+	private static boolean colorKnown;
+
+	// GL_FRONT ambient, diffuse, specular and emission
+	private static final float[][] material = new float[4][4];
+
+	private static final boolean[] materialKnown = new boolean[4];
+
+	private static float shininess;
+
+	private static boolean shininessKnown;
+
+	// enable state: 0 unknown, 1 disabled, 2 enabled
+	private static int blend;
+
+	private static final int[] texture2D = new int[MAX_UNITS];
+
+	private static int blendSrc = -1;
+
+	private static int blendDst = -1;
+
+	// GL_TEXTURE0 + unit, -1 unknown
+	private static int activeTexture = -1;
+
+	// texture bound to GL_TEXTURE_2D of each unit, -1 unknown
+	private static final int[] boundTexture = new int[MAX_UNITS];
+
+	/**
+	 * Starts trusting the shadow, the GL state is unknown at this point
+	 */
+	public static void begin() {
+		invalidate();
+		active = true;
+	}
+
+	/**
+	 * Stops trusting the shadow (e.g. before a glPopAttrib)
+	 */
+	public static void end() {
+		invalidate();
+		active = false;
+	}
+
+	public static void invalidate() {
+		colorKnown = false;
+		Arrays.fill(materialKnown, false);
+		shininessKnown = false;
+		blend = 0;
+		Arrays.fill(texture2D, 0);
+		blendSrc = -1;
+		blendDst = -1;
+		activeTexture = -1;
+		Arrays.fill(boundTexture, -1);
+	}
+
+	public static void color(float[] rgba) {
+		if(active && colorKnown && Arrays.equals(color, rgba)) {
+			RenderStats.skippedCall();
+			return;
+		}
+		GlTools.gl().glColor4fv(rgba, 0);
+		System.arraycopy(rgba, 0, color, 0, 4);
+		colorKnown = true;
+	}
+
+	/**
+	 * @param pname GL_AMBIENT, GL_DIFFUSE, GL_SPECULAR or GL_EMISSION of GL_FRONT
+	 */
+	public static void material(int pname, float[] rgba) {
+		int i = materialIndex(pname);
+		if(active && materialKnown[i] && Arrays.equals(material[i], rgba)) {
+			RenderStats.skippedCall();
+			return;
+		}
+		GlTools.gl().glMaterialfv(GL2.GL_FRONT, pname, rgba, 0);
+		System.arraycopy(rgba, 0, material[i], 0, 4);
+		materialKnown[i] = true;
+	}
+
+	public static void shininess(float value) {
+		if(active && shininessKnown && shininess == value) {
+			RenderStats.skippedCall();
+			return;
+		}
+		GlTools.gl().glMaterialf(GL2.GL_FRONT, GL2.GL_SHININESS, value);
+		shininess = value;
+		shininessKnown = true;
+	}
+
+	public static void blend(boolean enabled) {
+		int wanted = enabled ? 2 : 1;
+		if(active && blend == wanted) {
+			RenderStats.skippedCall();
+			return;
+		}
+		if(enabled)
+			GlTools.gl().glEnable(GL2.GL_BLEND);
+		else
+			GlTools.gl().glDisable(GL2.GL_BLEND);
+		blend = wanted;
+	}
+
+	public static void blendFunc(int src, int dst) {
+		if(active && blendSrc == src && blendDst == dst) {
+			RenderStats.skippedCall();
+			return;
+		}
+		GlTools.gl().glBlendFunc(src, dst);
+		blendSrc = src;
+		blendDst = dst;
+	}
+
+	/**
+	 * GL_TEXTURE_2D enable state of the active texture unit
+	 */
+	public static void texture2D(boolean enabled) {
+		int wanted = enabled ? 2 : 1;
+		int unit = unit(activeTexture);
+		if(active && unit != -1 && texture2D[unit] == wanted) {
+			RenderStats.skippedCall();
+			return;
+		}
+		if(enabled)
+			GlTools.gl().glEnable(GL2.GL_TEXTURE_2D);
+		else
+			GlTools.gl().glDisable(GL2.GL_TEXTURE_2D);
+		if(unit != -1)
+			texture2D[unit] = wanted;
+	}
+
+	public static void activeTexture(int texture) {
+		if(active && activeTexture == texture) {
+			RenderStats.skippedCall();
+			return;
+		}
+		GlTools.gl().glActiveTexture(texture);
+		activeTexture = unit(texture) == -1 ? -1 : texture;
+	}
+
+	/**
+	 * Binds {@code id} to {@code target} of the active texture unit
+	 */
+	public static void bindTexture(int target, int id) {
+		int unit = unit(activeTexture);
+		boolean tracked = target == GL2.GL_TEXTURE_2D && unit != -1;
+		if(active && tracked && boundTexture[unit] == id) {
+			RenderStats.skippedCall();
+			return;
+		}
+		GlTools.gl().glBindTexture(target, id);
+		if(tracked)
+			boundTexture[unit] = id;
+	}
+
+	private static int unit(int texture) {
+		int unit = texture - GL2.GL_TEXTURE0;
+		return unit >= 0 && unit < MAX_UNITS ? unit : -1;
+	}
+
+	private static int materialIndex(int pname) {
+		switch(pname) {
+		case GL2.GL_AMBIENT:
+			return 0;
+		case GL2.GL_DIFFUSE:
+			return 1;
+		case GL2.GL_SPECULAR:
+			return 2;
+		case GL2.GL_EMISSION:
+			return 3;
+		default:
+			throw new IllegalArgumentException("Unsupported material parameter: " + pname);
+		}
+	}
+
+}
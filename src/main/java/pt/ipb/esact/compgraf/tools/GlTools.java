@@ -25,11 +25,18 @@ public class GlTools {
 	
 	private static float maxAnisotropy = 0.0f;
 	
+	// queried from the first GL context that asks for them (never on class load)
+	private static boolean capabilitiesQueried = false;
+	
 	private static GLU glu;
 
 	private static GLUT glut;
 
-	static {
+	private static synchronized void queryCapabilities() {
+		if(capabilitiesQueried)
+			return;
+		capabilitiesQueried = true;
+		
 		// Verificar se a extensão está disponível
 		anisotropicAvailable = isExtensionAvailable("GL_EXT_texture_filter_anisotropic");
 		
@@ -40,25 +47,24 @@ public class GlTools {
 			gl().glGetFloatv(GL2.GL_MAX_TEXTURE_MAX_ANISOTROPY_EXT, values);
 			maxAnisotropy = values.get(0);
 		}
-		
-		glu = new GLUgl2();
-		glut = new GLUT();
 	}
 
     public static Texture loadTexture(String path) {
+        return loadTexture(path, TextureCache.Sampler.DEFAULT);
+    }
+
+    /**
+     * Loads a texture that is not shared, see {@link TextureCache} for shared textures
+     */
+    public static Texture loadTexture(String path, TextureCache.Sampler sampler) {
         Preconditions.checkNotNull(path, "The path cannot be null");
         GL2 gl = gl();
         GLU glu = new GLU();
 
         String type = getImageType(path);
         try (FileInputStream stream = new FileInputStream(path)) {
-            Texture tex = TextureIO.newTexture(stream, true, type);
-            tex.setTexParameteri(gl, GL2.GL_TEXTURE_MAG_FILTER, GL2.GL_LINEAR);
-            tex.setTexParameteri(gl, GL2.GL_TEXTURE_MIN_FILTER, GL2.GL_LINEAR_MIPMAP_LINEAR);
-            tex.setTexParameteri(gl, GL2.GL_TEXTURE_WRAP_S, GL2.GL_CLAMP_TO_EDGE);
-            tex.setTexParameteri(gl, GL2.GL_TEXTURE_WRAP_T, GL2.GL_CLAMP_TO_EDGE);
-            if(isAnisotropicAvailable())
-                tex.setTexParameterf(gl, GL2.GL_TEXTURE_MAX_ANISOTROPY_EXT, getMaxAnisotropy());
+            Texture tex = TextureIO.newTexture(stream, sampler.mipmap, type);
+            applySampler(gl, tex, sampler);
 
             int i = gl.glGetError();
             String s = glu.gluErrorString(i);
@@ -73,6 +79,24 @@ public class GlTools {
         }
     }
 
+    /**
+     * Decodes the image on a worker thread, the upload happens in a later frame
+     *
+     * @see TextureLoader
+     */
+    public static TextureHandle loadTextureAsync(String path) {
+        return TextureLoader.load(path);
+    }
+
+    static void applySampler(GL2 gl, Texture tex, TextureCache.Sampler sampler) {
+        tex.setTexParameteri(gl, GL2.GL_TEXTURE_MAG_FILTER, sampler.magFilter);
+        tex.setTexParameteri(gl, GL2.GL_TEXTURE_MIN_FILTER, sampler.minFilter);
+        tex.setTexParameteri(gl, GL2.GL_TEXTURE_WRAP_S, sampler.wrapS);
+        tex.setTexParameteri(gl, GL2.GL_TEXTURE_WRAP_T, sampler.wrapT);
+        if(isAnisotropicAvailable())
+            tex.setTexParameterf(gl, GL2.GL_TEXTURE_MAX_ANISOTROPY_EXT, getMaxAnisotropy());
+    }
+
 	/**
 	 * Carrega uma textura a partir da package da classe do objeto reference
 	 * @param reference O objeto que serve de referencia
@@ -101,7 +125,7 @@ public class GlTools {
 		}
 	}
 
-	private static String getImageType(String path) {
+	static String getImageType(String path) {
 		String ext = path.substring(path.lastIndexOf('.') + 1).replace(".", "");
 		switch (ext.toLowerCase()) {
 		case "dds": return TextureIO.DDS;
@@ -118,14 +142,18 @@ public class GlTools {
 	}
 
 	public static float getMaxAnisotropy() {
+		queryCapabilities();
 		return maxAnisotropy;
 	}
 
-	private static GLU glu() {
+	private static synchronized GLU glu() {
+		if(glu == null)
+			glu = new GLUgl2();
 		return glu;
 	}
 
 	public static boolean isAnisotropicAvailable() {
+		queryCapabilities();
 		return anisotropicAvailable;
 	}
 
@@ -142,7 +170,9 @@ public class GlTools {
 		return GLContext.getCurrentGL().getGL2();
 	}
 
-	public static GLUT glut() {
+	public static synchronized GLUT glut() {
+		if(glut == null)
+			glut = new GLUT();
 		return glut;
 	}
 	
@@ -0,0 +1,89 @@
+package pt.ipb.esact.compgraf.tools;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Splitter;
+
+/**
+ * Settings of a {@link DefaultGLWindow} rendering offscreen (no window, no display needed), read
+ * from the system properties:
+ * <ul>
+ * <li>{@code compgraf.headless} - {@code true} to enable</li>
+ * <li>{@code compgraf.frames} - number of frames to render</li>
+ * <li>{@code compgraf.duration} - or for how many seconds</li>
+ * <li>{@code compgraf.size} - resolution, {@code 800x600} by default</li>
+ * <li>{@code compgraf.dump} - directory where the frames are written as png</li>
+ * <li>{@code compgraf.dump.every} - write only one frame out of N</li>
+ * <li>{@code compgraf.dt} - fixed {@link DefaultGLWindow#timeElapsed()} in seconds, for repeatable runs</li>
+ * </ul>
+ * Without frames nor duration {@value #DEFAULT_FRAMES} frames are rendered.
+ */
+public final class HeadlessOptions {
+
+	public static final int DEFAULT_FRAMES = 300;
+
+	public final int frames;
+
+	// nanoseconds, 0 = no limit
+	public final long duration;
+
+	public final int width;
+
+	public final int height;
+
+	// null = no dumps
+	public final File dump;
+
+	public final int dumpEvery;
+
+	// nanoseconds, 0 = real time
+	public final long fixedDelta;
+
+	public HeadlessOptions(int frames, long duration, int width, int height, File dump, int dumpEvery, long fixedDelta) {
+		this.frames = frames <= 0 && duration <= 0 ? DEFAULT_FRAMES : frames;
+		this.duration = duration;
+		this.width = width;
+		this.height = height;
+		this.dump = dump;
+		this.dumpEvery = Math.max(1, dumpEvery);
+		this.fixedDelta = fixedDelta;
+	}
+
+	/**
+	 * @return The options or {@code null} when {@code compgraf.headless} isn't set
+	 */
+	public static HeadlessOptions fromSystemProperties() {
+		if(!Boolean.getBoolean("compgraf.headless"))
+			return null;
+
+		int width = 800;
+		int height = 600;
+		String size = System.getProperty("compgraf.size");
+		if(size != null) {
+			List<String> parts = Splitter.on('x').trimResults().splitToList(size.toLowerCase());
+			if(parts.size() != 2)
+				throw new IllegalArgumentException("compgraf.size must be WIDTHxHEIGHT: " + size);
+			width = Integer.parseInt(parts.get(0));
+			height = Integer.parseInt(parts.get(1));
+		}
+
+		String dump = System.getProperty("compgraf.dump");
+
+		return new HeadlessOptions(
+				Integer.getInteger("compgraf.frames", 0),
+				seconds("compgraf.duration"),
+				width,
+				height,
+				dump != null ? new File(dump) : null,
+				Integer.getInteger("compgraf.dump.every", 1),
+				seconds("compgraf.dt"));
+	}
+
+	private static long seconds(String property) {
+		String value = System.getProperty(property);
+		return value != null ? (long) (Double.parseDouble(value) * TimeUnit.SECONDS.toNanos(1)) : 0L;
+	}
+
+}
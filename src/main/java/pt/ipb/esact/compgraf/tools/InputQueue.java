@@ -0,0 +1,79 @@
+package pt.ipb.esact.compgraf.tools;
+
+import java.awt.AWTEvent;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free queue of input events: the AWT thread offers, the GL thread polls at the start
+ * of each frame (see {@link DefaultGLWindow}). Each slot carries a sequence number, so producers
+ * only compete on a CAS of the tail and the consumer never blocks them.
+ */
+final class InputQueue {
+
+	private final int mask;
+
+	private final AtomicReferenceArray<AWTEvent> events;
+
+	// expected position of the next write (== position) or read (== position + 1) of each slot
+	private final AtomicLongArray sequences;
+
+	private final AtomicLong tail = new AtomicLong();
+
+	private final AtomicLong head = new AtomicLong();
+
+	/**
+	 * @param capacity A power of two
+	 */
+	InputQueue(int capacity) {
+		if(Integer.bitCount(capacity) != 1)
+			throw new IllegalArgumentException("The capacity must be a power of two: " + capacity);
+		mask = capacity - 1;
+		events = new AtomicReferenceArray<>(capacity);
+		sequences = new AtomicLongArray(capacity);
+		for(int i=0; i<capacity; i++)
+			sequences.set(i, i);
+	}
+
+	/**
+	 * @return {@code false} if the queue is full and the event was dropped
+	 */
+	boolean offer(AWTEvent event) {
+		while(true) {
+			long position = tail.get();
+			int slot = (int) position & mask;
+			long diff = sequences.get(slot) - position;
+			if(diff == 0) {
+				if(tail.compareAndSet(position, position + 1)) {
+					events.lazySet(slot, event);
+					sequences.set(slot, position + 1);
+					return true;
+				}
+			} else if(diff < 0) {
+				// full
+				return false;
+			}
+			// another producer took the slot, try again
+		}
+	}
+
+	/**
+	 * Single consumer
+	 *
+	 * @return The oldest event or {@code null}
+	 */
+	AWTEvent poll() {
+		long position = head.get();
+		int slot = (int) position & mask;
+		if(sequences.get(slot) != position + 1)
+			return null;
+
+		AWTEvent event = events.get(slot);
+		events.lazySet(slot, null);
+		head.lazySet(position + 1);
+		sequences.set(slot, position + mask + 1);
+		return event;
+	}
+
+}
@@ -0,0 +1,130 @@
+package pt.ipb.esact.compgraf.tools;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Per frame counters filled by the engine while rendering. {@link DefaultGLWindow} starts a new
+ * frame before each render, the getters return the values of the last complete frame.
+ */
+public class RenderStats {
+
+	private static int drawCalls;
+
+	private static int stateChanges;
+
+	private static int skippedCalls;
+
+	private static int visibleObjects;
+
+	private static int culledObjects;
+
+	private static int lastDrawCalls;
+
+	private static int lastStateChanges;
+
+	private static int lastSkippedCalls;
+
+	private static int lastVisibleObjects;
+
+	private static int lastCulledObjects;
+
+	private static long frames;
+
+	/**
+	 * Closes the current frame and resets the counters
+	 */
+	public static void newFrame() {
+		lastDrawCalls = drawCalls;
+		lastStateChanges = stateChanges;
+		lastSkippedCalls = skippedCalls;
+		lastVisibleObjects = visibleObjects;
+		lastCulledObjects = culledObjects;
+		drawCalls = 0;
+		stateChanges = 0;
+		skippedCalls = 0;
+		visibleObjects = 0;
+		culledObjects = 0;
+		frames++;
+	}
+
+	public static void drawCall() {
+		drawCalls++;
+	}
+
+	/**
+	 * A material, texture or shade model switch between two draws
+	 */
+	public static void stateChange() {
+		stateChanges++;
+	}
+
+	/**
+	 * A GL call dropped by {@link GlState} because the value was already current
+	 */
+	public static void skippedCall() {
+		skippedCalls++;
+	}
+
+	/**
+	 * Objects that passed the frustum test (see {@link pt.ipb.esact.compgraf.tools.math.Frustum})
+	 */
+	public static void visible(int objects) {
+		visibleObjects += objects;
+	}
+
+	/**
+	 * Objects not drawn because they are outside the view
+	 */
+	public static void culled(int objects) {
+		culledObjects += objects;
+	}
+
+	public static int getDrawCalls() {
+		return lastDrawCalls;
+	}
+
+	public static int getStateChanges() {
+		return lastStateChanges;
+	}
+
+	public static int getSkippedCalls() {
+		return lastSkippedCalls;
+	}
+
+	public static int getVisibleObjects() {
+		return lastVisibleObjects;
+	}
+
+	public static int getCulledObjects() {
+		return lastCulledObjects;
+	}
+
+	/**
+	 * @return The draw calls of the frame being rendered (see {@link FrameProbe})
+	 */
+	public static int getCurrentDrawCalls() {
+		return drawCalls;
+	}
+
+	public static int getCurrentStateChanges() {
+		return stateChanges;
+	}
+
+	public static int getCurrentVisibleObjects() {
+		return visibleObjects;
+	}
+
+	public static int getCurrentCulledObjects() {
+		return culledObjects;
+	}
+
+	public static long getFrames() {
+		return frames;
+	}
+
+	public static String report() {
+		return format("draw calls: {0}\nstate changes: {1}\nskipped GL calls: {2}\nvisible objects: {3}\nculled objects: {4}",
+				lastDrawCalls, lastStateChanges, lastSkippedCalls, lastVisibleObjects, lastCulledObjects);
+	}
+
+}
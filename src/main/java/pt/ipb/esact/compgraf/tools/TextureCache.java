@@ -0,0 +1,187 @@
+package pt.ipb.esact.compgraf.tools;
+
+import static java.text.MessageFormat.format;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+import javax.media.opengl.GL2;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.Maps;
+
+/**
+ * Registry of the textures loaded from files. The same file with the same {@link Sampler}
+ * settings is decoded and uploaded once (in the background, see {@link TextureLoader}), every
+ * {@link #acquire(String)} must be paired with a {@link #release(GL2, TextureHandle)} (usually
+ * from a {@link ReleaseListener}), the texture is destroyed when the last user releases it.
+ */
+public class TextureCache {
+
+	private static final Logger logger = LoggerFactory.getLogger(TextureCache.class);
+
+	/**
+	 * Filtering and wrapping applied to a texture when it is loaded
+	 */
+	public static final class Sampler {
+
+		/**
+		 * The settings used by {@link GlTools#loadTexture(String)}
+		 */
+		public static final Sampler DEFAULT = new Sampler(true, GL2.GL_LINEAR_MIPMAP_LINEAR, GL2.GL_LINEAR, GL2.GL_CLAMP_TO_EDGE, GL2.GL_CLAMP_TO_EDGE);
+
+		public final boolean mipmap;
+
+		public final int minFilter;
+
+		public final int magFilter;
+
+		public final int wrapS;
+
+		public final int wrapT;
+
+		public Sampler(boolean mipmap, int minFilter, int magFilter, int wrapS, int wrapT) {
+			this.mipmap = mipmap;
+			this.minFilter = minFilter;
+			this.magFilter = magFilter;
+			this.wrapS = wrapS;
+			this.wrapT = wrapT;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if(!(obj instanceof Sampler))
+				return false;
+			Sampler o = (Sampler) obj;
+			return mipmap == o.mipmap && minFilter == o.minFilter && magFilter == o.magFilter && wrapS == o.wrapS && wrapT == o.wrapT;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hashCode(mipmap, minFilter, magFilter, wrapS, wrapT);
+		}
+
+	}
+
+	private static class Entry {
+
+		final String key;
+
+		final TextureHandle handle;
+
+		int references;
+
+		Entry(String key, TextureHandle handle) {
+			this.key = key;
+			this.handle = handle;
+		}
+
+	}
+
+	private static final Map<String, Entry> entries = Maps.newHashMap();
+
+	private static final Map<TextureHandle, Entry> byHandle = Maps.newIdentityHashMap();
+
+	private static int hits;
+
+	private static int misses;
+
+	public static TextureHandle acquire(String path) {
+		return acquire(path, Sampler.DEFAULT);
+	}
+
+	/**
+	 * @return The shared texture, its loading starts on the first request
+	 */
+	public static synchronized TextureHandle acquire(String path, Sampler sampler) {
+		String key = key(path, sampler);
+		Entry entry = entries.get(key);
+		if(entry == null) {
+			misses++;
+			entry = new Entry(key, TextureLoader.load(path, sampler));
+			entries.put(key, entry);
+			byHandle.put(entry.handle, entry);
+		} else {
+			hits++;
+			logger.debug("Reusing texture {}", path);
+		}
+		entry.references++;
+		return entry.handle;
+	}
+
+	/**
+	 * @param faces The images for +X, -X, +Y, -Y, +Z and -Z
+	 * @return The shared cube map, its loading starts on the first request
+	 */
+	public static synchronized CubeMapHandle acquireCubeMap(String[] faces, Sampler sampler) {
+		StringBuilder key = new StringBuilder("cube");
+		for(String face : faces)
+			key.append('|').append(key(face, sampler));
+		Entry entry = entries.get(key.toString());
+		if(entry == null) {
+			misses++;
+			entry = new Entry(key.toString(), TextureLoader.loadCubeMap(faces, sampler));
+			entries.put(entry.key, entry);
+			byHandle.put(entry.handle, entry);
+		} else {
+			hits++;
+			logger.debug("Reusing cube map {}", entry.handle.getPath());
+		}
+		entry.references++;
+		return (CubeMapHandle) entry.handle;
+	}
+
+	/**
+	 * Gives back a texture obtained from {@link #acquire(String, Sampler)} or
+	 * {@link #acquireCubeMap(String[], Sampler)}, the last release destroys it
+	 */
+	public static synchronized void release(GL2 gl, TextureHandle handle) {
+		if(handle == null)
+			return;
+
+		Entry entry = byHandle.get(handle);
+		if(entry == null) {
+			// not ours
+			handle.destroy(gl);
+			return;
+		}
+
+		if(--entry.references > 0)
+			return;
+
+		entries.remove(entry.key);
+		byHandle.remove(handle);
+		handle.destroy(gl);
+	}
+
+	public static synchronized int getHits() {
+		return hits;
+	}
+
+	public static synchronized int getMisses() {
+		return misses;
+	}
+
+	public static synchronized int size() {
+		return entries.size();
+	}
+
+	public static synchronized String report() {
+		return format("textures: {0} loaded, {1} hits, {2} misses", entries.size(), hits, misses);
+	}
+
+	private static String key(String path, Sampler sampler) {
+		String canonical;
+		try {
+			canonical = new File(path).getCanonicalPath();
+		} catch(IOException e) {
+			canonical = new File(path).getAbsolutePath();
+		}
+		return canonical + '#' + sampler.mipmap + ',' + sampler.minFilter + ',' + sampler.magFilter + ',' + sampler.wrapS + ',' + sampler.wrapT;
+	}
+
+}
@@ -0,0 +1,168 @@
+package pt.ipb.esact.compgraf.tools;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+
+import javax.media.opengl.GL2;
+
+import com.jogamp.opengl.util.texture.Texture;
+import com.jogamp.opengl.util.texture.TextureData;
+import com.jogamp.opengl.util.texture.TextureIO;
+
+/**
+ * A texture being loaded by {@link TextureLoader}. The image is decoded by a worker thread and
+ * uploaded by the GL thread, until then {@link #bind(GL2)} binds a white placeholder.
+ */
+public class TextureHandle {
+
+	private final String path;
+
+	final TextureCache.Sampler sampler;
+
+	// one count per image to decode
+	private final CountDownLatch decoded;
+
+	// written by the decoder, read by the GL thread after the latch
+	private TextureData data;
+
+	private Exception error;
+
+	private volatile Texture texture;
+
+	private boolean destroyed;
+
+	TextureHandle(String path, TextureCache.Sampler sampler) {
+		this(path, sampler, 1);
+	}
+
+	TextureHandle(String path, TextureCache.Sampler sampler, int images) {
+		this.path = path;
+		this.sampler = sampler;
+		this.decoded = new CountDownLatch(images);
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	/**
+	 * @return {@code true} when the real texture is resident
+	 */
+	public boolean isDone() {
+		return texture != null;
+	}
+
+	/**
+	 * @return The texture, {@code null} while it isn't resident
+	 */
+	public Texture getTexture() {
+		return texture;
+	}
+
+	/**
+	 * Waits for the image and uploads it right away. GL thread only.
+	 */
+	public Texture await() {
+		if(texture == null && !destroyed) {
+			try {
+				decoded.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return null;
+			}
+			upload(GlTools.gl());
+		}
+		return texture;
+	}
+
+	/**
+	 * @return The texture object to bind: the real one or the placeholder
+	 */
+	public int getTextureObject(GL2 gl) {
+		Texture t = texture;
+		if(t != null)
+			return t.getTextureObject(gl);
+		return TextureLoader.placeholder(gl);
+	}
+
+	public int getTarget() {
+		Texture t = texture;
+		return t != null ? t.getTarget() : GL2.GL_TEXTURE_2D;
+	}
+
+	public void bind(GL2 gl) {
+		gl.glBindTexture(getTarget(), getTextureObject(gl));
+	}
+
+	public void destroy(GL2 gl) {
+		destroyed = true;
+		discard();
+		if(texture != null && gl != null)
+			texture.destroy(gl);
+		texture = null;
+	}
+
+	/**
+	 * Worker side, once per image
+	 */
+	void decode(int image) {
+		try {
+			decodeImage(image);
+		} catch (Exception e) {
+			error = e;
+		} finally {
+			decoded.countDown();
+		}
+	}
+
+	void decodeImage(int image) throws IOException {
+		data = read(path, sampler.mipmap);
+	}
+
+	static TextureData read(String file, boolean mipmap) throws IOException {
+		try (FileInputStream stream = new FileInputStream(file)) {
+			return TextureIO.newTextureData(TextureLoader.profile(), stream, mipmap, GlTools.getImageType(file));
+		}
+	}
+
+	boolean isDecoded() {
+		return decoded.getCount() == 0;
+	}
+
+	/**
+	 * GL side, once {@link #isDecoded()}
+	 */
+	void upload(GL2 gl) {
+		if(texture != null || destroyed)
+			return;
+
+		if(error != null) {
+			// same as the synchronous load
+			GlTools.exit("Foi impossivel carregar a imagem '" + path + "': " + error.getMessage());
+			return;
+		}
+
+		texture = create(gl);
+		discard();
+	}
+
+	/**
+	 * Creates the GL texture from the decoded image(s)
+	 */
+	Texture create(GL2 gl) {
+		Texture tex = TextureIO.newTexture(data);
+		GlTools.applySampler(gl, tex, sampler);
+		return tex;
+	}
+
+	/**
+	 * Drops the decoded image(s)
+	 */
+	void discard() {
+		if(data != null)
+			data.flush();
+		data = null;
+	}
+
+}
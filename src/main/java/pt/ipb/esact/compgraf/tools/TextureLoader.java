@@ -0,0 +1,142 @@
+package pt.ipb.esact.compgraf.tools;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.media.opengl.GL2;
+import javax.media.opengl.GLProfile;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Loads textures without blocking the GL thread: images are decoded to {@code TextureData} by a
+ * pool of worker threads and {@link DefaultGLWindow} uploads the decoded ones at the start of each
+ * frame, within a time budget.
+ */
+public class TextureLoader {
+
+	// 4ms per frame
+	private static final long DEFAULT_FRAME_BUDGET = 4000000L;
+
+	private static final ExecutorService decoders = Executors.newFixedThreadPool(
+			Math.max(1, Runtime.getRuntime().availableProcessors() - 1),
+			new ThreadFactoryBuilder().setNameFormat("texture-decoder-%d").setDaemon(true).build());
+
+	// in request order, uploaded as soon as they are decoded
+	private static final Queue<TextureHandle> pending = new ConcurrentLinkedQueue<>();
+
+	private static long frameBudget = DEFAULT_FRAME_BUDGET;
+
+	private static volatile GLProfile profile;
+
+	private static int placeholder;
+
+	public static TextureHandle load(String path) {
+		return load(path, TextureCache.Sampler.DEFAULT);
+	}
+
+	/**
+	 * Starts decoding the image, the returned handle binds a placeholder until the upload
+	 */
+	public static TextureHandle load(String path, TextureCache.Sampler sampler) {
+		return submit(new TextureHandle(path, sampler), 1);
+	}
+
+	/**
+	 * Starts decoding the six faces of a cube map in parallel
+	 *
+	 * @param faces The images for +X, -X, +Y, -Y, +Z and -Z
+	 */
+	public static CubeMapHandle loadCubeMap(String[] faces, TextureCache.Sampler sampler) {
+		if(faces.length != CubeMapHandle.FACES)
+			throw new IllegalArgumentException("A cube map needs " + CubeMapHandle.FACES + " faces");
+		return submit(new CubeMapHandle(faces.clone(), sampler), CubeMapHandle.FACES);
+	}
+
+	private static <T extends TextureHandle> T submit(final T handle, int images) {
+		if(profile == null)
+			profile = GlTools.gl().getGLProfile();
+
+		pending.add(handle);
+		for(int i=0; i<images; i++) {
+			final int image = i;
+			decoders.execute(new Runnable() {
+				@Override
+				public void run() {
+					handle.decode(image);
+				}
+			});
+		}
+		return handle;
+	}
+
+	/**
+	 * @param nanos Maximum time spent uploading textures per frame (at least one is uploaded)
+	 */
+	public static void setFrameBudget(long nanos) {
+		frameBudget = nanos;
+	}
+
+	public static boolean isIdle() {
+		return pending.isEmpty();
+	}
+
+	/**
+	 * Uploads the decoded textures, in request order, until the frame budget is used. GL thread only.
+	 *
+	 * @return The number of textures uploaded
+	 */
+	public static int uploadPending() {
+		if(pending.isEmpty())
+			return 0;
+
+		GL2 gl = GlTools.gl();
+		long start = System.nanoTime();
+		int uploaded = 0;
+		TextureHandle handle;
+		while((handle = pending.peek()) != null) {
+			// waited for with await() meanwhile
+			if(handle.isDone()) {
+				pending.poll();
+				continue;
+			}
+			if(!handle.isDecoded())
+				break;
+			if(uploaded > 0 && System.nanoTime() - start > frameBudget)
+				break;
+
+			pending.poll();
+			handle.upload(gl);
+			uploaded++;
+		}
+		return uploaded;
+	}
+
+	static GLProfile profile() {
+		return profile;
+	}
+
+	/**
+	 * @return A 1x1 white texture, shown while the real texture isn't resident
+	 */
+	static int placeholder(GL2 gl) {
+		if(placeholder != 0)
+			return placeholder;
+
+		int[] ids = new int[1];
+		gl.glGenTextures(1, ids, 0);
+		placeholder = ids[0];
+
+		ByteBuffer white = ByteBuffer.wrap(new byte[] { -1, -1, -1, -1 });
+		gl.glBindTexture(GL2.GL_TEXTURE_2D, placeholder);
+		gl.glTexParameteri(GL2.GL_TEXTURE_2D, GL2.GL_TEXTURE_MIN_FILTER, GL2.GL_NEAREST);
+		gl.glTexParameteri(GL2.GL_TEXTURE_2D, GL2.GL_TEXTURE_MAG_FILTER, GL2.GL_NEAREST);
+		gl.glTexImage2D(GL2.GL_TEXTURE_2D, 0, GL2.GL_RGBA, 1, 1, 0, GL2.GL_RGBA, GL2.GL_UNSIGNED_BYTE, white);
+		gl.glBindTexture(GL2.GL_TEXTURE_2D, 0);
+		return placeholder;
+	}
+
+}
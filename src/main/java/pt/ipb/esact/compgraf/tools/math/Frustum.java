@@ -0,0 +1,108 @@
+package pt.ipb.esact.compgraf.tools.math;
+
+import javax.media.opengl.GL2;
+import javax.vecmath.Vector3f;
+
+/**
+ * The 6 planes of a view volume taken from a {@code projection * modelView} matrix (Gribb and
+ * Hartmann). The planes are in the space of the last matrix: with the modelview of an object they
+ * test its own (local) bounding box, no need to transform the box to world space.
+ */
+public final class Frustum {
+
+	public static final int OUTSIDE = 0;
+
+	public static final int INTERSECTS = 1;
+
+	public static final int INSIDE = 2;
+
+	// a, b, c, d of left, right, bottom, top, near and far, normals pointing inside
+	private final float[] planes = new float[24];
+
+	private final Matrix4 clip = new Matrix4();
+
+	private final float[] matrix = new float[16];
+
+	/**
+	 * @param clip The {@code projection * modelView} matrix
+	 */
+	public Frustum set(Matrix4 clip) {
+		float[] m = clip.m;
+		for(int i = 0; i < 3; i++) {
+			// row 3 +/- row i
+			plane(2 * i, m[3] + m[i], m[7] + m[4 + i], m[11] + m[8 + i], m[15] + m[12 + i]);
+			plane(2 * i + 1, m[3] - m[i], m[7] - m[4 + i], m[11] - m[8 + i], m[15] - m[12 + i]);
+		}
+		return this;
+	}
+
+	public Frustum set(Matrix4 projection, Matrix4 modelView) {
+		return set(clip.mul(projection, modelView));
+	}
+
+	/**
+	 * Reads the current {@code GL_PROJECTION} and {@code GL_MODELVIEW} matrices back from GL, for
+	 * the code that doesn't keep them on the CPU (see {@link MatrixStack})
+	 */
+	public Frustum set(GL2 gl) {
+		gl.glGetFloatv(GL2.GL_PROJECTION_MATRIX, clip.m, 0);
+		gl.glGetFloatv(GL2.GL_MODELVIEW_MATRIX, matrix, 0);
+		return set(clip.mul(matrix, 0));
+	}
+
+	private void plane(int i, float a, float b, float c, float d) {
+		float length = (float) Math.sqrt(a * a + b * b + c * c);
+		float inverse = length > 0.0f ? 1.0f / length : 0.0f;
+		int p = 4 * i;
+		planes[p] = a * inverse;
+		planes[p + 1] = b * inverse;
+		planes[p + 2] = c * inverse;
+		planes[p + 3] = d * inverse;
+	}
+
+	/**
+	 * @return {@link #OUTSIDE}, {@link #INTERSECTS} or {@link #INSIDE}, boxes near the corners of
+	 * the volume may be reported as intersecting when they're outside (never the opposite)
+	 */
+	public int classify(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+		int result = INSIDE;
+		for(int p = 0; p < 24; p += 4) {
+			float a = planes[p], b = planes[p + 1], c = planes[p + 2], d = planes[p + 3];
+			// corner furthest along the normal, then the nearest one
+			float far = a * (a > 0 ? maxX : minX) + b * (b > 0 ? maxY : minY) + c * (c > 0 ? maxZ : minZ) + d;
+			if(far < 0.0f)
+				return OUTSIDE;
+			float near = a * (a > 0 ? minX : maxX) + b * (b > 0 ? minY : maxY) + c * (c > 0 ? minZ : maxZ) + d;
+			if(near < 0.0f)
+				result = INTERSECTS;
+		}
+		return result;
+	}
+
+	/**
+	 * @param bounds min x, y, z and max x, y, z from {@code offset}
+	 */
+	public int classify(float[] bounds, int offset) {
+		return classify(bounds[offset], bounds[offset + 1], bounds[offset + 2], bounds[offset + 3], bounds[offset + 4], bounds[offset + 5]);
+	}
+
+	public boolean intersects(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+		return classify(minX, minY, minZ, maxX, maxY, maxZ) != OUTSIDE;
+	}
+
+	public boolean intersects(Vector3f min, Vector3f max) {
+		return classify(min.x, min.y, min.z, max.x, max.y, max.z) != OUTSIDE;
+	}
+
+	public boolean intersects(float[] bounds, int offset) {
+		return classify(bounds, offset) != OUTSIDE;
+	}
+
+	public boolean contains(float x, float y, float z) {
+		for(int p = 0; p < 24; p += 4)
+			if(planes[p] * x + planes[p + 1] * y + planes[p + 2] * z + planes[p + 3] < 0.0f)
+				return false;
+		return true;
+	}
+
+}
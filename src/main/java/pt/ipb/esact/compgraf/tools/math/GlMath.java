@@ -1,9 +1,6 @@
 package pt.ipb.esact.compgraf.tools.math;
 
 import javax.media.opengl.GL2;
-import javax.vecmath.AxisAngle4f;
-import javax.vecmath.Matrix4f;
-import javax.vecmath.Quat4f;
 import javax.vecmath.Vector3f;
 
 public class GlMath {
@@ -17,28 +14,51 @@ public class GlMath {
     }
 
     public static Vector3f rotate(float angle, Vector3f axis, Vector3f vector) {
-        Quat4f q = new Quat4f();
-        q.set(new AxisAngle4f(axis, (float) Math.toRadians(angle)));
+        return rotate(angle, axis, vector, new Vector3f());
+    }
+
+    /**
+     * Rotates {@code vector} {@code angle} degrees around {@code axis} (Rodrigues, see {@link Rotation})
+     *
+     * @param out The result, may be {@code vector}
+     */
+    public static Vector3f rotate(float angle, Vector3f axis, Vector3f vector, Vector3f out) {
+        float length = (float) Math.sqrt(axis.x * axis.x + axis.y * axis.y + axis.z * axis.z);
+        if (length == 0.0f) {
+            out.set(vector);
+            return out;
+        }
+        float kx = axis.x / length, ky = axis.y / length, kz = axis.z / length;
 
-        Matrix4f m = new Matrix4f();
-        m.set(q);
+        double radians = Math.toRadians(angle);
+        float sin = (float) Math.sin(radians);
+        float cos = (float) Math.cos(radians);
 
-        Vector3f result = new Vector3f(vector);
-        m.transform(result);
-        return result;
+        float vx = vector.x, vy = vector.y, vz = vector.z;
+        float k = (kx * vx + ky * vy + kz * vz) * (1.0f - cos);
+        out.x = vx * cos + (ky * vz - kz * vy) * sin + kx * k;
+        out.y = vy * cos + (kz * vx - kx * vz) * sin + ky * k;
+        out.z = vz * cos + (kx * vy - ky * vx) * sin + kz * k;
+        return out;
     }
 
     /**
      * https://en.wikipedia.org/wiki/Spherical_coordinate_system
      */
     public static Vector3f polarToVector(float radius, float theta, float phi) {
+        return polarToVector(radius, theta, phi, new Vector3f());
+    }
+
+    public static Vector3f polarToVector(float radius, float theta, float phi, Vector3f out) {
         // GL_PI / 2 offset (x -> z)
         theta += Math.PI / 2f;
-        return new Vector3f(
-                radius * (float) Math.sin(theta) * (float) Math.cos(phi),
-                radius * (float) Math.sin(theta) * (float) Math.sin(phi),
+        float sinTheta = (float) Math.sin(theta);
+        out.set(
+                radius * sinTheta * (float) Math.cos(phi),
+                radius * sinTheta * (float) Math.sin(phi),
                 radius * (float) Math.cos(theta)
         );
+        return out;
     }
 
 }
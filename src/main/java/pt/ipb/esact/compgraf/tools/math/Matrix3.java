@@ -0,0 +1,106 @@
+package pt.ipb.esact.compgraf.tools.math;
+
+import javax.vecmath.Vector3f;
+
+/**
+ * 3x3 matrix in a {@code float[9]}, column-major like OpenGL ({@code m[column * 3 + row]}).
+ * Meant to be reused: every operation writes into an existing matrix or vector.
+ */
+public final class Matrix3 {
+
+	public final float[] m = new float[9];
+
+	public Matrix3() {
+		setIdentity();
+	}
+
+	public Matrix3 setIdentity() {
+		m[0] = 1; m[3] = 0; m[6] = 0;
+		m[1] = 0; m[4] = 1; m[7] = 0;
+		m[2] = 0; m[5] = 0; m[8] = 1;
+		return this;
+	}
+
+	public Matrix3 set(Matrix3 other) {
+		System.arraycopy(other.m, 0, m, 0, 9);
+		return this;
+	}
+
+	/**
+	 * @param angle Degrees around {@code axis}
+	 */
+	public Matrix3 setRotation(float angle, Vector3f axis) {
+		return new Rotation(angle, axis).toMatrix(this);
+	}
+
+	/**
+	 * The upper left 3x3 of a {@link Matrix4}
+	 */
+	public Matrix3 set(Matrix4 other) {
+		float[] o = other.m;
+		m[0] = o[0]; m[3] = o[4]; m[6] = o[8];
+		m[1] = o[1]; m[4] = o[5]; m[7] = o[9];
+		m[2] = o[2]; m[5] = o[6]; m[8] = o[10];
+		return this;
+	}
+
+	/**
+	 * {@code this = a * b}, {@code this} may be {@code a} or {@code b}
+	 */
+	public Matrix3 mul(Matrix3 a, Matrix3 b) {
+		float[] x = a.m, y = b.m;
+		float m0 = x[0] * y[0] + x[3] * y[1] + x[6] * y[2];
+		float m1 = x[1] * y[0] + x[4] * y[1] + x[7] * y[2];
+		float m2 = x[2] * y[0] + x[5] * y[1] + x[8] * y[2];
+		float m3 = x[0] * y[3] + x[3] * y[4] + x[6] * y[5];
+		float m4 = x[1] * y[3] + x[4] * y[4] + x[7] * y[5];
+		float m5 = x[2] * y[3] + x[5] * y[4] + x[8] * y[5];
+		float m6 = x[0] * y[6] + x[3] * y[7] + x[6] * y[8];
+		float m7 = x[1] * y[6] + x[4] * y[7] + x[7] * y[8];
+		float m8 = x[2] * y[6] + x[5] * y[7] + x[8] * y[8];
+		m[0] = m0; m[1] = m1; m[2] = m2;
+		m[3] = m3; m[4] = m4; m[5] = m5;
+		m[6] = m6; m[7] = m7; m[8] = m8;
+		return this;
+	}
+
+	/**
+	 * {@code out = this * v}, {@code out} may be {@code v}
+	 */
+	public Vector3f transform(Vector3f v, Vector3f out) {
+		float x = v.x, y = v.y, z = v.z;
+		out.x = m[0] * x + m[3] * y + m[6] * z;
+		out.y = m[1] * x + m[4] * y + m[7] * z;
+		out.z = m[2] * x + m[5] * y + m[8] * z;
+		return out;
+	}
+
+	/**
+	 * Transforms {@code count} vectors, {@code out} may be {@code in}
+	 */
+	public void transform(VectorArray in, VectorArray out, int count) {
+		float m0 = m[0], m1 = m[1], m2 = m[2], m3 = m[3], m4 = m[4], m5 = m[5], m6 = m[6], m7 = m[7], m8 = m[8];
+		float[] ix = in.x, iy = in.y, iz = in.z;
+		float[] ox = out.x, oy = out.y, oz = out.z;
+		for(int i = 0; i < count; i++) {
+			float x = ix[i], y = iy[i], z = iz[i];
+			ox[i] = m0 * x + m3 * y + m6 * z;
+			oy[i] = m1 * x + m4 * y + m7 * z;
+			oz[i] = m2 * x + m5 * y + m8 * z;
+		}
+	}
+
+	/**
+	 * Transforms {@code count} interleaved xyz vectors (e.g. normals) with the given strides in floats
+	 */
+	public void transform(float[] in, int inOffset, int inStride, float[] out, int outOffset, int outStride, int count) {
+		float m0 = m[0], m1 = m[1], m2 = m[2], m3 = m[3], m4 = m[4], m5 = m[5], m6 = m[6], m7 = m[7], m8 = m[8];
+		for(int i = 0, s = inOffset, d = outOffset; i < count; i++, s += inStride, d += outStride) {
+			float x = in[s], y = in[s + 1], z = in[s + 2];
+			out[d] = m0 * x + m3 * y + m6 * z;
+			out[d + 1] = m1 * x + m4 * y + m7 * z;
+			out[d + 2] = m2 * x + m5 * y + m8 * z;
+		}
+	}
+
+}
@@ -0,0 +1,261 @@
+package pt.ipb.esact.compgraf.tools.math;
+
+import javax.vecmath.Vector3f;
+
+/**
+ * 4x4 matrix in a {@code float[16]}, column-major like OpenGL ({@code m[column * 4 + row]}), so
+ * {@link #m} can go straight to {@code glLoadMatrixf}/{@code glMultMatrixf}. The transformations
+ * multiply on the right, the same as the fixed-function calls ({@code glTranslatef},
+ * {@code glRotatef}, {@code glScalef}). Meant to be reused: nothing here allocates.
+ */
+public final class Matrix4 {
+
+	public final float[] m = new float[16];
+
+	// lookAt()/perspective()/..., created on first use
+	private float[] temp;
+
+	public Matrix4() {
+		setIdentity();
+	}
+
+	public Matrix4 setIdentity() {
+		for(int i = 0; i < 16; i++)
+			m[i] = 0.0f;
+		m[0] = m[5] = m[10] = m[15] = 1.0f;
+		return this;
+	}
+
+	public Matrix4 set(Matrix4 other) {
+		System.arraycopy(other.m, 0, m, 0, 16);
+		return this;
+	}
+
+	public Matrix4 set(float[] values, int offset) {
+		System.arraycopy(values, offset, m, 0, 16);
+		return this;
+	}
+
+	/**
+	 * {@code this = a * b}, {@code this} may be {@code a} or {@code b}
+	 */
+	public Matrix4 mul(Matrix4 a, Matrix4 b) {
+		mul(a.m, b.m, 0, m);
+		return this;
+	}
+
+	/**
+	 * {@code this = this * other}, as {@code glMultMatrixf}
+	 */
+	public Matrix4 mul(float[] other, int offset) {
+		mul(m, other, offset, m);
+		return this;
+	}
+
+	private static void mul(float[] a, float[] b, int offset, float[] out) {
+		float a0 = a[0], a1 = a[1], a2 = a[2], a3 = a[3];
+		float a4 = a[4], a5 = a[5], a6 = a[6], a7 = a[7];
+		float a8 = a[8], a9 = a[9], a10 = a[10], a11 = a[11];
+		float a12 = a[12], a13 = a[13], a14 = a[14], a15 = a[15];
+		for(int c = 0; c < 4; c++) {
+			float b0 = b[offset + c * 4], b1 = b[offset + c * 4 + 1], b2 = b[offset + c * 4 + 2], b3 = b[offset + c * 4 + 3];
+			out[c * 4] = a0 * b0 + a4 * b1 + a8 * b2 + a12 * b3;
+			out[c * 4 + 1] = a1 * b0 + a5 * b1 + a9 * b2 + a13 * b3;
+			out[c * 4 + 2] = a2 * b0 + a6 * b1 + a10 * b2 + a14 * b3;
+			out[c * 4 + 3] = a3 * b0 + a7 * b1 + a11 * b2 + a15 * b3;
+		}
+	}
+
+	/**
+	 * {@code this = this * T(x, y, z)}, as {@code glTranslatef}
+	 */
+	public Matrix4 translate(float x, float y, float z) {
+		m[12] += m[0] * x + m[4] * y + m[8] * z;
+		m[13] += m[1] * x + m[5] * y + m[9] * z;
+		m[14] += m[2] * x + m[6] * y + m[10] * z;
+		m[15] += m[3] * x + m[7] * y + m[11] * z;
+		return this;
+	}
+
+	/**
+	 * {@code this = this * S(x, y, z)}, as {@code glScalef}
+	 */
+	public Matrix4 scale(float x, float y, float z) {
+		for(int i = 0; i < 4; i++) {
+			m[i] *= x;
+			m[4 + i] *= y;
+			m[8 + i] *= z;
+		}
+		return this;
+	}
+
+	/**
+	 * {@code this = this * R(angle, axis)}, as {@code glRotatef} (degrees)
+	 */
+	public Matrix4 rotate(float angle, float x, float y, float z) {
+		double radians = Math.toRadians(angle);
+		return rotate((float) Math.sin(radians), (float) Math.cos(radians), x, y, z);
+	}
+
+	/**
+	 * Same as {@link #rotate(float, float, float, float)} with the sine and cosine of the angle
+	 * already known (e.g. from a {@link Rotation})
+	 */
+	public Matrix4 rotate(float sin, float cos, float x, float y, float z) {
+		float length = (float) Math.sqrt(x * x + y * y + z * z);
+		if(length == 0.0f)
+			return this;
+		x /= length;
+		y /= length;
+		z /= length;
+
+		float t = 1.0f - cos;
+		// columns of the rotation
+		float r0 = t * x * x + cos, r1 = t * x * y + sin * z, r2 = t * x * z - sin * y;
+		float r4 = t * x * y - sin * z, r5 = t * y * y + cos, r6 = t * y * z + sin * x;
+		float r8 = t * x * z + sin * y, r9 = t * y * z - sin * x, r10 = t * z * z + cos;
+
+		for(int i = 0; i < 4; i++) {
+			float c0 = m[i], c1 = m[4 + i], c2 = m[8 + i];
+			m[i] = c0 * r0 + c1 * r1 + c2 * r2;
+			m[4 + i] = c0 * r4 + c1 * r5 + c2 * r6;
+			m[8 + i] = c0 * r8 + c1 * r9 + c2 * r10;
+		}
+		return this;
+	}
+
+	/**
+	 * {@code this = this * V}, as {@code gluLookAt}
+	 */
+	public Matrix4 lookAt(float eyeX, float eyeY, float eyeZ, float atX, float atY, float atZ, float upX, float upY, float upZ) {
+		float fx = atX - eyeX, fy = atY - eyeY, fz = atZ - eyeZ;
+		float length = (float) Math.sqrt(fx * fx + fy * fy + fz * fz);
+		if(length > 0.0f) {
+			fx /= length;
+			fy /= length;
+			fz /= length;
+		}
+
+		// s = f x up
+		float sx = fy * upZ - fz * upY, sy = fz * upX - fx * upZ, sz = fx * upY - fy * upX;
+		length = (float) Math.sqrt(sx * sx + sy * sy + sz * sz);
+		if(length > 0.0f) {
+			sx /= length;
+			sy /= length;
+			sz /= length;
+		}
+
+		// u = s x f
+		float ux = sy * fz - sz * fy, uy = sz * fx - sx * fz, uz = sx * fy - sy * fx;
+
+		float[] t = temp();
+		t[0] = sx; t[4] = sy; t[8] = sz; t[12] = 0;
+		t[1] = ux; t[5] = uy; t[9] = uz; t[13] = 0;
+		t[2] = -fx; t[6] = -fy; t[10] = -fz; t[14] = 0;
+		t[3] = 0; t[7] = 0; t[11] = 0; t[15] = 1;
+		mul(t, 0);
+		return translate(-eyeX, -eyeY, -eyeZ);
+	}
+
+	/**
+	 * {@code this = this * P}, as {@code gluPerspective} (fovy in degrees)
+	 */
+	public Matrix4 perspective(float fovy, float aspect, float near, float far) {
+		float top = near * (float) Math.tan(Math.toRadians(fovy) / 2.0);
+		float right = top * aspect;
+		return frustum(-right, right, -top, top, near, far);
+	}
+
+	/**
+	 * {@code this = this * P}, as {@code glFrustum}
+	 */
+	public Matrix4 frustum(float left, float right, float bottom, float top, float near, float far) {
+		float[] t = temp();
+		for(int i = 0; i < 16; i++)
+			t[i] = 0.0f;
+		t[0] = 2.0f * near / (right - left);
+		t[5] = 2.0f * near / (top - bottom);
+		t[8] = (right + left) / (right - left);
+		t[9] = (top + bottom) / (top - bottom);
+		t[10] = -(far + near) / (far - near);
+		t[11] = -1.0f;
+		t[14] = -2.0f * far * near / (far - near);
+		return mul(t, 0);
+	}
+
+	/**
+	 * {@code this = this * P}, as {@code glOrtho}
+	 */
+	public Matrix4 ortho(float left, float right, float bottom, float top, float near, float far) {
+		float[] t = temp();
+		for(int i = 0; i < 16; i++)
+			t[i] = 0.0f;
+		t[0] = 2.0f / (right - left);
+		t[5] = 2.0f / (top - bottom);
+		t[10] = -2.0f / (far - near);
+		t[12] = -(right + left) / (right - left);
+		t[13] = -(top + bottom) / (top - bottom);
+		t[14] = -(far + near) / (far - near);
+		t[15] = 1.0f;
+		return mul(t, 0);
+	}
+
+	private float[] temp() {
+		if(temp == null)
+			temp = new float[16];
+		return temp;
+	}
+
+	/**
+	 * {@code out = this * (p, 1)}, the w is ignored (affine)
+	 */
+	public Vector3f transformPoint(Vector3f p, Vector3f out) {
+		float x = p.x, y = p.y, z = p.z;
+		out.x = m[0] * x + m[4] * y + m[8] * z + m[12];
+		out.y = m[1] * x + m[5] * y + m[9] * z + m[13];
+		out.z = m[2] * x + m[6] * y + m[10] * z + m[14];
+		return out;
+	}
+
+	/**
+	 * {@code out = this * (d, 0)}
+	 */
+	public Vector3f transformDirection(Vector3f d, Vector3f out) {
+		float x = d.x, y = d.y, z = d.z;
+		out.x = m[0] * x + m[4] * y + m[8] * z;
+		out.y = m[1] * x + m[5] * y + m[9] * z;
+		out.z = m[2] * x + m[6] * y + m[10] * z;
+		return out;
+	}
+
+	/**
+	 * Transforms {@code count} points, {@code out} may be {@code in}
+	 */
+	public void transformPoints(VectorArray in, VectorArray out, int count) {
+		float m0 = m[0], m1 = m[1], m2 = m[2], m4 = m[4], m5 = m[5], m6 = m[6];
+		float m8 = m[8], m9 = m[9], m10 = m[10], m12 = m[12], m13 = m[13], m14 = m[14];
+		float[] ix = in.x, iy = in.y, iz = in.z;
+		float[] ox = out.x, oy = out.y, oz = out.z;
+		for(int i = 0; i < count; i++) {
+			float x = ix[i], y = iy[i], z = iz[i];
+			ox[i] = m0 * x + m4 * y + m8 * z + m12;
+			oy[i] = m1 * x + m5 * y + m9 * z + m13;
+			oz[i] = m2 * x + m6 * y + m10 * z + m14;
+		}
+	}
+
+	/**
+	 * Transforms {@code count} interleaved xyz points (e.g. a vertex buffer), the strides are in floats
+	 */
+	public void transformPoints(float[] in, int inOffset, int inStride, float[] out, int outOffset, int outStride, int count) {
+		float m0 = m[0], m1 = m[1], m2 = m[2], m4 = m[4], m5 = m[5], m6 = m[6];
+		float m8 = m[8], m9 = m[9], m10 = m[10], m12 = m[12], m13 = m[13], m14 = m[14];
+		for(int i = 0, s = inOffset, d = outOffset; i < count; i++, s += inStride, d += outStride) {
+			float x = in[s], y = in[s + 1], z = in[s + 2];
+			out[d] = m0 * x + m4 * y + m8 * z + m12;
+			out[d + 1] = m1 * x + m5 * y + m9 * z + m13;
+			out[d + 2] = m2 * x + m6 * y + m10 * z + m14;
+		}
+	}
+
+}
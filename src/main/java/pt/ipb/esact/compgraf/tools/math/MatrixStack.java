@@ -0,0 +1,178 @@
+package pt.ipb.esact.compgraf.tools.math;
+
+import javax.media.opengl.GL2;
+import javax.vecmath.Vector3f;
+
+/**
+ * CPU copy of the {@code GL_MODELVIEW} stack with the same calls as {@code GL2Wrapper}
+ * ({@code glPushMatrix}, {@code glTranslatef}, ...). The view is kept apart from the model
+ * transforms, so the world transform of each object is known (culling, sorting, ...), and each
+ * draw uploads {@code view * model} with a single {@code glLoadMatrixf} ({@link #load(GL2)}):
+ * <pre>
+ * matrices.setProjection(getProjectionMatrix());
+ * matrices.setView(getViewMatrix());
+ * matrices.glPushMatrix();
+ *     matrices.glTranslatef(0, 0, -4);
+ *     matrices.load(this);
+ *     wall.render(matrices.getFrustum());
+ * matrices.glPopMatrix();
+ * ...
+ * matrices.restore(this);
+ * </pre>
+ */
+public final class MatrixStack {
+
+	/**
+	 * Same minimum depth as the GL modelview stack
+	 */
+	public static final int DEPTH = 32;
+
+	private final Matrix4[] stack = new Matrix4[DEPTH];
+
+	private int top = 0;
+
+	private final Matrix4 view = new Matrix4();
+
+	private final Matrix4 projection = new Matrix4();
+
+	private final Frustum frustum = new Frustum();
+
+	// view * model, what goes to GL
+	private final Matrix4 modelView = new Matrix4();
+
+	public MatrixStack() {
+		for(int i = 0; i < DEPTH; i++)
+			stack[i] = new Matrix4();
+	}
+
+	/**
+	 * Sets the camera (copied) and starts again from an empty model stack
+	 */
+	public void setView(Matrix4 view) {
+		this.view.set(view);
+		top = 0;
+		stack[0].setIdentity();
+	}
+
+	/**
+	 * Sets the projection (copied) used by {@link #getFrustum()}
+	 */
+	public void setProjection(Matrix4 projection) {
+		this.projection.set(projection);
+	}
+
+	public Matrix4 getView() {
+		return view;
+	}
+
+	/**
+	 * @return The current model (object to world) transform, don't keep it: it's reused by the stack
+	 */
+	public Matrix4 getModel() {
+		return stack[top];
+	}
+
+	/**
+	 * @return The world position of the current origin
+	 */
+	public Vector3f getPosition(Vector3f out) {
+		float[] m = stack[top].m;
+		out.set(m[12], m[13], m[14]);
+		return out;
+	}
+
+	public Matrix4 getModelView(Matrix4 out) {
+		return out.mul(view, stack[top]);
+	}
+
+	/**
+	 * @return The view volume in the space of the current model, to test its local bounding boxes
+	 * ({@code projection * view * model}), don't keep it: it's reused by the stack
+	 */
+	public Frustum getFrustum() {
+		modelView.mul(view, stack[top]);
+		return frustum.set(projection, modelView);
+	}
+
+	/**
+	 * @return The diameter in pixels of the sphere around the box (in the space of the current
+	 * model) once projected, {@link Float#MAX_VALUE} when the camera is inside it
+	 */
+	public float getScreenSize(Vector3f min, Vector3f max, int viewportHeight) {
+		modelView.mul(view, stack[top]);
+		float[] m = modelView.m;
+		float cx = (min.x + max.x) * 0.5f, cy = (min.y + max.y) * 0.5f, cz = (min.z + max.z) * 0.5f;
+		float dx = max.x - min.x, dy = max.y - min.y, dz = max.z - min.z;
+		float radius = 0.5f * (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+
+		// largest scale of the model view
+		float scale = 0.0f;
+		for(int c = 0; c < 3; c++)
+			scale = Math.max(scale, m[4 * c] * m[4 * c] + m[4 * c + 1] * m[4 * c + 1] + m[4 * c + 2] * m[4 * c + 2]);
+		radius *= (float) Math.sqrt(scale);
+
+		// pixels per unit at distance 1 (perspective) or everywhere (ortho)
+		float[] p = projection.m;
+		float pixels = radius * p[5] * viewportHeight;
+		if(p[11] == 0.0f)
+			return pixels;
+
+		float distance = -(m[2] * cx + m[6] * cy + m[10] * cz + m[14]);
+		if(distance <= radius)
+			return Float.MAX_VALUE;
+		return pixels / distance;
+	}
+
+	public void glLoadIdentity() {
+		stack[top].setIdentity();
+	}
+
+	public void glPushMatrix() {
+		if(top + 1 == DEPTH)
+			throw new IllegalStateException("Matrix stack overflow");
+		stack[top + 1].set(stack[top]);
+		top++;
+	}
+
+	public void glPopMatrix() {
+		if(top == 0)
+			throw new IllegalStateException("Matrix stack underflow");
+		top--;
+	}
+
+	public void glTranslatef(float x, float y, float z) {
+		stack[top].translate(x, y, z);
+	}
+
+	public void glRotatef(float angle, float x, float y, float z) {
+		stack[top].rotate(angle, x, y, z);
+	}
+
+	public void glScalef(float x, float y, float z) {
+		stack[top].scale(x, y, z);
+	}
+
+	public void glMultMatrixf(float[] m, int offset) {
+		stack[top].mul(m, offset);
+	}
+
+	public void glLoadMatrixf(float[] m, int offset) {
+		stack[top].set(m, offset);
+	}
+
+	/**
+	 * Uploads {@code view * model} to the current GL matrix (the modelview): one call per draw
+	 */
+	public void load(GL2 gl) {
+		modelView.mul(view, stack[top]);
+		gl.glLoadMatrixf(modelView.m, 0);
+	}
+
+	/**
+	 * Leaves only the view in GL, as {@code setupCamera()} did, for the code that follows
+	 */
+	public void restore(GL2 gl) {
+		gl.glLoadMatrixf(view.m, 0);
+	}
+
+}
@@ -0,0 +1,121 @@
+package pt.ipb.esact.compgraf.tools.math;
+
+import javax.vecmath.Vector3f;
+
+/**
+ * A rotation of an angle (degrees) around an axis applied with the Rodrigues formula:
+ * {@code v' = v cos + (k x v) sin + k (k . v)(1 - cos)}. The sine and cosine are only computed
+ * again when the angle changes, a rotation that is reused (e.g. the 90 degrees of a strafe) costs
+ * a few multiplications and allocates nothing.
+ * <p>
+ * Not thread safe while {@link #set(float, Vector3f)} is being called, one built with the
+ * constructor and never set again can be shared.
+ */
+public final class Rotation {
+
+	private float angle = Float.NaN;
+
+	private float sin;
+
+	private float cos;
+
+	// normalized, zero for no rotation
+	private float kx, ky, kz;
+
+	public Rotation() {
+		set(0.0f, 0.0f, 1.0f, 0.0f);
+	}
+
+	public Rotation(float angle, Vector3f axis) {
+		set(angle, axis);
+	}
+
+	/**
+	 * @param angle In degrees, as {@code glRotatef}
+	 * @param axis Doesn't need to be normalized, a null axis doesn't rotate
+	 */
+	public Rotation set(float angle, Vector3f axis) {
+		return set(angle, axis.x, axis.y, axis.z);
+	}
+
+	public Rotation set(float angle, float x, float y, float z) {
+		if(angle != this.angle) {
+			double radians = Math.toRadians(angle);
+			sin = (float) Math.sin(radians);
+			cos = (float) Math.cos(radians);
+			this.angle = angle;
+		}
+
+		float length = (float) Math.sqrt(x * x + y * y + z * z);
+		if(length > 0.0f) {
+			float inverse = 1.0f / length;
+			kx = x * inverse;
+			ky = y * inverse;
+			kz = z * inverse;
+		} else {
+			kx = ky = kz = 0.0f;
+		}
+		return this;
+	}
+
+	public float getAngle() {
+		return angle;
+	}
+
+	/**
+	 * {@code out} = {@code v} rotated, {@code out} may be {@code v}
+	 */
+	public Vector3f transform(Vector3f v, Vector3f out) {
+		if(kx == 0.0f && ky == 0.0f && kz == 0.0f) {
+			out.set(v);
+			return out;
+		}
+
+		float vx = v.x, vy = v.y, vz = v.z;
+		float k = (kx * vx + ky * vy + kz * vz) * (1.0f - cos);
+		out.x = vx * cos + (ky * vz - kz * vy) * sin + kx * k;
+		out.y = vy * cos + (kz * vx - kx * vz) * sin + ky * k;
+		out.z = vz * cos + (kx * vy - ky * vx) * sin + kz * k;
+		return out;
+	}
+
+	/**
+	 * Rotates {@code count} vectors, {@code out} may be {@code in}
+	 */
+	public void transform(VectorArray in, VectorArray out, int count) {
+		float c = cos, s = sin, t = 1.0f - cos;
+		float x = kx, y = ky, z = kz;
+		float[] ix = in.x, iy = in.y, iz = in.z;
+		float[] ox = out.x, oy = out.y, oz = out.z;
+		for(int i = 0; i < count; i++) {
+			float vx = ix[i], vy = iy[i], vz = iz[i];
+			float k = (x * vx + y * vy + z * vz) * t;
+			ox[i] = vx * c + (y * vz - z * vy) * s + x * k;
+			oy[i] = vy * c + (z * vx - x * vz) * s + y * k;
+			oz[i] = vz * c + (x * vy - y * vx) * s + z * k;
+		}
+	}
+
+	/**
+	 * Writes the rotation matrix
+	 */
+	public Matrix3 toMatrix(Matrix3 out) {
+		float[] m = out.m;
+		if(kx == 0.0f && ky == 0.0f && kz == 0.0f)
+			return out.setIdentity();
+
+		float t = 1.0f - cos;
+		// column-major
+		m[0] = t * kx * kx + cos;
+		m[1] = t * kx * ky + sin * kz;
+		m[2] = t * kx * kz - sin * ky;
+		m[3] = t * kx * ky - sin * kz;
+		m[4] = t * ky * ky + cos;
+		m[5] = t * ky * kz + sin * kx;
+		m[6] = t * kx * kz + sin * ky;
+		m[7] = t * ky * kz - sin * kx;
+		m[8] = t * kz * kz + cos;
+		return out;
+	}
+
+}
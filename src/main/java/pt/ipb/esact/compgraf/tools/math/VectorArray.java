@@ -0,0 +1,136 @@
+package pt.ipb.esact.compgraf.tools.math;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import javax.vecmath.Vector3f;
+
+/**
+ * Many vectors kept as a structure of arrays (one {@code float[]} per coordinate), the static
+ * operations go over whole ranges with plain loops: no {@link Vector3f} per element and code the
+ * JIT can vectorize. The output may be one of the inputs.
+ */
+public final class VectorArray {
+
+	public final float[] x;
+
+	public final float[] y;
+
+	public final float[] z;
+
+	public VectorArray(int capacity) {
+		this(new float[capacity], new float[capacity], new float[capacity]);
+	}
+
+	/**
+	 * Wraps existing arrays (no copy)
+	 */
+	public VectorArray(float[] x, float[] y, float[] z) {
+		checkArgument(x.length == y.length && y.length == z.length, "coordinates with different lengths");
+		this.x = x;
+		this.y = y;
+		this.z = z;
+	}
+
+	public int capacity() {
+		return x.length;
+	}
+
+	public void set(int i, float vx, float vy, float vz) {
+		x[i] = vx;
+		y[i] = vy;
+		z[i] = vz;
+	}
+
+	public void set(int i, Vector3f v) {
+		set(i, v.x, v.y, v.z);
+	}
+
+	public Vector3f get(int i, Vector3f out) {
+		out.set(x[i], y[i], z[i]);
+		return out;
+	}
+
+	/**
+	 * {@code out[i] = a[i] + b[i]}
+	 */
+	public static void add(VectorArray a, VectorArray b, VectorArray out, int count) {
+		for(int i = 0; i < count; i++) {
+			out.x[i] = a.x[i] + b.x[i];
+			out.y[i] = a.y[i] + b.y[i];
+			out.z[i] = a.z[i] + b.z[i];
+		}
+	}
+
+	/**
+	 * {@code out[i] = a[i] - b[i]}
+	 */
+	public static void sub(VectorArray a, VectorArray b, VectorArray out, int count) {
+		for(int i = 0; i < count; i++) {
+			out.x[i] = a.x[i] - b.x[i];
+			out.y[i] = a.y[i] - b.y[i];
+			out.z[i] = a.z[i] - b.z[i];
+		}
+	}
+
+	/**
+	 * {@code out[i] = a[i] * scalar}
+	 */
+	public static void scale(VectorArray a, float scalar, VectorArray out, int count) {
+		for(int i = 0; i < count; i++) {
+			out.x[i] = a.x[i] * scalar;
+			out.y[i] = a.y[i] * scalar;
+			out.z[i] = a.z[i] * scalar;
+		}
+	}
+
+	/**
+	 * {@code out[i] = a[i] * scalar + b[i]}, e.g. {@code position += velocity * dt}
+	 */
+	public static void scaleAdd(VectorArray a, float scalar, VectorArray b, VectorArray out, int count) {
+		for(int i = 0; i < count; i++) {
+			out.x[i] = a.x[i] * scalar + b.x[i];
+			out.y[i] = a.y[i] * scalar + b.y[i];
+			out.z[i] = a.z[i] * scalar + b.z[i];
+		}
+	}
+
+	/**
+	 * {@code out[i] = a[i] x b[i]}
+	 */
+	public static void cross(VectorArray a, VectorArray b, VectorArray out, int count) {
+		for(int i = 0; i < count; i++) {
+			float cx = a.y[i] * b.z[i] - a.z[i] * b.y[i];
+			float cy = a.z[i] * b.x[i] - a.x[i] * b.z[i];
+			float cz = a.x[i] * b.y[i] - a.y[i] * b.x[i];
+			out.x[i] = cx;
+			out.y[i] = cy;
+			out.z[i] = cz;
+		}
+	}
+
+	/**
+	 * {@code out[i] = a[i] . b[i]}
+	 */
+	public static void dot(VectorArray a, VectorArray b, float[] out, int count) {
+		for(int i = 0; i < count; i++)
+			out[i] = a.x[i] * b.x[i] + a.y[i] * b.y[i] + a.z[i] * b.z[i];
+	}
+
+	public static void lengthSquared(VectorArray a, float[] out, int count) {
+		dot(a, a, out, count);
+	}
+
+	/**
+	 * {@code out[i] = a[i] / |a[i]|}, the null vectors stay null
+	 */
+	public static void normalize(VectorArray a, VectorArray out, int count) {
+		for(int i = 0; i < count; i++) {
+			float length = (float) Math.sqrt(a.x[i] * a.x[i] + a.y[i] * a.y[i] + a.z[i] * a.z[i]);
+			float inverse = length > 0.0f ? 1.0f / length : 0.0f;
+			out.x[i] = a.x[i] * inverse;
+			out.y[i] = a.y[i] * inverse;
+			out.z[i] = a.z[i] * inverse;
+		}
+	}
+
+}
@@ -33,9 +33,11 @@ public class VectorList extends ArrayList<Vector3f> {
 		Vector3f v1 = get(0);
 		Vector3f v2 = get(1);
 		Vector3f v3 = get(2);
-		Vector3f vv1 = Vectors.sub(v2, v1);
-		Vector3f vv2 = Vectors.sub(v3, v1);
-		Vector3f n = Vectors.cross(vv1, vv2);
+
+		// (v2 - v1) x (v3 - v1) sem vectores intermédios
+		float ax = v2.x - v1.x, ay = v2.y - v1.y, az = v2.z - v1.z;
+		float bx = v3.x - v1.x, by = v3.y - v1.y, bz = v3.z - v1.z;
+		Vector3f n = new Vector3f(ay * bz - az * by, az * bx - ax * bz, ax * by - ay * bx);
 		n.normalize();
 		return n;
 	}
@@ -7,11 +7,9 @@ import javax.vecmath.Vector3f;
 
 public class Vectors {
 
-//	public static final Vector3f ZERO = new Vector3f();
-//	public static final Vector3f ORIGIN = new Vector3f(0.0f, 0.0f, 0.0f);
-//	public static final Vector3f UP = new Vector3f(0.0f, 1.0f, 0.0f);
-//	public static final Vector3f LEFT = new Vector3f(-1.0f, 0.0f, 0.0f);
-//	public static final Vector3f FORWARD = new Vector3f(0.0f, 0.0f, 1.0f);
+	// só lido pelo paint(): o vecmath não deixa impedir a escrita, por isso os vectores constantes
+	// não são partilhados, ver zero(out), up(out), ...
+	private static final Vector3f ORIGIN = new Vector3f();
 
 	public static Vector3f add(Vector3f v1, Vector3f v2) {
 		Vector3f v = new Vector3f(v1);
@@ -31,12 +29,64 @@ public class Vectors {
 		return v;
 	}
 
+	/**
+	 * {@code out = v1 + v2}, {@code out} may be one of the operands
+	 */
+	public static Vector3f add(Vector3f v1, Vector3f v2, Vector3f out) {
+		out.add(v1, v2);
+		return out;
+	}
+
+	/**
+	 * {@code out = v1 - v2}, {@code out} may be one of the operands
+	 */
+	public static Vector3f sub(Vector3f v1, Vector3f v2, Vector3f out) {
+		out.sub(v1, v2);
+		return out;
+	}
+
+	/**
+	 * {@code out = v1 x v2}, {@code out} may be one of the operands
+	 */
+	public static Vector3f cross(Vector3f v1, Vector3f v2, Vector3f out) {
+		out.cross(v1, v2);
+		return out;
+	}
+
+	/**
+	 * {@code out = v * scalar}
+	 */
+	public static Vector3f scale(Vector3f v, float scalar, Vector3f out) {
+		out.scale(scalar, v);
+		return out;
+	}
+
+	/**
+	 * {@code out = v1 * scalar + v2}
+	 */
+	public static Vector3f scaleAdd(Vector3f v1, float scalar, Vector3f v2, Vector3f out) {
+		out.scaleAdd(scalar, v1, v2);
+		return out;
+	}
+
+	/**
+	 * {@code out} = {@code v} normalizado, o vector nulo fica nulo
+	 */
+	public static Vector3f normalize(Vector3f v, Vector3f out) {
+		float length = v.length();
+		if(length == 0.0f)
+			out.set(0.0f, 0.0f, 0.0f);
+		else
+			out.scale(1.0f / length, v);
+		return out;
+	}
+
 	public static float dot(Vector3f v1, Vector3f v2) {
 		return v1.dot(v2);
 	}
 
 	public static boolean isOrigin(Vector3f n) {
-		return n.equals(zero());
+		return n.x == 0.0f && n.y == 0.0f && n.z == 0.0f;
 	}
 
     public static Vector3f zero() {
@@ -44,11 +94,11 @@ public class Vectors {
     }
 
     public static void paint(Vector3f v) {
-		paint(v, Vectors.zero(), Colors.WHITE);
+		paint(v, ORIGIN, Colors.WHITE);
 	}
 
 	public static void paint(Vector3f v, Color4f color) {
-		paint(v, Vectors.zero(), color);
+		paint(v, ORIGIN, color);
 	}
 	
 	public static void mult(Vector3f v, float scalar) {
@@ -101,4 +151,44 @@ public class Vectors {
     public static Vector3f down() {
         return new Vector3f(0, -1, 0);
     }
+
+    /**
+     * {@code out} = (0, 0, 0), sem criar um vector
+     */
+    public static Vector3f zero(Vector3f out) {
+        out.set(0.0f, 0.0f, 0.0f);
+        return out;
+    }
+
+    /**
+     * {@code out} = (0, 1, 0)
+     */
+    public static Vector3f up(Vector3f out) {
+        out.set(0.0f, 1.0f, 0.0f);
+        return out;
+    }
+
+    /**
+     * {@code out} = (0, -1, 0)
+     */
+    public static Vector3f down(Vector3f out) {
+        out.set(0.0f, -1.0f, 0.0f);
+        return out;
+    }
+
+    /**
+     * {@code out} = (-1, 0, 0)
+     */
+    public static Vector3f left(Vector3f out) {
+        out.set(-1.0f, 0.0f, 0.0f);
+        return out;
+    }
+
+    /**
+     * {@code out} = (0, 0, 1)
+     */
+    public static Vector3f forward(Vector3f out) {
+        out.set(0.0f, 0.0f, 1.0f);
+        return out;
+    }
 }